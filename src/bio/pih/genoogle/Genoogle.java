@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
@@ -23,15 +24,19 @@ import bio.pih.genoogle.index.ValueOutOfBoundsException;
 import bio.pih.genoogle.interfaces.Console;
 import bio.pih.genoogle.io.AbstractSequenceDataBank;
 import bio.pih.genoogle.io.AbstractSimpleSequenceDataBank;
+import bio.pih.genoogle.io.IndexedSequenceDataBank;
 import bio.pih.genoogle.io.InvalidConfigurationException;
 import bio.pih.genoogle.io.RemoteSimilaritySequenceDataBank;
+import bio.pih.genoogle.io.SplittedDatabankCollection;
 import bio.pih.genoogle.io.Utils;
 import bio.pih.genoogle.io.XMLConfigurationReader;
 import bio.pih.genoogle.io.proto.Io.StoredSequence;
 import bio.pih.genoogle.io.reader.ParseException;
 import bio.pih.genoogle.search.SearchManager;
+import bio.pih.genoogle.search.SearchJob;
 import bio.pih.genoogle.search.SearchParams;
 import bio.pih.genoogle.search.SearchParams.Parameter;
+import bio.pih.genoogle.search.SearchScheduler;
 import bio.pih.genoogle.search.UnknowDataBankException;
 import bio.pih.genoogle.search.results.SearchResults;
 import bio.pih.genoogle.seq.IllegalSymbolException;
@@ -142,6 +147,25 @@ public final class Genoogle {
 		return sm.getDefaultDataBankName();
 	}
 
+	/**
+	 * Loads again the data bank from its files in background and replaces it when loaded, without
+	 * stopping the searches. The failures are logged.
+	 * 
+	 * @param databankName
+	 *            name of the data bank at the configuration file.
+	 * @return {@link Future} which informs if the data bank was reloaded.
+	 */
+	public Future<Boolean> reloadDatabank(String databankName) {
+		return sm.reloadDatabank(databankName);
+	}
+
+	/**
+	 * @return the threads shared by the searches, with their queues.
+	 */
+	public SearchScheduler getSearchScheduler() {
+		return sm.getScheduler();
+	}
+
 	/**
 	 * Get a {@link Collection} of all available data banks
 	 * 
@@ -284,7 +308,58 @@ public final class Genoogle {
 
 		return sr;
 	}
-	
+
+	/**
+	 * Submits the search of the given sequence at the informed data bank, using the specified
+	 * {@link Map} of {@link Parameter} as parameters, returning without waiting it.
+	 * 
+	 * @param seqString
+	 *            input sequence for the searching.
+	 * @param dataBankName
+	 *            data bank name where the search will be performed.
+	 * @param parameters
+	 *            {@link Map} of {@link Parameter} which will be used in this search.
+	 * 
+	 * @return identifier of the search or <code>-1</code> if it could not be submitted.
+	 */
+	public long submitSearch(String seqString, String dataBankName, Map<Parameter, Object> parameters) {
+		seqString = seqString.trim();
+		try {
+			SymbolList sequence = LightweightSymbolList.createDNA(seqString);
+			SearchParams sp = new SearchParams(sequence, dataBankName, parameters);
+			return sm.submitSearch(sp);
+		} catch (UnknowDataBankException e) {
+			logger.error(e.getMessage(), e);
+		} catch (IllegalSymbolException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the submitted search, with its status and progress, or <code>null</code> if it
+	 *         does not exist.
+	 */
+	public SearchJob getSearchJob(long id) {
+		return sm.getSearchJob(id);
+	}
+
+	/**
+	 * @return the results of a finished submitted search or <code>null</code> if it is not
+	 *         finished or it does not exist. The results are returned only once.
+	 */
+	public SearchResults getSearchResults(long id) {
+		return sm.getSearchResults(id);
+	}
+
+	/**
+	 * Cancels a submitted search.
+	 * 
+	 * @return <code>false</code> if the search does not exist.
+	 */
+	public boolean cancelSearch(long id) {
+		return sm.cancelSearch(id);
+	}
 
 	public String getSequence(String db, int id) {
 		AbstractSequenceDataBank databank = sm.getDatabank(db);
@@ -346,6 +421,42 @@ public final class Genoogle {
 				return;
 			}
 
+			else if (args.length >= 3 && option.equals("-a")) {
+				AbstractSequenceDataBank dataBank = getDataBank(dataBanks, args[1]);
+				if (dataBank == null) {
+					return;
+				}
+				try {
+					if (dataBank instanceof SplittedDatabankCollection) {
+						((SplittedDatabankCollection) dataBank).appendFastaFile(new File(args[2]), forceFormatting);
+					} else if (dataBank instanceof IndexedSequenceDataBank) {
+						((IndexedSequenceDataBank) dataBank).appendFastaFile(new File(args[2]), forceFormatting);
+					} else {
+						logger.fatal("Sequences can not be appended to the data bank " + args[1] + ".");
+						return;
+					}
+				} catch (Exception e) {
+					logger.fatal(e, e);
+					return;
+				}
+				logger.info("Sequences from " + args[2] + " appended to " + args[1] + ".");
+				return;
+			}
+
+			else if (args.length >= 2 && option.equals("-m")) {
+				AbstractSequenceDataBank dataBank = getDataBank(dataBanks, args[1]);
+				if (dataBank == null) {
+					return;
+				}
+				if (dataBank instanceof SplittedDatabankCollection) {
+					((SplittedDatabankCollection) dataBank).mergeDeltaSegments();
+				} else if (dataBank instanceof IndexedSequenceDataBank) {
+					((IndexedSequenceDataBank) dataBank).mergeDeltaSegments();
+				}
+				logger.info("Delta segments of " + args[1] + " merged into its index.");
+				return;
+			}
+
 			else if (args.length >= 2 && option.equals("-b")) {
 				String inputFile = args[1];
 				Console console = new Console(new File(inputFile));
@@ -357,6 +468,16 @@ public final class Genoogle {
 		}
 	}
 
+	private static AbstractSequenceDataBank getDataBank(List<AbstractSequenceDataBank> dataBanks, String name) {
+		for (AbstractSequenceDataBank dataBank : dataBanks) {
+			if (dataBank.getName().equals(name)) {
+				return dataBank;
+			}
+		}
+		logger.fatal("Data bank " + name + " does not exist.");
+		return null;
+	}
+
 	private volatile static File home = null;
 
 	public static File getHome() {
@@ -376,6 +497,8 @@ public final class Genoogle {
 		logger.info(" -h              : this help.");
 		logger.info(" -g              : encode all not encoded databanks specified at conf/genoogle.conf .");
 		logger.info(" -b <BATCH_FILE> : starts genoogle and execute the <BATCH_FILE> .");
+		logger.info(" -a <DATABANK> <FASTA_FILE> : appends the sequences of <FASTA_FILE> into the encoded <DATABANK> .");
+		logger.info(" -m <DATABANK>   : merges the appended sequences into the <DATABANK> main index .");
 	}
 
 }
@@ -0,0 +1,433 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.alignment;
+
+import bio.pih.genoogle.encoder.SequenceEncoder;
+
+/**
+ * Banded Smith-Waterman alignment with affine gap costs (Gotoh) of segments of encoded
+ * sequences.
+ * <p>
+ * A gap of length n scores <code>gapOpen + (n - 1) * gapExtend</code>. The cells computed are
+ * the same of {@link SubstitutionMatrixSmithWaterman}, at most
+ * {@link SubstitutionMatrixSmithWaterman#BAND} positions away from the main diagonal, and when
+ * the gap open and extend scores are equal the alignment is the same of it.
+ * <p>
+ * The symbols of the segments are read by position from the encoded sequences, without decoding
+ * them to strings, and scored by {@link SubstitutionMatrix#getEncodedScores(SequenceEncoder)}.
+ * Only the aligned sequences are built as strings. For each query position are kept the three
+ * scores of the band of the current and of the previous row, and the traceback of the row, 4 bits
+ * per cell, packed in one <code>int</code>. The buffers are reused by all alignments executed in
+ * the same thread.
+ *
+ * @author albrecht
+ */
+public class AffineGapSmithWaterman extends GenoogleSequenceAlignment {
+
+	private static final int BAND = SubstitutionMatrixSmithWaterman.BAND;
+	private static final int BAND_WIDTH = 2 * BAND + 1;
+
+	// Score of the gaps cells which can not be reached.
+	private static final int UNREACHABLE = Integer.MIN_VALUE / 2;
+
+	/*
+	 * Traceback of the cells: 2 bits with where the best score comes from, in the order of
+	 * precedence, and 1 bit for each gap telling if it is extended from the previous position.
+	 */
+	private static final int STOP = 0;
+	private static final int DIAGONAL = 1;
+	private static final int LEFT = 2;
+	private static final int UP = 3;
+	private static final int LEFT_EXTENDED = 4;
+	private static final int UP_EXTENDED = 8;
+	private static final int BITS_BY_CELL = 4;
+
+	private static final ThreadLocal<ScratchBuffers> scratchBuffers = new ThreadLocal<ScratchBuffers>() {
+		@Override
+		protected ScratchBuffers initialValue() {
+			return new ScratchBuffers();
+		}
+	};
+
+	private final SubstitutionMatrix substitutionTable;
+	private final SequenceEncoder encoder;
+	private final int gapOpen;
+	private final int gapExtend;
+
+	int score = 0;
+	String[] align = new String[2];
+	String path = null;
+	int identitySize = 0;
+	int maxI = 0, maxJ = 0, queryStart = 0, targetStart = 0;
+
+	// Segments of the last score computed, aligned by pairwiseTraceback.
+	private int[] encodedQuery = null;
+	private int[] encodedTarget = null;
+	private int queryBegin = 0, targetBegin = 0;
+
+	/**
+	 * @param substitutionTable
+	 *            scores of the symbols pairs.
+	 * @param encoder
+	 *            encoder of the query and target sequences.
+	 * @param gapOpen
+	 *            score of the first position of a gap.
+	 * @param gapExtend
+	 *            score of each further position of a gap.
+	 */
+	public AffineGapSmithWaterman(SubstitutionMatrix substitutionTable, SequenceEncoder encoder, int gapOpen, int gapExtend) {
+		this.substitutionTable = substitutionTable;
+		this.encoder = encoder;
+		this.gapOpen = gapOpen;
+		this.gapExtend = gapExtend;
+	}
+
+	/**
+	 * Aligns a segment of the encoded query with a segment of the encoded target.
+	 *
+	 * @param encodedQuery
+	 * @param queryBegin
+	 *            first position of the query segment.
+	 * @param queryEnd
+	 *            position after the last one of the query segment.
+	 * @param encodedTarget
+	 * @param targetBegin
+	 *            first position of the target segment.
+	 * @param targetEnd
+	 *            position after the last one of the target segment.
+	 * @return the score of the alignment
+	 */
+	public int pairwiseAlignment(int[] encodedQuery, int queryBegin, int queryEnd, int[] encodedTarget, int targetBegin, int targetEnd) {
+		ScratchBuffers buffers = scratchBuffers.get();
+		int[] scores = substitutionTable.getEncodedScores(encoder);
+		int alphabetSize = encoder.getAlphabet().getSize();
+
+		int queryLength = queryEnd - queryBegin;
+		int subjectLength = targetEnd - targetBegin;
+		int[] query = buffers.getQuery(queryLength);
+		int[] subject = buffers.getSubject(subjectLength);
+		decode(encodedQuery, queryBegin, query, queryLength);
+		decode(encodedTarget, targetBegin, subject, subjectLength);
+
+		int[] traceback = buffers.getTraceback(queryLength + 1);
+		this.score = affineGapAlignment(query, queryLength, subject, subjectLength, scores, alphabetSize, buffers, traceback);
+		backtrace(query, subject, scores, alphabetSize, traceback, buffers);
+
+		return this.score;
+	}
+
+	/**
+	 * Computes only the score of the alignment of the segments and where it ends, without its
+	 * traceback and aligned sequences.
+	 *
+	 * @param encodedQuery
+	 * @param queryBegin
+	 *            first position of the query segment.
+	 * @param queryEnd
+	 *            position after the last one of the query segment.
+	 * @param encodedTarget
+	 * @param targetBegin
+	 *            first position of the target segment.
+	 * @param targetEnd
+	 *            position after the last one of the target segment.
+	 * @return the score of the alignment
+	 */
+	public int pairwiseScore(int[] encodedQuery, int queryBegin, int queryEnd, int[] encodedTarget, int targetBegin, int targetEnd) {
+		ScratchBuffers buffers = scratchBuffers.get();
+		int queryLength = queryEnd - queryBegin;
+		int subjectLength = targetEnd - targetBegin;
+		int[] query = buffers.getQuery(queryLength);
+		int[] subject = buffers.getSubject(subjectLength);
+		decode(encodedQuery, queryBegin, query, queryLength);
+		decode(encodedTarget, targetBegin, subject, subjectLength);
+
+		int[] scores = substitutionTable.getEncodedScores(encoder);
+		this.score = affineGapAlignment(query, queryLength, subject, subjectLength, scores, encoder.getAlphabet().getSize(), buffers, null);
+		this.encodedQuery = encodedQuery;
+		this.queryBegin = queryBegin;
+		this.encodedTarget = encodedTarget;
+		this.targetBegin = targetBegin;
+		return this.score;
+	}
+
+	/**
+	 * Builds the aligned sequences of the alignment whose score and end were computed by the last
+	 * {@link #pairwiseScore(int[], int, int, int[], int, int)}. Only the rows and columns up to the
+	 * end of the alignment are computed again, storing their traceback.
+	 *
+	 * @return the score of the alignment
+	 */
+	public int pairwiseTraceback() {
+		if (encodedQuery == null) {
+			throw new IllegalStateException("The score of the alignment was not computed.");
+		}
+		ScratchBuffers buffers = scratchBuffers.get();
+		int[] scores = substitutionTable.getEncodedScores(encoder);
+		int alphabetSize = encoder.getAlphabet().getSize();
+
+		// The cells after the end of the alignment do not change the cells before it, so the best
+		// cell of the smaller matrix is the same.
+		int queryLength = maxI;
+		int subjectLength = maxJ;
+		int[] query = buffers.getQuery(queryLength);
+		int[] subject = buffers.getSubject(subjectLength);
+		decode(encodedQuery, queryBegin, query, queryLength);
+		decode(encodedTarget, targetBegin, subject, subjectLength);
+
+		int[] traceback = buffers.getTraceback(queryLength + 1);
+		affineGapAlignment(query, queryLength, subject, subjectLength, scores, alphabetSize, buffers, traceback);
+		backtrace(query, subject, scores, alphabetSize, traceback, buffers);
+
+		return this.score;
+	}
+
+	private void decode(int[] encodedSequence, int begin, int[] symbols, int length) {
+		int subSequenceLength = encoder.getSubSequenceLength();
+		for (int i = 0; i < length; i++) {
+			symbols[i] = encoder.getValueAtPos(encodedSequence, begin + i, subSequenceLength);
+		}
+	}
+
+	/**
+	 * Fills the band and, if <code>traceback</code> is not <code>null</code>, the traceback of
+	 * each row.
+	 *
+	 * @return the best score.
+	 */
+	private int affineGapAlignment(int[] query, int queryLength, int[] subject, int subjectLength, int[] scores,
+			int alphabetSize, ScratchBuffers buffers, int[] traceback) {
+		// The cell of the band at the offset d is stored at the position d + 1, the first and last
+		// positions are the cells at the left and at the right of the band.
+		int[] previousRow = buffers.previousRow;
+		int[] currentRow = buffers.currentRow;
+		int[] previousUp = buffers.previousUp;
+		int[] currentUp = buffers.currentUp;
+		int[] currentLeft = buffers.currentLeft;
+		for (int d = 0; d < previousRow.length; d++) {
+			previousRow[d] = 0;
+			previousUp[d] = UNREACHABLE;
+		}
+
+		int best = 0;
+		maxI = 0;
+		maxJ = 0;
+		for (int i = 1; i <= queryLength; i++) {
+			for (int d = 0; d < currentRow.length; d++) {
+				currentRow[d] = 0;
+				currentUp[d] = UNREACHABLE;
+				currentLeft[d] = UNREACHABLE;
+			}
+
+			int queryScores = query[i - 1] * alphabetSize;
+			int from = Math.max(1, i - BAND);
+			int to = Math.min(subjectLength, i + BAND);
+			int rowTraceback = 0;
+			for (int j = from; j <= to; j++) {
+				int p = j - i + BAND + 1;
+				int cellTraceback = 0;
+
+				int left = currentRow[p - 1] + gapOpen;
+				int leftExtended = currentLeft[p - 1] + gapExtend;
+				if (leftExtended > left) {
+					left = leftExtended;
+					cellTraceback |= LEFT_EXTENDED;
+				}
+				currentLeft[p] = left;
+
+				int up = previousRow[p + 1] + gapOpen;
+				int upExtended = previousUp[p + 1] + gapExtend;
+				if (upExtended > up) {
+					up = upExtended;
+					cellTraceback |= UP_EXTENDED;
+				}
+				currentUp[p] = up;
+
+				int diagonal = previousRow[p] + scores[queryScores + subject[j - 1]];
+				int value = max(0, up, left, diagonal);
+				currentRow[p] = value;
+
+				if (value == 0) {
+					cellTraceback |= STOP;
+				} else if (value == diagonal) {
+					cellTraceback |= DIAGONAL;
+				} else if (value == left) {
+					cellTraceback |= LEFT;
+				} else {
+					cellTraceback |= UP;
+				}
+				rowTraceback |= cellTraceback << ((p - 1) * BITS_BY_CELL);
+
+				if (value > best) {
+					best = value;
+					maxI = i;
+					maxJ = j;
+				}
+			}
+			if (traceback != null) {
+				traceback[i] = rowTraceback;
+			}
+
+			int[] swap = previousRow;
+			previousRow = currentRow;
+			currentRow = swap;
+			swap = previousUp;
+			previousUp = currentUp;
+			currentUp = swap;
+		}
+
+		buffers.previousRow = previousRow;
+		buffers.currentRow = currentRow;
+		buffers.previousUp = previousUp;
+		buffers.currentUp = currentUp;
+		return best;
+	}
+
+	private void backtrace(int[] query, int[] subject, int[] scores, int alphabetSize, int[] traceback, ScratchBuffers buffers) {
+		StringBuilder pathBuilder = buffers.pathBuilder;
+		StringBuilder[] alignBuilder = buffers.alignBuilder;
+		pathBuilder.setLength(0);
+		alignBuilder[0].setLength(0);
+		alignBuilder[1].setLength(0);
+		identitySize = 0;
+
+		int i = maxI;
+		int j = maxJ;
+		int state = i > 0 ? cellTraceback(traceback, i, j) & 3 : STOP;
+		while (i > 0 && j > 0 && state != STOP) {
+			int cellTraceback = cellTraceback(traceback, i, j);
+			if (state == DIAGONAL) {
+				int queryValue = query[i - 1];
+				int subjectValue = subject[j - 1];
+				char queryChar = encoder.getSymbolFromBits(queryValue);
+				if (queryValue == subjectValue) {
+					pathBuilder.append(queryChar);
+					identitySize++;
+				} else if (scores[queryValue * alphabetSize + subjectValue] >= 0) {
+					pathBuilder.append('+');
+				} else {
+					pathBuilder.append(' ');
+				}
+				alignBuilder[0].append(queryChar);
+				alignBuilder[1].append(encoder.getSymbolFromBits(subjectValue));
+				i--;
+				j--;
+				state = i > 0 && j > 0 ? cellTraceback(traceback, i, j) & 3 : STOP;
+
+			} else if (state == LEFT) {
+				alignBuilder[0].append('-');
+				alignBuilder[1].append(encoder.getSymbolFromBits(subject[j - 1]));
+				pathBuilder.append(' ');
+				j--;
+				if ((cellTraceback & LEFT_EXTENDED) == 0) {
+					state = cellTraceback(traceback, i, j) & 3;
+				}
+
+			} else {
+				alignBuilder[0].append(encoder.getSymbolFromBits(query[i - 1]));
+				alignBuilder[1].append('-');
+				pathBuilder.append(' ');
+				i--;
+				if ((cellTraceback & UP_EXTENDED) == 0) {
+					state = i > 0 ? cellTraceback(traceback, i, j) & 3 : STOP;
+				}
+			}
+		}
+		queryStart = i;
+		targetStart = j;
+
+		this.path = pathBuilder.reverse().toString();
+		this.align[0] = alignBuilder[0].reverse().toString();
+		this.align[1] = alignBuilder[1].reverse().toString();
+	}
+
+	private static int cellTraceback(int[] traceback, int i, int j) {
+		return (traceback[i] >>> ((j - i + BAND) * BITS_BY_CELL)) & 15;
+	}
+
+	/**
+	 * Buffers used by the alignments executed in a thread.
+	 */
+	private static final class ScratchBuffers {
+		int[] previousRow = new int[BAND_WIDTH + 2];
+		int[] currentRow = new int[BAND_WIDTH + 2];
+		int[] previousUp = new int[BAND_WIDTH + 2];
+		int[] currentUp = new int[BAND_WIDTH + 2];
+		final int[] currentLeft = new int[BAND_WIDTH + 2];
+		final StringBuilder pathBuilder = new StringBuilder();
+		final StringBuilder[] alignBuilder = new StringBuilder[] { new StringBuilder(), new StringBuilder() };
+		private int[] traceback = new int[1024];
+		private int[] query = new int[1024];
+		private int[] subject = new int[1024];
+
+		int[] getTraceback(int rows) {
+			if (traceback.length < rows) {
+				traceback = new int[Math.max(rows, traceback.length * 2)];
+			}
+			return traceback;
+		}
+
+		int[] getQuery(int length) {
+			if (query.length < length) {
+				query = new int[Math.max(length, query.length * 2)];
+			}
+			return query;
+		}
+
+		int[] getSubject(int length) {
+			if (subject.length < length) {
+				subject = new int[Math.max(length, subject.length * 2)];
+			}
+			return subject;
+		}
+	}
+
+	@Override
+	public String getQueryAligned() {
+		return align[0];
+	}
+
+	@Override
+	public String getTargetAligned() {
+		return align[1];
+	}
+
+	@Override
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public int getQueryStart() {
+		return queryStart + 1;
+	}
+
+	@Override
+	public int getQueryEnd() {
+		return maxI;
+	}
+
+	@Override
+	public int getTargetStart() {
+		return targetStart + 1;
+	}
+
+	@Override
+	public int getTargetEnd() {
+		return maxJ;
+	}
+
+	@Override
+	public int getScore() {
+		return score;
+	}
+
+	@Override
+	public int getIdentitySize() {
+		return identitySize;
+	}
+}
@@ -18,9 +18,10 @@ public class DividedSubstitutionMatrixSmithWaterman extends GenoogleSequenceAlig
 	private final int delete;
 	private final int lengthThreshould;
 
-	StringBuilder queryAlignedBuilder = new StringBuilder();
-	StringBuilder targetAlignedBuilder = new StringBuilder();
-	StringBuilder pathAlignedBuilder = new StringBuilder();
+	// Only used when the sequences are divided.
+	StringBuilder queryAlignedBuilder = null;
+	StringBuilder targetAlignedBuilder = null;
+	StringBuilder pathAlignedBuilder = null;
 
 	String queryAligned = null;
 	String targetAligned = null;
@@ -67,7 +68,7 @@ public class DividedSubstitutionMatrixSmithWaterman extends GenoogleSequenceAlig
 	 */
 	public int pairwiseAlignment(String query, String target) {
 
-		if (query.length() <= lengthThreshould || target.length() <= lengthThreshould) {
+		if (!isDivided(query, target)) {
 			SubstitutionMatrixSmithWaterman aligner = new SubstitutionMatrixSmithWaterman(substitutionTable, insert, delete);
 			aligner.pairwiseAlignment(query, target);
 			this.queryAligned = aligner.getQueryAligned();
@@ -155,6 +156,36 @@ public class DividedSubstitutionMatrixSmithWaterman extends GenoogleSequenceAlig
 		return this.score;
 	}
 
+	/**
+	 * Computes only the score of the alignment, without the aligned sequences, when the sequences
+	 * are not divided. Divided sequences are aligned, because each piece begins where the
+	 * alignment of the previous one ends.
+	 * 
+	 * @param query
+	 * @param target
+	 * @return score of the alignment.
+	 * @see #isAligned()
+	 */
+	public int pairwiseScore(String query, String target) {
+		if (isDivided(query, target)) {
+			return pairwiseAlignment(query, target);
+		}
+		SubstitutionMatrixSmithWaterman aligner = new SubstitutionMatrixSmithWaterman(substitutionTable, insert, delete);
+		this.score = aligner.pairwiseScore(query, target);
+		return this.score;
+	}
+
+	/**
+	 * @return <code>true</code> if the aligned sequences were built.
+	 */
+	public boolean isAligned() {
+		return queryAligned != null || queryAlignedBuilder != null;
+	}
+
+	private boolean isDivided(String query, String target) {
+		return query.length() > lengthThreshould && target.length() > lengthThreshould;
+	}
+
 	/**
 	 * Format correctly the begin of this sub-alignment.
 	 * 
@@ -0,0 +1,488 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.alignment;
+
+import bio.pih.genoogle.encoder.SequenceEncoder;
+
+/**
+ * Smith-Waterman alignment of the whole matrix of segments of encoded sequences, using a
+ * {@link SubstitutionMatrix} and linear gap costs, computed with the striped method of Farrar
+ * (Bioinformatics 23(2), 2007).
+ * <p>
+ * The query is divided in {@link #LANES} lanes of contiguous positions, and the cells of the same
+ * segment of all lanes are computed together, in loops without dependencies between the lanes
+ * which the JIT compiler can execute with vector instructions. The vertical gaps crossing the
+ * lanes are corrected after each subject position.
+ * <p>
+ * The symbols of the segments are read by position from the encoded sequences, without decoding
+ * them to strings. The scores of each query position against each symbol of the alphabet, the
+ * query profile, are computed once per alignment from
+ * {@link SubstitutionMatrix#getEncodedScores(SequenceEncoder)}.
+ * <p>
+ * {@link #pairwiseScore(int[], int, int, int[], int, int)} computes only the score and where the
+ * alignment ends, using memory proportional to the query length.
+ * {@link #pairwiseTraceback()} then computes the traceback of the matrix up to the end of the
+ * alignment, with 2 bits per cell, and builds the aligned sequences.
+ * {@link #pairwiseAlignment(int[], int, int, int[], int, int)} does both. The buffers are reused
+ * by all alignments executed in the same thread.
+ *
+ * @author albrecht
+ */
+public class StripedSmithWaterman extends GenoogleSequenceAlignment {
+
+	/**
+	 * Quantity of query positions computed together.
+	 */
+	public static final int LANES = 8;
+
+	private static final int STOP = 0;
+	private static final int DIAGONAL = 1;
+	private static final int LEFT = 2;
+	private static final int UP = 3;
+
+	private static final ThreadLocal<ScratchBuffers> scratchBuffers = new ThreadLocal<ScratchBuffers>() {
+		@Override
+		protected ScratchBuffers initialValue() {
+			return new ScratchBuffers();
+		}
+	};
+
+	private final SubstitutionMatrix substitutionTable;
+	private final SequenceEncoder encoder;
+	private final int delete;
+	private final int insert;
+
+	int score = 0;
+	String[] align = new String[2];
+	String path = null;
+	int identitySize = 0;
+	int maxI = 0, maxJ = 0, queryStart = 0, targetStart = 0;
+
+	// Segments of the last score computed, aligned by pairwiseTraceback.
+	private int[] encodedQuery = null;
+	private int[] encodedTarget = null;
+	private int queryBegin = 0, targetBegin = 0;
+
+	/**
+	 * @param substitutionTable
+	 *            scores of the symbols pairs.
+	 * @param encoder
+	 *            encoder of the query and target sequences.
+	 * @param delete
+	 *            score of a gap at the target.
+	 * @param insert
+	 *            score of a gap at the query.
+	 */
+	public StripedSmithWaterman(SubstitutionMatrix substitutionTable, SequenceEncoder encoder, int delete, int insert) {
+		this.substitutionTable = substitutionTable;
+		this.encoder = encoder;
+		this.delete = delete;
+		this.insert = insert;
+	}
+
+	/**
+	 * Computes the score of the best local alignment of the segments and where it ends, without
+	 * its traceback. Where the alignment begins is known only after {@link #pairwiseTraceback()}.
+	 *
+	 * @param encodedQuery
+	 * @param queryBegin
+	 *            first position of the query segment.
+	 * @param queryEnd
+	 *            position after the last one of the query segment.
+	 * @param encodedTarget
+	 * @param targetBegin
+	 *            first position of the target segment.
+	 * @param targetEnd
+	 *            position after the last one of the target segment.
+	 * @return the score of the alignment
+	 */
+	public int pairwiseScore(int[] encodedQuery, int queryBegin, int queryEnd, int[] encodedTarget, int targetBegin, int targetEnd) {
+		ScratchBuffers buffers = scratchBuffers.get();
+		int queryLength = queryEnd - queryBegin;
+		int subjectLength = targetEnd - targetBegin;
+		int[] query = buffers.getQuery(queryLength);
+		int[] subject = buffers.getSubject(subjectLength);
+		decode(encodedQuery, queryBegin, query, queryLength);
+		decode(encodedTarget, targetBegin, subject, subjectLength);
+
+		int[] scores = substitutionTable.getEncodedScores(encoder);
+		this.score = stripedScore(query, queryLength, subject, subjectLength, scores, encoder.getAlphabet().getSize(), buffers);
+		this.align[0] = null;
+		this.align[1] = null;
+		this.path = null;
+		this.identitySize = 0;
+		this.queryStart = 0;
+		this.targetStart = 0;
+		this.encodedQuery = encodedQuery;
+		this.queryBegin = queryBegin;
+		this.encodedTarget = encodedTarget;
+		this.targetBegin = targetBegin;
+		return score;
+	}
+
+	/**
+	 * Builds the aligned sequences of the alignment whose score and end were computed by the last
+	 * {@link #pairwiseScore(int[], int, int, int[], int, int)}, computing the traceback of the
+	 * matrix only up to the end of the alignment.
+	 *
+	 * @return the score of the alignment
+	 */
+	public int pairwiseTraceback() {
+		if (encodedQuery == null) {
+			throw new IllegalStateException("The score of the alignment was not computed.");
+		}
+		ScratchBuffers buffers = scratchBuffers.get();
+		int[] query = buffers.getQuery(maxI);
+		int[] subject = buffers.getSubject(maxJ);
+		decode(encodedQuery, queryBegin, query, maxI);
+		decode(encodedTarget, targetBegin, subject, maxJ);
+		traceback(query, subject, substitutionTable.getEncodedScores(encoder), encoder.getAlphabet().getSize(), buffers);
+		return score;
+	}
+
+	/**
+	 * Computes the best local alignment of the segments and builds the aligned sequences.
+	 *
+	 * @param encodedQuery
+	 * @param queryBegin
+	 *            first position of the query segment.
+	 * @param queryEnd
+	 *            position after the last one of the query segment.
+	 * @param encodedTarget
+	 * @param targetBegin
+	 *            first position of the target segment.
+	 * @param targetEnd
+	 *            position after the last one of the target segment.
+	 * @return the score of the alignment
+	 */
+	public int pairwiseAlignment(int[] encodedQuery, int queryBegin, int queryEnd, int[] encodedTarget, int targetBegin, int targetEnd) {
+		pairwiseScore(encodedQuery, queryBegin, queryEnd, encodedTarget, targetBegin, targetEnd);
+		return pairwiseTraceback();
+	}
+
+	private void decode(int[] encodedSequence, int begin, int[] symbols, int length) {
+		int subSequenceLength = encoder.getSubSequenceLength();
+		for (int i = 0; i < length; i++) {
+			symbols[i] = encoder.getValueAtPos(encodedSequence, begin + i, subSequenceLength);
+		}
+	}
+
+	private int stripedScore(int[] query, int queryLength, int[] subject, int subjectLength, int[] scores, int alphabetSize,
+			ScratchBuffers buffers) {
+		int segments = Math.max(1, (queryLength + LANES - 1) / LANES);
+		int size = segments * LANES;
+		int last = (segments - 1) * LANES;
+
+		int[] previous = buffers.getPrevious(size);
+		int[] current = buffers.getCurrent(size);
+		int[] diagonal = buffers.diagonal;
+		int[] vertical = buffers.vertical;
+		for (int p = 0; p < size; p++) {
+			previous[p] = 0;
+		}
+		int[] profiles = buffers.getProfiles(query, queryLength, segments, scores, alphabetSize);
+
+		int best = 0;
+		maxI = 0;
+		maxJ = 0;
+		for (int j = 0; j < subjectLength; j++) {
+			int profile = subject[j] * size;
+
+			// The diagonal of the first segment of a lane is the last segment of the previous lane.
+			diagonal[0] = 0;
+			for (int l = 1; l < LANES; l++) {
+				diagonal[l] = previous[last + l - 1];
+			}
+			for (int l = 0; l < LANES; l++) {
+				vertical[l] = 0;
+			}
+
+			for (int s = 0, o = 0; s < segments; s++, o += LANES) {
+				for (int l = 0; l < LANES; l++) {
+					int h = diagonal[l] + profiles[profile + o + l];
+					h = Math.max(h, previous[o + l] + insert);
+					h = Math.max(h, vertical[l]);
+					h = Math.max(h, 0);
+					current[o + l] = h;
+					vertical[l] = h + delete;
+					diagonal[l] = previous[o + l];
+				}
+			}
+
+			// Vertical gaps which cross from a lane to the next one.
+			shiftLanes(vertical);
+			int s = 0;
+			while (anyGreater(vertical, current, s * LANES)) {
+				int o = s * LANES;
+				for (int l = 0; l < LANES; l++) {
+					int h = Math.max(current[o + l], vertical[l]);
+					current[o + l] = h;
+					vertical[l] = h + delete;
+				}
+				s++;
+				if (s == segments) {
+					s = 0;
+					shiftLanes(vertical);
+				}
+			}
+
+			for (int l = 0; l < LANES; l++) {
+				for (int t = 0; t < segments; t++) {
+					int i = l * segments + t;
+					if (i >= queryLength) {
+						break;
+					}
+					if (current[t * LANES + l] > best) {
+						best = current[t * LANES + l];
+						maxI = i + 1;
+						maxJ = j + 1;
+					}
+				}
+			}
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return best;
+	}
+
+	private static void shiftLanes(int[] lanes) {
+		for (int l = LANES - 1; l > 0; l--) {
+			lanes[l] = lanes[l - 1];
+		}
+		lanes[0] = 0;
+	}
+
+	private static boolean anyGreater(int[] lanes, int[] row, int o) {
+		for (int l = 0; l < LANES; l++) {
+			if (lanes[l] > row[o + l]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Computes again the matrix up to the end of the alignment, storing its traceback, and builds
+	 * the aligned sequences.
+	 */
+	private void traceback(int[] query, int[] subject, int[] scores, int alphabetSize, ScratchBuffers buffers) {
+		int columns = maxJ + 1;
+		int words = ((maxI + 1) * columns + 15) >>> 4;
+		int[] traceback = buffers.getTraceback(words);
+		for (int w = 0; w < words; w++) {
+			traceback[w] = 0;
+		}
+		int[] previous = buffers.getPrevious(columns);
+		int[] current = buffers.getCurrent(columns);
+		for (int j = 0; j < columns; j++) {
+			previous[j] = 0;
+		}
+		current[0] = 0;
+
+		for (int i = 1; i <= maxI; i++) {
+			int queryScores = query[i - 1] * alphabetSize;
+			int cell = i * columns;
+			for (int j = 1; j < columns; j++) {
+				int diagonal = previous[j - 1] + scores[queryScores + subject[j - 1]];
+				int left = current[j - 1] + insert;
+				int up = previous[j] + delete;
+				int value = max(0, up, left, diagonal);
+				current[j] = value;
+
+				int direction;
+				if (value == 0) {
+					direction = STOP;
+				} else if (value == diagonal) {
+					direction = DIAGONAL;
+				} else if (value == left) {
+					direction = LEFT;
+				} else {
+					direction = UP;
+				}
+				int c = cell + j;
+				traceback[c >>> 4] |= direction << ((c & 15) << 1);
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		StringBuilder pathBuilder = buffers.pathBuilder;
+		StringBuilder[] alignBuilder = buffers.alignBuilder;
+		pathBuilder.setLength(0);
+		alignBuilder[0].setLength(0);
+		alignBuilder[1].setLength(0);
+		identitySize = 0;
+
+		int i = maxI;
+		int j = maxJ;
+		while (i > 0 && j > 0) {
+			int c = i * columns + j;
+			int direction = (traceback[c >>> 4] >>> ((c & 15) << 1)) & 3;
+			if (direction == STOP) {
+				break;
+			}
+
+			int queryValue = query[i - 1];
+			int subjectValue = subject[j - 1];
+			if (direction == DIAGONAL) {
+				char queryChar = encoder.getSymbolFromBits(queryValue);
+				if (queryValue == subjectValue) {
+					pathBuilder.append(queryChar);
+					identitySize++;
+				} else if (scores[queryValue * alphabetSize + subjectValue] >= 0) {
+					pathBuilder.append('+');
+				} else {
+					pathBuilder.append(' ');
+				}
+				alignBuilder[0].append(queryChar);
+				alignBuilder[1].append(encoder.getSymbolFromBits(subjectValue));
+				i--;
+				j--;
+			} else if (direction == LEFT) {
+				alignBuilder[0].append('-');
+				alignBuilder[1].append(encoder.getSymbolFromBits(subjectValue));
+				pathBuilder.append(' ');
+				j--;
+			} else {
+				alignBuilder[0].append(encoder.getSymbolFromBits(queryValue));
+				alignBuilder[1].append('-');
+				pathBuilder.append(' ');
+				i--;
+			}
+		}
+		queryStart = i;
+		targetStart = j;
+
+		this.path = pathBuilder.reverse().toString();
+		this.align[0] = alignBuilder[0].reverse().toString();
+		this.align[1] = alignBuilder[1].reverse().toString();
+	}
+
+	/**
+	 * Buffers used by the alignments executed in a thread.
+	 */
+	private static final class ScratchBuffers {
+		final int[] diagonal = new int[LANES];
+		final int[] vertical = new int[LANES];
+		final StringBuilder pathBuilder = new StringBuilder();
+		final StringBuilder[] alignBuilder = new StringBuilder[] { new StringBuilder(), new StringBuilder() };
+		private int[] previous = new int[1024];
+		private int[] current = new int[1024];
+		private int[] traceback = new int[1024];
+		private int[] profiles = new int[1024];
+		private int[] query = new int[1024];
+		private int[] subject = new int[1024];
+
+		int[] getPrevious(int size) {
+			if (previous.length < size) {
+				previous = new int[Math.max(size, previous.length * 2)];
+			}
+			return previous;
+		}
+
+		int[] getCurrent(int size) {
+			if (current.length < size) {
+				current = new int[Math.max(size, current.length * 2)];
+			}
+			return current;
+		}
+
+		int[] getTraceback(int size) {
+			if (traceback.length < size) {
+				traceback = new int[Math.max(size, traceback.length * 2)];
+			}
+			return traceback;
+		}
+
+		int[] getQuery(int length) {
+			if (query.length < length) {
+				query = new int[Math.max(length, query.length * 2)];
+			}
+			return query;
+		}
+
+		int[] getSubject(int length) {
+			if (subject.length < length) {
+				subject = new int[Math.max(length, subject.length * 2)];
+			}
+			return subject;
+		}
+
+		/**
+		 * @return the scores of the query positions, in the striped order, against each symbol.
+		 *         The profile of the symbol <code>s</code> begins at
+		 *         <code>s * segments * LANES</code>.
+		 */
+		int[] getProfiles(int[] query, int queryLength, int segments, int[] scores, int alphabetSize) {
+			int size = segments * LANES;
+			if (profiles.length < size * alphabetSize) {
+				profiles = new int[Math.max(size * alphabetSize, profiles.length * 2)];
+			}
+
+			for (int symbol = 0; symbol < alphabetSize; symbol++) {
+				int profile = symbol * size;
+				for (int l = 0; l < LANES; l++) {
+					for (int s = 0; s < segments; s++) {
+						int i = l * segments + s;
+						// the positions after the query end can not start an alignment.
+						profiles[profile + s * LANES + l] = i < queryLength ? scores[query[i] * alphabetSize + symbol] : Integer.MIN_VALUE / 2;
+					}
+				}
+			}
+			return profiles;
+		}
+	}
+
+	@Override
+	public String getQueryAligned() {
+		return align[0];
+	}
+
+	@Override
+	public String getTargetAligned() {
+		return align[1];
+	}
+
+	@Override
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public int getQueryStart() {
+		return queryStart + 1;
+	}
+
+	@Override
+	public int getQueryEnd() {
+		return maxI;
+	}
+
+	@Override
+	public int getTargetStart() {
+		return targetStart + 1;
+	}
+
+	@Override
+	public int getTargetEnd() {
+		return maxJ;
+	}
+
+	@Override
+	public int getScore() {
+		return score;
+	}
+
+	@Override
+	public int getIdentitySize() {
+		return identitySize;
+	}
+}
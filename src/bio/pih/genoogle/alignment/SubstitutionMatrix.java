@@ -5,6 +5,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.HashMap;
 
+import bio.pih.genoogle.encoder.SequenceEncoder;
 import bio.pih.genoogle.io.XMLConfigurationReader;
 
 public class SubstitutionMatrix {
@@ -53,6 +54,46 @@ public class SubstitutionMatrix {
 		return value;
 	}
 	
+	/**
+	 * Scores of the pairs of encoded symbols of the last encoder used.
+	 */
+	private volatile EncodedScores encodedScores = null;
+
+	/**
+	 * Gets the scores of the pairs of symbols of an encoder, to score encoded sequences without
+	 * decoding their symbols.
+	 * 
+	 * @param encoder
+	 * @return the scores indexed by <code>a * alphabetSize + b</code>, where <code>a</code> and
+	 *         <code>b</code> are the encoded symbols and <code>alphabetSize</code> is the size of
+	 *         the encoder alphabet.
+	 */
+	public int[] getEncodedScores(SequenceEncoder encoder) {
+		EncodedScores cached = encodedScores;
+		if (cached == null || cached.encoder != encoder) {
+			int alphabetSize = encoder.getAlphabet().getSize();
+			int[] scores = new int[alphabetSize * alphabetSize];
+			for (int a = 0; a < alphabetSize; a++) {
+				for (int b = 0; b < alphabetSize; b++) {
+					scores[a * alphabetSize + b] = getValue(encoder.getSymbolFromBits(a), encoder.getSymbolFromBits(b));
+				}
+			}
+			cached = new EncodedScores(encoder, scores);
+			encodedScores = cached;
+		}
+		return cached.scores;
+	}
+
+	private static final class EncodedScores {
+		final SequenceEncoder encoder;
+		final int[] scores;
+
+		EncodedScores(SequenceEncoder encoder, int[] scores) {
+			this.encoder = encoder;
+			this.scores = scores;
+		}
+	}
+
 	public int getMin() {
 		return min;
 	}
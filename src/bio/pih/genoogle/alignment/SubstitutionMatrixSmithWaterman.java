@@ -7,11 +7,44 @@
 
 package bio.pih.genoogle.alignment;
 
-
+/**
+ * Banded Smith-Waterman alignment using a {@link SubstitutionMatrix} and linear gap costs.
+ * <p>
+ * Only the cells at most {@link #BAND} positions away from the main diagonal are computed. For
+ * each query position are kept only the scores of the band of the current and of the previous
+ * row, and the traceback of the row, 2 bits per cell, packed in one <code>int</code>. The cells
+ * outside of the band have score zero. The score rows and the traceback are scratch buffers
+ * reused by all alignments executed in the same thread.
+ *
+ * @author albrecht
+ */
 public class SubstitutionMatrixSmithWaterman extends GenoogleSequenceAlignment {
 
+	/**
+	 * Maximum distance of the computed cells from the main diagonal.
+	 */
+	public static final int BAND = 3;
+
+	private static final int BAND_WIDTH = 2 * BAND + 1;
+
+	/*
+	 * Traceback of the cells. The order of the codes is the precedence used when more than one
+	 * cell gives the score.
+	 */
+	private static final int STOP = 0;
+	private static final int DIAGONAL = 1;
+	private static final int LEFT = 2;
+	private static final int UP = 3;
+
+	private static final ThreadLocal<ScratchBuffers> scratchBuffers = new ThreadLocal<ScratchBuffers>() {
+		@Override
+		protected ScratchBuffers initialValue() {
+			return new ScratchBuffers();
+		}
+	};
+
 	private final SubstitutionMatrix substitutionTable;
-	
+
 	/*
 	 * Variables needed for traceback
 	 */
@@ -25,10 +58,10 @@ public class SubstitutionMatrixSmithWaterman extends GenoogleSequenceAlignment {
 	private final int insert;
 
 
-	public SubstitutionMatrixSmithWaterman(SubstitutionMatrix substitutionTable, int delete, int insert) {		
-		this.substitutionTable = substitutionTable;		
+	public SubstitutionMatrixSmithWaterman(SubstitutionMatrix substitutionTable, int delete, int insert) {
+		this.substitutionTable = substitutionTable;
 		this.delete = delete;
-		this.insert = insert;		
+		this.insert = insert;
 	}
 
 	int maxI = 0, maxJ = 0, queryStart = 0, targetStart = 0;
@@ -39,17 +72,19 @@ public class SubstitutionMatrixSmithWaterman extends GenoogleSequenceAlignment {
 	 * @return the score of the alignment
 	 */
 	public int pairwiseAlignment(String query, String subject) {
-		int[][] scoreMatrix = new int[query.length() + 1][subject.length() + 1];
-		int builderLength = (int) (Math.max(query.length(), subject.length()) * 1.20);
+		ScratchBuffers buffers = scratchBuffers.get();
+		int[] traceback = buffers.getTraceback(query.length() + 1);
 
-		StringBuilder pathBuilder = new StringBuilder(builderLength);
-		StringBuilder[] alignBuilder = new StringBuilder[2];
-		alignBuilder[0] = new StringBuilder(builderLength);
-		alignBuilder[1] = new StringBuilder(builderLength);
+		this.score = nonAfinedGapAlignment(query, subject, buffers, traceback);
 
-		nonAfinedGapAlignment(query, subject, scoreMatrix, pathBuilder, alignBuilder);
+		StringBuilder pathBuilder = buffers.pathBuilder;
+		StringBuilder[] alignBuilder = buffers.alignBuilder;
+		pathBuilder.setLength(0);
+		alignBuilder[0].setLength(0);
+		alignBuilder[1].setLength(0);
+
+		backtrace(query, subject, traceback, pathBuilder, alignBuilder);
 
-		this.score = scoreMatrix[maxI][maxJ];
 		this.path = pathBuilder.reverse().toString();
 		this.align[0] = alignBuilder[0].reverse().toString();
 		this.align[1] = alignBuilder[1].reverse().toString();
@@ -57,96 +92,150 @@ public class SubstitutionMatrixSmithWaterman extends GenoogleSequenceAlignment {
 		return this.score;
 	}
 
-	private void nonAfinedGapAlignment(String query, String subject, int[][] scoreMatrix,
-			StringBuilder pathBuilder, StringBuilder[] alignBuilder) {
-		int i;
-		int j;
+	/**
+	 * Computes only the score of the alignment and where it ends, without its traceback and
+	 * aligned sequences.
+	 *
+	 * @param query
+	 * @param subject
+	 * @return the score of the alignment
+	 */
+	public int pairwiseScore(String query, String subject) {
+		this.score = nonAfinedGapAlignment(query, subject, scratchBuffers.get(), null);
+		return this.score;
+	}
+
+	/**
+	 * Fills the band and, if <code>traceback</code> is not <code>null</code>, the traceback of
+	 * each row.
+	 *
+	 * @return the best score.
+	 */
+	private int nonAfinedGapAlignment(String query, String subject, ScratchBuffers buffers, int[] traceback) {
 		int queryLength = query.length();
 		int subjectLength = subject.length();
-		int k = 3;
-		
-		for (i = 0; i <= queryLength; i++)
-			scoreMatrix[i][0] = 0;
-		for (j = 0; j <= subjectLength; j++)
-			scoreMatrix[0][j] = 0;
-		for (i = 1; i <= queryLength; i++) {
-			int from = Math.max(1, i - k);
-			int to = Math.min(subjectLength, i + k);
-			for (j = from; j <= to; j++) {
-				scoreMatrix[i][j] = max(
-						0, 
-						scoreMatrix[i - 1][j] + delete, scoreMatrix[i][j - 1] + insert, 
-						scoreMatrix[i - 1][j - 1] + substitutionTable.getValue(query.charAt(i-1), subject.charAt(j-1))
-						);
-						
-
-				if (scoreMatrix[i][j] > scoreMatrix[maxI][maxJ]) {
+
+		// The cell of the band at the offset d is stored at the position d + 1, the first and last
+		// positions are always zero and are the cells at the left and at the right of the band.
+		int[] previousRow = buffers.previousRow;
+		int[] currentRow = buffers.currentRow;
+		for (int d = 0; d < previousRow.length; d++) {
+			previousRow[d] = 0;
+		}
+
+		int best = 0;
+		maxI = 0;
+		maxJ = 0;
+		for (int i = 1; i <= queryLength; i++) {
+			for (int d = 0; d < currentRow.length; d++) {
+				currentRow[d] = 0;
+			}
+
+			char queryChar = query.charAt(i - 1);
+			int from = Math.max(1, i - BAND);
+			int to = Math.min(subjectLength, i + BAND);
+			int rowTraceback = 0;
+			for (int j = from; j <= to; j++) {
+				int p = j - i + BAND + 1;
+				int diagonal = previousRow[p] + substitutionTable.getValue(queryChar, subject.charAt(j - 1));
+				int left = currentRow[p - 1] + insert;
+				int up = previousRow[p + 1] + delete;
+				int value = max(0, up, left, diagonal);
+				currentRow[p] = value;
+
+				if (traceback != null) {
+					int direction;
+					if (value == 0) {
+						direction = STOP;
+					} else if (value == diagonal) {
+						direction = DIAGONAL;
+					} else if (value == left) {
+						direction = LEFT;
+					} else {
+						direction = UP;
+					}
+					rowTraceback |= direction << ((p - 1) << 1);
+				}
+
+				if (value > best) {
+					best = value;
 					maxI = i;
 					maxJ = j;
 				}
 			}
+			if (traceback != null) {
+				traceback[i] = rowTraceback;
+			}
+
+			int[] swap = previousRow;
+			previousRow = currentRow;
+			currentRow = swap;
 		}
 
-		/*
-		 * Here starts the traceback for non-affine gap penalities
-		 */
-		backtrace(query, subject, scoreMatrix, pathBuilder, alignBuilder);
+		return best;
 	}
 
-	private void backtrace(String query, String subject, int[][] scoreMatrix,
-			StringBuilder pathBuilder, StringBuilder[] alignBuilder) {
-		int i;
-		int j;
-		j = maxJ;
-		for (i = maxI; i > 0;) {
-			do {
-				// only Deletes or Inserts or Replaces possible.
-				// That's not what
-				// we want to have.
-				if (scoreMatrix[i][j] == 0) {
-					queryStart = i;
-					targetStart = j;
-					i = j = 0;
-
-					// Match/Replace
-				} else {
-					char queryChar = query.charAt(i-1);
-					char subjectChar = subject.charAt(j-1);
-					if (scoreMatrix[i][j]
-							- (scoreMatrix[i - 1][j - 1] + substitutionTable.getValue(queryChar, subjectChar) ) == 0) {
-						if (queryChar == subjectChar) {
-							pathBuilder.append(queryChar);
-							identitySize++;
-						} else {
-							if (substitutionTable.getValue(queryChar, subjectChar) >= 0) {
-								pathBuilder.append('+');	
-							} else {
-								pathBuilder.append(' ');
-							}
-							
-						}
-
-						alignBuilder[0].append(queryChar);
-						alignBuilder[1].append(subjectChar);
-						i--;
-						j--;
-
-						// Insert
-					} else if (scoreMatrix[i][j] - (scoreMatrix[i][j - 1] + insert) == 0) {
-						alignBuilder[0].append('-');
-						alignBuilder[1].append(subjectChar);
-						pathBuilder.append(' ');
-						j--;
+	private void backtrace(String query, String subject, int[] traceback, StringBuilder pathBuilder,
+			StringBuilder[] alignBuilder) {
+		identitySize = 0;
+		int i = maxI;
+		int j = maxJ;
+		while (i > 0 && j > 0) {
+			int direction = (traceback[i] >>> ((j - i + BAND) << 1)) & 3;
+			if (direction == STOP) {
+				break;
+			}
 
-						// Delete
+			char queryChar = query.charAt(i - 1);
+			char subjectChar = subject.charAt(j - 1);
+			if (direction == DIAGONAL) {
+				if (queryChar == subjectChar) {
+					pathBuilder.append(queryChar);
+					identitySize++;
+				} else {
+					if (substitutionTable.getValue(queryChar, subjectChar) >= 0) {
+						pathBuilder.append('+');
 					} else {
-						alignBuilder[0].append(queryChar);
-						alignBuilder[1].append('-');
 						pathBuilder.append(' ');
-						i--;
 					}
 				}
-			} while (j > 0);
+				alignBuilder[0].append(queryChar);
+				alignBuilder[1].append(subjectChar);
+				i--;
+				j--;
+
+			} else if (direction == LEFT) {
+				alignBuilder[0].append('-');
+				alignBuilder[1].append(subjectChar);
+				pathBuilder.append(' ');
+				j--;
+
+			} else {
+				alignBuilder[0].append(queryChar);
+				alignBuilder[1].append('-');
+				pathBuilder.append(' ');
+				i--;
+			}
+		}
+		queryStart = i;
+		targetStart = j;
+	}
+
+	/**
+	 * Buffers used by the alignments executed in a thread.
+	 */
+	private static final class ScratchBuffers {
+		final int[] previousRow = new int[BAND_WIDTH + 2];
+		final int[] currentRow = new int[BAND_WIDTH + 2];
+		final StringBuilder pathBuilder = new StringBuilder();
+		final StringBuilder[] alignBuilder = new StringBuilder[] { new StringBuilder(), new StringBuilder() };
+		private int[] traceback = new int[1024];
+
+		int[] getTraceback(int rows) {
+			if (traceback.length < rows) {
+				traceback = new int[Math.max(rows, traceback.length * 2)];
+			}
+			return traceback;
 		}
 	}
 
@@ -234,51 +234,15 @@ public abstract class SequenceEncoder {
 	 * @param encodedSequence
 	 * @param begin
 	 * @param end
-	 * @return the sequence in {@link String} form that is stored in encodedSequence
+	 *            last position, inclusive.
+	 * @return the sequence in {@link String} form that is stored in encodedSequence from begin to
+	 *         end.
 	 */
 	public String decodeIntegerArrayToString(int[] encodedSequence, int begin, int end) {
-
-		if ((end - begin) + 1 < subSequenceLength) {
-			return decoteIntegerArrayToStringShortenOneSubSequence(encodedSequence, begin, end);
-		}
-		StringBuilder sequence = new StringBuilder();
-
-		int arrayPos = (begin / subSequenceLength) + 1;
-		int posInInt = begin % subSequenceLength;
-
-		if (posInInt != 0) {
-			sequence.append(decodeIntegerToString(encodedSequence[arrayPos], posInInt, subSequenceLength - 1));
-			arrayPos++;
-		}
-
-		int arrayPosLast = end / subSequenceLength;
-		for (; arrayPos <= arrayPosLast; arrayPos++) {
-			sequence.append(decodeIntegerToString(encodedSequence[arrayPos], subSequenceLength));
-		}
-
-		int posInIntLast = end % subSequenceLength;
-		if (posInIntLast > 0) {
-			sequence.append(decodeIntegerToString(encodedSequence[arrayPos], 0, posInIntLast));
-		}
-
-		return sequence.toString();
-	}
-
-	private String decoteIntegerArrayToStringShortenOneSubSequence(int[] encodedSequence, int begin, int end) {
-
-		int arrayPosBegin = (begin / subSequenceLength) + 1;
-		int arrayPosEnd = (end / subSequenceLength) + 1;
-		int firstInt = encodedSequence[arrayPosBegin];
-
-		if (arrayPosBegin == arrayPosEnd) {
-			return decodeIntegerToString(firstInt, begin, end);
+		StringBuilder sequence = new StringBuilder((end - begin) + 1);
+		for (int pos = begin; pos <= end; pos++) {
+			sequence.append(getSymbolFromBits(getValueAtPos(encodedSequence, pos, subSequenceLength)));
 		}
-
-		StringBuilder sequence = new StringBuilder();
-		int beginPos = begin % subSequenceLength;
-		sequence.append(decodeIntegerToString(firstInt, beginPos, subSequenceLength - 1));
-		int endPos = end % subSequenceLength;
-		sequence.append(decodeIntegerToString(encodedSequence[arrayPosEnd], 0, endPos));
 		return sequence.toString();
 	}
 
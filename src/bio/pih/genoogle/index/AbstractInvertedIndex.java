@@ -63,6 +63,14 @@ public abstract class AbstractInvertedIndex {
 	 */
 	abstract public long[] getMatchingSubSequence(int encodedSubSequence) throws IOException;
 
+	/**
+	 * @return a new cursor to iterate over the buckets of this index. Implementations should
+	 *         override it to avoid copying the buckets.
+	 */
+	public PostingsCursor newCursor() {
+		return new PostingsCursor.ArrayPostingsCursor(this);
+	}
+
 	/**
 	 * @return a string containing the status of the index.
 	 */
@@ -0,0 +1,311 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.io.AbstractSequenceDataBank;
+
+import com.google.common.collect.Lists;
+
+/**
+ * An inverted sub-sequences index stored in the memory with compressed buckets.
+ * <p>
+ * The entries of each bucket are sorted by sequence and position and are split into blocks of
+ * {@link #BLOCK_SIZE} entries. For each entry are stored the difference of its sequence id to the
+ * previous entry sequence id and its position, or the difference to the previous entry position
+ * when both are in the same sequence. Each block begins with two bytes, the quantity of bits of
+ * the biggest sequence difference and of the biggest position value, followed by all sequence
+ * differences and then all position values packed with these quantities of bits (frame of
+ * reference).
+ * <p>
+ * The cursor decodes a whole block at once into arrays with tight loops without branches per
+ * bit, which are easy for the JIT to optimize.
+ *
+ * @author albrecht
+ */
+public class CompressedInvertedIndex extends MemoryInvertedIndex {
+
+	/**
+	 * Quantity of entries in each compressed block.
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	private static final int CHUNK_SIZE = 1 << 24;
+	private static final int MAX_BLOCK_BYTES = 2 + BLOCK_SIZE * 4 * 2;
+
+	private static Logger logger = Logger.getLogger(CompressedInvertedIndex.class.getCanonicalName());
+
+	/**
+	 * Where each bucket begins: the chunk in the high 32 bits and the position inside the chunk in
+	 * the low 32 bits.
+	 */
+	private long[] bucketsPosition = null;
+	private byte[][] chunks = null;
+
+	/**
+	 * @param databank
+	 * @param indexedSequenceEncoder
+	 */
+	public CompressedInvertedIndex(AbstractSequenceDataBank databank, SequenceEncoder indexedSequenceEncoder) {
+		super(databank, indexedSequenceEncoder);
+	}
+
+	@Override
+	public MemoryPostingsCursor newCursor() {
+		return new CompressedPostingsCursor();
+	}
+
+	@Override
+	public void loadFromFile() throws IOException {
+		long b = System.currentTimeMillis();
+		logger.info("Loading and compressing inverted index.");
+		checkVersion();
+
+		FileInputStream memoryInvertedIndexIS = new FileInputStream(getMemoryInvertedIndexFile());
+		try {
+			FileChannel channel = memoryInvertedIndexIS.getChannel();
+			long[] offsets = InvertedIndexFile.readOffsets(channel, indexSize);
+			LongBuffer[] entries = InvertedIndexFile.mapEntries(channel, indexSize, offsets[indexSize]);
+
+			long[] bucketsPosition = new long[indexSize];
+			List<byte[]> chunks = Lists.newArrayList();
+			byte[] chunk = new byte[CHUNK_SIZE];
+			int chunkPos = 0;
+			long totalBytes = 0;
+
+			long[] bucket = new long[BLOCK_SIZE];
+			byte[] encoded = new byte[MAX_BLOCK_BYTES];
+			int[] sequenceDeltas = new int[BLOCK_SIZE];
+			int[] positionValues = new int[BLOCK_SIZE];
+
+			for (int i = 0; i < indexSize; i++) {
+				int length = (int) (offsets[i + 1] - offsets[i]);
+				if (length == 0) {
+					continue;
+				}
+				if (bucket.length < length) {
+					bucket = new long[length];
+				}
+				InvertedIndexFile.getEntries(entries, offsets[i], bucket, 0, length);
+				if (!isSorted(bucket, length)) {
+					Arrays.sort(bucket, 0, length);
+				}
+
+				int maxSize = ((length + BLOCK_SIZE - 1) / BLOCK_SIZE) * MAX_BLOCK_BYTES;
+				if (encoded.length < maxSize) {
+					encoded = new byte[maxSize];
+				}
+				int size = encode(bucket, length, encoded, sequenceDeltas, positionValues);
+
+				if (chunkPos + size > chunk.length) {
+					chunks.add(Arrays.copyOf(chunk, chunkPos));
+					chunk = new byte[Math.max(CHUNK_SIZE, size)];
+					chunkPos = 0;
+				}
+				System.arraycopy(encoded, 0, chunk, chunkPos, size);
+				bucketsPosition[i] = ((long) chunks.size() << 32) | chunkPos;
+				chunkPos += size;
+				totalBytes += size;
+			}
+			chunks.add(Arrays.copyOf(chunk, chunkPos));
+
+			this.offsets = offsets;
+			this.bucketsPosition = bucketsPosition;
+			this.chunks = chunks.toArray(new byte[chunks.size()][]);
+
+			logger.info(offsets[indexSize] + " sub sequences was loaded into the inverted index using " + totalBytes
+					+ " bytes (" + (offsets[indexSize] * InvertedIndexFile.ENTRY_SIZE) + " bytes uncompressed).");
+		} finally {
+			memoryInvertedIndexIS.close();
+		}
+
+		this.loaded = true;
+		logger.info("Inverted index loaded in " + (System.currentTimeMillis() - b));
+	}
+
+	@Override
+	public long getMemoryUsage() {
+		if (offsets == null) {
+			return 0;
+		}
+		long memory = (offsets.length + bucketsPosition.length) * 8l;
+		for (byte[] chunk : chunks) {
+			memory += chunk.length;
+		}
+		return memory;
+	}
+
+	private static boolean isSorted(long[] bucket, int length) {
+		for (int i = 1; i < length; i++) {
+			if (bucket[i] < bucket[i - 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Encodes the sorted entries of a bucket.
+	 *
+	 * @return quantity of bytes written into <code>out</code>.
+	 */
+	private static int encode(long[] bucket, int length, byte[] out, int[] sequenceDeltas, int[] positionValues) {
+		int pos = 0;
+		long lastSequenceId = 0;
+		long lastPosition = 0;
+		for (int begin = 0; begin < length; begin += BLOCK_SIZE) {
+			int n = Math.min(BLOCK_SIZE, length - begin);
+			long maxSequenceDelta = 0;
+			long maxPositionValue = 0;
+			for (int i = 0; i < n; i++) {
+				long entry = bucket[begin + i];
+				long sequenceId = entry >>> 32;
+				long position = entry & 0xFFFFFFFFl;
+				long sequenceDelta = sequenceId - lastSequenceId;
+				long positionValue = sequenceDelta == 0 ? position - lastPosition : position;
+				sequenceDeltas[i] = (int) sequenceDelta;
+				positionValues[i] = (int) positionValue;
+				maxSequenceDelta |= sequenceDelta;
+				maxPositionValue |= positionValue;
+				lastSequenceId = sequenceId;
+				lastPosition = position;
+			}
+			int sequenceBits = 64 - Long.numberOfLeadingZeros(maxSequenceDelta);
+			int positionBits = 64 - Long.numberOfLeadingZeros(maxPositionValue);
+			out[pos++] = (byte) sequenceBits;
+			out[pos++] = (byte) positionBits;
+			pos = pack(sequenceDeltas, n, sequenceBits, out, pos);
+			pos = pack(positionValues, n, positionBits, out, pos);
+		}
+		return pos;
+	}
+
+	private static int pack(int[] values, int n, int bits, byte[] out, int pos) {
+		if (bits == 0) {
+			return pos;
+		}
+		long mask = (1l << bits) - 1;
+		long buffer = 0;
+		int used = 0;
+		for (int i = 0; i < n; i++) {
+			buffer |= (values[i] & mask) << used;
+			used += bits;
+			while (used >= 8) {
+				out[pos++] = (byte) buffer;
+				buffer >>>= 8;
+				used -= 8;
+			}
+		}
+		if (used > 0) {
+			out[pos++] = (byte) buffer;
+		}
+		return pos;
+	}
+
+	private static int unpack(byte[] data, int pos, int bits, int n, int[] values) {
+		if (bits == 0) {
+			Arrays.fill(values, 0, n, 0);
+			return pos;
+		}
+		long mask = (1l << bits) - 1;
+		long buffer = 0;
+		int available = 0;
+		for (int i = 0; i < n; i++) {
+			while (available < bits) {
+				buffer |= (long) (data[pos++] & 0xFF) << available;
+				available += 8;
+			}
+			values[i] = (int) (buffer & mask);
+			buffer >>>= bits;
+			available -= bits;
+		}
+		return pos;
+	}
+
+	/**
+	 * Cursor which decodes one block at a time.
+	 */
+	private class CompressedPostingsCursor extends MemoryPostingsCursor {
+		private final long[] block = new long[BLOCK_SIZE];
+		private final int[] sequenceDeltas = new int[BLOCK_SIZE];
+		private final int[] positionValues = new int[BLOCK_SIZE];
+
+		private byte[] data;
+		private int dataPos;
+		private int remaining;
+		private int blockPos;
+		private int blockLength;
+		private long lastSequenceId;
+		private long lastPosition;
+
+		@Override
+		public int seek(int encodedSubSequence) {
+			int length = (int) (offsets[encodedSubSequence + 1] - offsets[encodedSubSequence]);
+			remaining = length;
+			blockPos = 0;
+			blockLength = 0;
+			lastSequenceId = 0;
+			lastPosition = 0;
+			if (length > 0) {
+				long position = bucketsPosition[encodedSubSequence];
+				data = chunks[(int) (position >>> 32)];
+				dataPos = (int) position;
+			}
+			return length;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return blockPos < blockLength || remaining > 0;
+		}
+
+		@Override
+		public long next() {
+			if (blockPos == blockLength) {
+				decodeBlock();
+			}
+			return block[blockPos++];
+		}
+
+		private void decodeBlock() {
+			int n = Math.min(BLOCK_SIZE, remaining);
+			int sequenceBits = data[dataPos++];
+			int positionBits = data[dataPos++];
+			dataPos = unpack(data, dataPos, sequenceBits, n, sequenceDeltas);
+			dataPos = unpack(data, dataPos, positionBits, n, positionValues);
+
+			long sequenceId = lastSequenceId;
+			long position = lastPosition;
+			for (int i = 0; i < n; i++) {
+				long positionValue = positionValues[i] & 0xFFFFFFFFl;
+				if (sequenceDeltas[i] != 0) {
+					sequenceId += sequenceDeltas[i] & 0xFFFFFFFFl;
+					position = positionValue;
+				} else {
+					position += positionValue;
+				}
+				block[i] = (sequenceId << 32) | position;
+			}
+
+			lastSequenceId = sequenceId;
+			lastPosition = position;
+			remaining -= n;
+			blockPos = 0;
+			blockLength = n;
+		}
+	}
+}
@@ -21,6 +21,18 @@ public  class IndexFileOffset {
 		this.offset = offset;
 		this.length = length;
 	}
+
+	public int getSubSequence() {
+		return subSequence;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public int getLength() {
+		return length;
+	}
 	
 
 	public static void writeTo(int subSequence, long offset, int sequenceId, DataOutputStream stream)
@@ -0,0 +1,233 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Layout of the inverted index file (<i>.midx</i>), version 2.
+ * <p>
+ * All values are little-endian. The file starts with a header containing the {@link #MAGIC}
+ * number, the {@link #VERSION}, the index size, the size of each entry and the total of entries.
+ * After the header there is a table with <code>indexSize + 1</code> longs: the position
+ * <code>i</code> is the number of the first entry of the bucket of the encoded sub-sequence
+ * <code>i</code>, so the bucket has <code>offsets[i + 1] - offsets[i]</code> entries. The entries
+ * follow the table, each one is a {@link SubSequenceIndexInfo} stored in {@link #ENTRY_SIZE}
+ * bytes.
+ * <p>
+ * The version 1 files do not have header: they are a sequence of protocol buffers
+ * <i>InvertedIndexBuck</i> and have a separated <i>.oidx</i> file with the buckets offsets.
+ *
+ * @author albrecht
+ */
+public final class InvertedIndexFile {
+
+	/**
+	 * "GIDX" in ASCII.
+	 */
+	public static final int MAGIC = 0x58444947;
+	public static final int VERSION = 2;
+	public static final int HEADER_SIZE = 24;
+	public static final int ENTRY_SIZE = 8;
+	public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private static final int SEGMENT_BITS = 27;
+	private static final int SEGMENT_ENTRIES = 1 << SEGMENT_BITS;
+	private static final int SEGMENT_MASK = SEGMENT_ENTRIES - 1;
+
+	private InvertedIndexFile() {
+	}
+
+	/**
+	 * @param indexSize
+	 * @return the position in the file where the first entry is stored.
+	 */
+	public static long getEntriesPosition(int indexSize) {
+		return HEADER_SIZE + (indexSize + 1l) * 8l;
+	}
+
+	/**
+	 * @param file
+	 * @return the version of the given index file. Files without the header are version 1.
+	 */
+	public static int getVersion(File file) throws IOException {
+		if (file.length() < HEADER_SIZE) {
+			return 1;
+		}
+		FileInputStream is = new FileInputStream(file);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(8).order(BYTE_ORDER);
+			readFully(is.getChannel(), header, 0);
+			if (header.getInt(0) != MAGIC) {
+				return 1;
+			}
+			return header.getInt(4);
+		} finally {
+			is.close();
+		}
+	}
+
+	/**
+	 * Writes the header and the offsets table at the begin of the file.
+	 *
+	 * @param channel
+	 * @param offsets
+	 *            the offsets table, with <code>indexSize + 1</code> positions.
+	 */
+	public static void writeHeader(FileChannel channel, long[] offsets) throws IOException {
+		int indexSize = offsets.length - 1;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(indexSize);
+		header.putInt(ENTRY_SIZE);
+		header.putLong(offsets[indexSize]);
+		header.flip();
+		writeFully(channel, header, 0);
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(BYTE_ORDER);
+		long position = HEADER_SIZE;
+		int i = 0;
+		while (i < offsets.length) {
+			buffer.clear();
+			int length = Math.min(offsets.length - i, BUFFER_SIZE / 8);
+			buffer.asLongBuffer().put(offsets, i, length);
+			buffer.limit(length * 8);
+			writeFully(channel, buffer, position);
+			position += length * 8;
+			i += length;
+		}
+	}
+
+	/**
+	 * Checks the header and reads the offsets table.
+	 *
+	 * @param channel
+	 * @param indexSize
+	 *            expected index size.
+	 * @return the offsets table, with <code>indexSize + 1</code> positions.
+	 * @throws IOException
+	 *             if the file header is not valid for the given index size.
+	 */
+	public static long[] readOffsets(FileChannel channel, int indexSize) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+		readFully(channel, header, 0);
+		if (header.getInt(0) != MAGIC) {
+			throw new IOException("The inverted index file is not in the version " + VERSION + " format.");
+		}
+		if (header.getInt(4) != VERSION) {
+			throw new IOException("Unsupported inverted index file version " + header.getInt(4) + ".");
+		}
+		if (header.getInt(8) != indexSize) {
+			throw new IOException("The inverted index file size is " + header.getInt(8) + " but it should be " + indexSize + ".");
+		}
+		if (header.getInt(12) != ENTRY_SIZE) {
+			throw new IOException("Invalid inverted index entry size " + header.getInt(12) + ".");
+		}
+
+		long[] offsets = new long[indexSize + 1];
+		readLongs(channel, HEADER_SIZE, offsets, 0, offsets.length);
+		if (offsets[indexSize] != header.getLong(16)) {
+			throw new IOException("The inverted index file has " + offsets[indexSize] + " entries at the offsets table but "
+					+ header.getLong(16) + " at its header.");
+		}
+		return offsets;
+	}
+
+	/**
+	 * Reads <code>length</code> longs from the channel starting at <code>position</code>.
+	 */
+	public static void readLongs(FileChannel channel, long position, long[] dest, int destPos, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(Math.min(BUFFER_SIZE, Math.max(8, length * 8))).order(BYTE_ORDER);
+		while (length > 0) {
+			buffer.clear();
+			int read = Math.min(length, buffer.capacity() / 8);
+			buffer.limit(read * 8);
+			readFully(channel, buffer, position);
+			buffer.flip();
+			LongBuffer longBuffer = buffer.asLongBuffer();
+			longBuffer.get(dest, destPos, read);
+			position += read * 8;
+			destPos += read;
+			length -= read;
+		}
+	}
+
+	/**
+	 * Maps the entries area of the file. As a single mapping is limited to 2GB, the entries are
+	 * mapped in segments, use {@link #getEntries(LongBuffer[], long, long[], int, int)} to read
+	 * them.
+	 *
+	 * @param channel
+	 * @param indexSize
+	 * @param totalEntries
+	 * @return the mapped segments.
+	 */
+	public static LongBuffer[] mapEntries(FileChannel channel, int indexSize, long totalEntries) throws IOException {
+		long entriesPosition = getEntriesPosition(indexSize);
+		int totalSegments = (int) ((totalEntries + SEGMENT_MASK) >>> SEGMENT_BITS);
+		LongBuffer[] segments = new LongBuffer[totalSegments];
+		for (int i = 0; i < totalSegments; i++) {
+			long first = (long) i << SEGMENT_BITS;
+			long size = Math.min(SEGMENT_ENTRIES, totalEntries - first) * ENTRY_SIZE;
+			ByteBuffer map = channel.map(MapMode.READ_ONLY, entriesPosition + first * ENTRY_SIZE, size);
+			segments[i] = map.order(BYTE_ORDER).asLongBuffer();
+		}
+		return segments;
+	}
+
+	/**
+	 * Copies <code>length</code> entries, beginning at the entry <code>from</code>, from the
+	 * mapped segments. The segments positions are not changed, so they can be shared by many
+	 * threads.
+	 */
+	public static void getEntries(LongBuffer[] segments, long from, long[] dest, int destPos, int length) {
+		while (length > 0) {
+			int pos = (int) (from & SEGMENT_MASK);
+			int read = Math.min(length, SEGMENT_ENTRIES - pos);
+			LongBuffer segment = segments[(int) (from >>> SEGMENT_BITS)].duplicate();
+			segment.position(pos);
+			segment.get(dest, destPos, read);
+			from += read;
+			destPos += read;
+			length -= read;
+		}
+	}
+
+	/**
+	 * @return the entry at the given position of the mapped segments.
+	 */
+	public static long getEntry(LongBuffer[] segments, long entry) {
+		return segments[(int) (entry >>> SEGMENT_BITS)].get((int) (entry & SEGMENT_MASK));
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of the inverted index file at " + position + ".");
+			}
+			position += read;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index;
+
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.io.AbstractSequenceDataBank;
+
+/**
+ * How the inverted index of a data bank is kept at search time. All types read the same index
+ * files, only the way they are loaded changes.
+ *
+ * @author albrecht
+ */
+public enum InvertedIndexType {
+
+	/**
+	 * All buckets are decoded into the java heap when the data bank is loaded.
+	 */
+	MEMORY("memory"),
+
+	/**
+	 * The index file is memory mapped and the buckets are decoded at each access.
+	 */
+	MAPPED("mapped"),
+
+	/**
+	 * The buckets are compressed in blocks when the data bank is loaded and decoded at each
+	 * access.
+	 */
+	COMPRESSED("compressed");
+
+	private final String name;
+
+	private InvertedIndexType(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Creates a new inverted index of this type.
+	 *
+	 * @param databank
+	 *            data bank which is indexed.
+	 * @param encoder
+	 *            encoder of the indexed sub-sequences.
+	 * @return the new and not loaded index.
+	 */
+	public MemoryInvertedIndex newIndex(AbstractSequenceDataBank databank, SequenceEncoder encoder) {
+		switch (this) {
+		case MAPPED:
+			return new MappedInvertedIndex(databank, encoder);
+		case COMPRESSED:
+			return new CompressedInvertedIndex(databank, encoder);
+		default:
+			return new MemoryInvertedIndex(databank, encoder);
+		}
+	}
+
+	/**
+	 * @param name
+	 *            the name of the type, as it is written in the configuration file.
+	 * @return the {@link InvertedIndexType} with the given name or <code>null</code> if there is
+	 *         not any.
+	 */
+	public static InvertedIndexType getByName(String name) {
+		for (InvertedIndexType type : values()) {
+			if (type.name.equalsIgnoreCase(name)) {
+				return type;
+			}
+		}
+		return null;
+	}
+}
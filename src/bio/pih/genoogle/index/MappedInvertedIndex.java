@@ -0,0 +1,87 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.io.AbstractSequenceDataBank;
+
+/**
+ * An inverted sub-sequences index which is not copied into the java heap. The entries area of the
+ * index file is memory mapped and the cursors read the entries directly from the mapped pages, so
+ * the loading only reads the offsets table and the index data is kept by the operating system
+ * page cache.
+ *
+ * @author albrecht
+ */
+public class MappedInvertedIndex extends MemoryInvertedIndex {
+
+	private static Logger logger = Logger.getLogger(MappedInvertedIndex.class.getCanonicalName());
+
+	private LongBuffer[] entries = null;
+
+	/**
+	 * @param databank
+	 * @param indexedSequenceEncoder
+	 */
+	public MappedInvertedIndex(AbstractSequenceDataBank databank, SequenceEncoder indexedSequenceEncoder) {
+		super(databank, indexedSequenceEncoder);
+	}
+
+	@Override
+	public MemoryPostingsCursor newCursor() {
+		return new MappedPostingsCursor();
+	}
+
+	/**
+	 * Only the offsets table is in the java heap, the entries are kept by the operating system.
+	 */
+	@Override
+	public long getMemoryUsage() {
+		if (offsets == null) {
+			return 0;
+		}
+		return offsets.length * 8l;
+	}
+
+	/**
+	 * Cursor which reads the entries directly from the mapped segments.
+	 */
+	private class MappedPostingsCursor extends MemoryPostingsCursor {
+		@Override
+		public long next() {
+			return InvertedIndexFile.getEntry(entries, pos++);
+		}
+	}
+
+	@Override
+	public void loadFromFile() throws IOException {
+		long b = System.currentTimeMillis();
+		logger.info("Mapping inverted index.");
+		checkVersion();
+
+		FileInputStream memoryInvertedIndexIS = new FileInputStream(getMemoryInvertedIndexFile());
+		try {
+			FileChannel channel = memoryInvertedIndexIS.getChannel();
+			this.offsets = InvertedIndexFile.readOffsets(channel, indexSize);
+			// The mappings remain valid after the channel is closed.
+			this.entries = InvertedIndexFile.mapEntries(channel, indexSize, offsets[indexSize]);
+		} finally {
+			memoryInvertedIndexIS.close();
+		}
+
+		this.loaded = true;
+		logger.info(offsets[indexSize] + " sub sequences were mapped in " + (System.currentTimeMillis() - b));
+	}
+}
@@ -7,29 +7,41 @@
 
 package bio.pih.genoogle.index;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel.MapMode;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
 
 import org.apache.log4j.Logger;
 
 import bio.pih.genoogle.encoder.SequenceEncoder;
 import bio.pih.genoogle.io.AbstractSequenceDataBank;
-import bio.pih.genoogle.io.proto.Io.InvertedIndexBuck;
 import bio.pih.genoogle.seq.SymbolList;
 
 /**
  * An inverted sub-sequences index stored in the memory.
+ * <p>
+ * The index is kept in a compressed sparse row layout: the table <code>offsets</code> has the
+ * position of the first entry of each bucket and all entries are stored contiguously, ordered by
+ * their sub-sequences, in chunks of {@link #CHUNK_SIZE} entries. So there is not one array per
+ * bucket and the whole index is a few objects for the garbage collector.
  * 
  * @author albrecht
  */
 public class MemoryInvertedIndex extends AbstractInvertedIndex {
 
-	protected long[][] index = null;
+	private static final int CHUNK_BITS = 24;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/**
+	 * Position of the first entry of each bucket. It has <code>indexSize + 1</code> positions.
+	 */
+	protected long[] offsets = null;
+	private long[][] postings = null;
+
+	private final File indexFile;
 
 	private static Logger logger = Logger.getLogger(MemoryInvertedIndex.class.getCanonicalName());
 
@@ -38,7 +50,19 @@ public class MemoryInvertedIndex extends AbstractInvertedIndex {
 	 * @param subSequenceLength
 	 */
 	public MemoryInvertedIndex(AbstractSequenceDataBank databank, SequenceEncoder indexedSequenceEncoder) {
+		this(databank, indexedSequenceEncoder, null);
+	}
+
+	/**
+	 * @param databank
+	 * @param indexedSequenceEncoder
+	 * @param indexFile
+	 *            file of this index or <code>null</code> to use the data bank index file. It is used
+	 *            by the delta segments of the data bank.
+	 */
+	public MemoryInvertedIndex(AbstractSequenceDataBank databank, SequenceEncoder indexedSequenceEncoder, File indexFile) {
 		super(databank, indexedSequenceEncoder);
+		this.indexFile = indexFile;
 	}
 
 	@Override
@@ -51,23 +75,41 @@ public class MemoryInvertedIndex extends AbstractInvertedIndex {
 		return getMatchingSubSequence(encodedSubSequence);
 	}
 
+	/**
+	 * Copies the bucket into a new array. Use {@link #newCursor()} to avoid the copy.
+	 */
 	@Override
 	public long[] getMatchingSubSequence(int encodedSubSequence) {
-		return index[encodedSubSequence];
+		MemoryPostingsCursor cursor = newCursor();
+		int length = cursor.seek(encodedSubSequence);
+		if (length == 0) {
+			return EMPTY_ARRAY;
+		}
+		long[] bucket = new long[length];
+		for (int i = 0; i < length; i++) {
+			bucket[i] = cursor.next();
+		}
+		return bucket;
+	}
+
+	@Override
+	public MemoryPostingsCursor newCursor() {
+		return new MemoryPostingsCursor();
 	}
 
 	@Override
 	public String indexStatus() {
 		StringBuilder sb = new StringBuilder();
-		for (long[] bucket : index) {
-			if (bucket != null) {
-				for (long subSequenceInfoEncoded : bucket) {
-					sb.append("\t");
-					sb.append(SubSequenceIndexInfo.getSequenceId(subSequenceInfoEncoded));
-					sb.append(": ");
-					sb.append(SubSequenceIndexInfo.getStart(subSequenceInfoEncoded));
-					sb.append("\n");
-				}
+		MemoryPostingsCursor cursor = newCursor();
+		for (int i = 0; i < indexSize; i++) {
+			cursor.seek(i);
+			while (cursor.hasNext()) {
+				long subSequenceInfoEncoded = cursor.next();
+				sb.append("\t");
+				sb.append(SubSequenceIndexInfo.getSequenceId(subSequenceInfoEncoded));
+				sb.append(": ");
+				sb.append(SubSequenceIndexInfo.getStart(subSequenceInfoEncoded));
+				sb.append("\n");
 			}
 		}
 		return sb.toString();
@@ -77,115 +119,153 @@ public class MemoryInvertedIndex extends AbstractInvertedIndex {
 	public void loadFromFile() throws IOException {
 		long b = System.currentTimeMillis();
 		logger.info("Loading inverted index.");
-		this.index = new long[indexSize][];
-
-		File memoryInvertedIndexFile = getMemoryInvertedIndexFile();
-		FileInputStream memoryInvertedIndexIS = new FileInputStream(memoryInvertedIndexFile);
-				
-		FileInputStream in = new FileInputStream(getMemoryInvertedOffsetIndexFile());
-		DataInputStream fileInputStream = new DataInputStream(new BufferedInputStream(in));
-		
-		long mmOffset = 0;
-		final long TWO_GB = Integer.MAX_VALUE;
-		final long invertedIndexFileLength = memoryInvertedIndexFile.length();
-		
-                MappedByteBuffer map = null;        
-		if (invertedIndexFileLength > TWO_GB) {			
-			map = memoryInvertedIndexIS.getChannel().map(MapMode.READ_ONLY, mmOffset, TWO_GB);
-		} else {
-			map = memoryInvertedIndexIS.getChannel().map(MapMode.READ_ONLY, mmOffset, invertedIndexFileLength);
-		}
-		
-		long totalSubSequences = 0;
-		
-		while (fileInputStream.available() > 0) {
-			IndexFileOffset indexFilePosition = IndexFileOffset.newFrom(fileInputStream);						
-
-			int subSequence = indexFilePosition.subSequence;
-			int length = indexFilePosition.length;
-			long offset = indexFilePosition.offset;
-			//System.out.println(subSequence);
-			if (offset + length > mmOffset + TWO_GB) {
-				mmOffset += (TWO_GB - length);
-                                if (mmOffset + TWO_GB > invertedIndexFileLength) {
-                                    long l = invertedIndexFileLength - mmOffset;
-                                    System.out.println(l);
-				    map = memoryInvertedIndexIS.getChannel().map(MapMode.READ_ONLY, mmOffset, l);
-                                } else {
-                                    map = memoryInvertedIndexIS.getChannel().map(MapMode.READ_ONLY, mmOffset, TWO_GB);
-                                }
-			}
-										
-			long reOffset = offset - mmOffset;
-			if (reOffset > Integer.MAX_VALUE) {
-				logger.fatal(reOffset + " is too big for " + reOffset);
-				System.exit(-2);
-			}
-			byte[] data = new byte[length];
-			map.position((int) reOffset);
-			map.get(data);
+		checkVersion();
 
-			InvertedIndexBuck invertedIndexBuck = InvertedIndexBuck.parseFrom(data);
+		FileInputStream memoryInvertedIndexIS = new FileInputStream(getMemoryInvertedIndexFile());
+		try {
+			FileChannel channel = memoryInvertedIndexIS.getChannel();
+			long[] offsets = InvertedIndexFile.readOffsets(channel, indexSize);
+			long totalEntries = offsets[indexSize];
+			LongBuffer[] entries = InvertedIndexFile.mapEntries(channel, indexSize, totalEntries);
 
-			long[] entries = new long[invertedIndexBuck.getBuckCount()];
-			for (int j = 0; j < invertedIndexBuck.getBuckCount(); j++) {
-				entries[j] = invertedIndexBuck.getBuck(j);
+			long[][] postings = new long[(int) ((totalEntries + CHUNK_MASK) >>> CHUNK_BITS)][];
+			for (int i = 0; i < postings.length; i++) {
+				long first = (long) i << CHUNK_BITS;
+				postings[i] = new long[(int) Math.min(CHUNK_SIZE, totalEntries - first)];
+				InvertedIndexFile.getEntries(entries, first, postings[i], 0, postings[i].length);
 			}
-			totalSubSequences += invertedIndexBuck.getBuckCount();
 
-			index[subSequence] = entries;
+			this.offsets = offsets;
+			this.postings = postings;
+			logger.info(totalEntries + " sub sequences was loaded into the inverted index.");
+		} finally {
+			memoryInvertedIndexIS.close();
 		}
 
+		this.loaded = true;
+		logger.info("Inverted index loaded in " + (System.currentTimeMillis() - b));
+	}
+
+	/**
+	 * @return the biggest sequence id of the entries of this index, or <code>-1</code> if it has
+	 *         no entries.
+	 */
+	public int getMaxSequenceId() {
+		int max = -1;
+		MemoryPostingsCursor cursor = newCursor();
 		for (int i = 0; i < indexSize; i++) {
-			if (index[i] == null) {
-				index[i] = EMPTY_ARRAY;
+			cursor.seek(i);
+			while (cursor.hasNext()) {
+				max = Math.max(max, SubSequenceIndexInfo.getSequenceId(cursor.next()));
 			}
 		}
-	
-		this.loaded = true;
-		logger.info(totalSubSequences + " sub sequences was loaded into the inverted index.");
-		logger.info("Inverted index loaded in " + (System.currentTimeMillis() - b));
+		return max;
 	}
 
-	@Override
-	public boolean fileExists() {
-		return memoryInvertedIndexFileExisits() && memoryInvertedOffsetIndexFileExisits();
+	/**
+	 * @return approximated quantity of bytes of the java heap used by the loaded index.
+	 */
+	public long getMemoryUsage() {
+		if (offsets == null) {
+			return 0;
+		}
+		return (offsets.length + offsets[indexSize]) * 8l;
 	}
 
-	private boolean memoryInvertedIndexFileExisits() {
-		return getMemoryInvertedIndexFile().exists();
+	/**
+	 * Cursor over the contiguous entries. It only keeps the actual and the end positions.
+	 */
+	public class MemoryPostingsCursor extends PostingsCursor {
+		protected long pos = 0;
+		protected long end = 0;
+
+		@Override
+		public int seek(int encodedSubSequence) {
+			pos = offsets[encodedSubSequence];
+			end = offsets[encodedSubSequence + 1];
+			return (int) (end - pos);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos < end;
+		}
+
+		@Override
+		public long next() {
+			long entry = postings[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)];
+			pos++;
+			return entry;
+		}
 	}
 
-	private boolean memoryInvertedOffsetIndexFileExisits() {
+	/**
+	 * Checks that the index file is in the current {@link InvertedIndexFile} format. The version 1
+	 * files are not converted implicitly, they must be converted with
+	 * {@link bio.pih.genoogle.index.builder.InvertedIndexConverter}.
+	 *
+	 * @throws IOException
+	 *             if the index file is in the version 1 format.
+	 */
+	public void checkVersion() throws IOException {
+		File file = getMemoryInvertedIndexFile();
+		if (InvertedIndexFile.getVersion(file) == 1) {
+			throw new IOException("The inverted index " + file + " is in the version 1 format. Convert it with "
+					+ "bio.pih.genoogle.index.builder.InvertedIndexConverter <databank path> <sub-sequence length> [dna|protein].");
+		}
+	}
 
-		return getMemoryInvertedOffsetIndexFile().exists();
+	@Override
+	public boolean fileExists() {
+		return check();
 	}
 
 	public File getMemoryInvertedIndexFile() {
+		if (indexFile != null) {
+			return indexFile;
+		}
 		return new File(databank.getFullPath() + ".midx");
 
 	}
 
+	/**
+	 * @return the offsets file of the version 1 index format.
+	 */
 	public File getMemoryInvertedOffsetIndexFile() {
 		return new File(databank.getFullPath() + ".oidx");
 	}
 
+	/**
+	 * @return <code>true</code> if the index file exists and, when it is in the version 1 format,
+	 *         its offsets file also exists.
+	 */
 	public boolean check() {
-		if (getMemoryInvertedIndexFile().exists() && getMemoryInvertedOffsetIndexFile().exists()) {
-			return true;
+		if (!getMemoryInvertedIndexFile().exists()) {
+			return false;
+		}
+		try {
+			return InvertedIndexFile.getVersion(getMemoryInvertedIndexFile()) == InvertedIndexFile.VERSION
+					|| getMemoryInvertedOffsetIndexFile().exists();
+		} catch (IOException e) {
+			logger.error("Error reading " + getMemoryInvertedIndexFile(), e);
+			return false;
 		}
-		return false;
 	}
 
+	/**
+	 * Deletes the index file and, if it is the data bank index, its version 1 offsets file. The
+	 * delta segments are always written in the current format and the offsets file of the data
+	 * bank is not theirs.
+	 */
 	public void delete() {
 		if (getMemoryInvertedIndexFile().exists()) {
 			boolean delete = getMemoryInvertedIndexFile().delete();
 			if (!delete) {
-				logger.error(getMemoryInvertedOffsetIndexFile() + " can not be deleted.");
+				logger.error(getMemoryInvertedIndexFile() + " can not be deleted.");
 			}
 		}
 
-		if (getMemoryInvertedOffsetIndexFile().exists()) {
+		if (indexFile == null && getMemoryInvertedOffsetIndexFile().exists()) {
 			boolean delete = getMemoryInvertedOffsetIndexFile().delete();
 			if (!delete) {
 				logger.error(getMemoryInvertedOffsetIndexFile() + " can not be deleted.");
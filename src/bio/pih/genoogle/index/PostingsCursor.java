@@ -0,0 +1,69 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index;
+
+import java.io.IOException;
+
+/**
+ * Iterates over the entries of the inverted index buckets without copying them into a new array.
+ * A cursor is not thread safe, but it can be reused for many buckets by calling
+ * {@link #seek(int)} again.
+ *
+ * @author albrecht
+ */
+public abstract class PostingsCursor {
+
+	/**
+	 * Positions the cursor at the begin of the bucket of the given sub-sequence.
+	 *
+	 * @param encodedSubSequence
+	 * @return quantity of entries in the bucket.
+	 */
+	public abstract int seek(int encodedSubSequence) throws IOException;
+
+	/**
+	 * @return <code>true</code> if there are more entries in the actual bucket.
+	 */
+	public abstract boolean hasNext();
+
+	/**
+	 * @return the next entry of the actual bucket, encoded by {@link SubSequenceIndexInfo}.
+	 */
+	public abstract long next();
+
+	/**
+	 * Cursor over buckets returned as arrays by
+	 * {@link AbstractInvertedIndex#getMatchingSubSequence(int)}.
+	 */
+	static class ArrayPostingsCursor extends PostingsCursor {
+		private final AbstractInvertedIndex index;
+		private long[] bucket = new long[0];
+		private int pos = 0;
+
+		ArrayPostingsCursor(AbstractInvertedIndex index) {
+			this.index = index;
+		}
+
+		@Override
+		public int seek(int encodedSubSequence) throws IOException {
+			bucket = index.getMatchingSubSequence(encodedSubSequence);
+			pos = 0;
+			return bucket.length;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos < bucket.length;
+		}
+
+		@Override
+		public long next() {
+			return bucket[pos++];
+		}
+	}
+}
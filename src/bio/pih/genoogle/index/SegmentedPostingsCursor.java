@@ -0,0 +1,58 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index;
+
+import java.io.IOException;
+
+/**
+ * Cursor over the buckets of many index segments of the same data bank, like its main index and
+ * the delta segments of appended sequences. The bucket of a sub-sequence is the concatenation of
+ * the buckets of the segments in the given order.
+ *
+ * @author albrecht
+ */
+public class SegmentedPostingsCursor extends PostingsCursor {
+
+	private final PostingsCursor[] cursors;
+	private int actual = 0;
+
+	/**
+	 * @param cursors
+	 *            cursors of the segments, in the order of their sequences ids.
+	 */
+	public SegmentedPostingsCursor(PostingsCursor[] cursors) {
+		this.cursors = cursors;
+	}
+
+	@Override
+	public int seek(int encodedSubSequence) throws IOException {
+		int length = 0;
+		for (PostingsCursor cursor : cursors) {
+			length += cursor.seek(encodedSubSequence);
+		}
+		actual = 0;
+		return length;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (actual < cursors.length) {
+			if (cursors[actual].hasNext()) {
+				return true;
+			}
+			actual++;
+		}
+		return false;
+	}
+
+	@Override
+	public long next() {
+		hasNext();
+		return cursors[actual].next();
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index.builder;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.index.IndexFileOffset;
+import bio.pih.genoogle.index.InvertedIndexFile;
+import bio.pih.genoogle.io.proto.Io.InvertedIndexBuck;
+import bio.pih.genoogle.seq.AminoAcidAlphabet;
+import bio.pih.genoogle.seq.DNAAlphabet;
+
+/**
+ * Converts inverted index files from the version 1 format, protocol buffers buckets with a
+ * separated offsets file, to the current {@link InvertedIndexFile} format, without formatting
+ * the data bank again.
+ *
+ * @author albrecht
+ */
+public class InvertedIndexConverter {
+
+	private static Logger logger = Logger.getLogger(InvertedIndexConverter.class.getCanonicalName());
+
+	private InvertedIndexConverter() {
+	}
+
+	/**
+	 * Converts the index. When the conversion finishes, the index file is atomically replaced and
+	 * the offsets file is deleted. If the conversion fails, the index file is not changed.
+	 *
+	 * @param indexFile
+	 *            version 1 inverted index file (<i>.midx</i>).
+	 * @param offsetIndexFile
+	 *            version 1 offsets file (<i>.oidx</i>).
+	 * @param indexSize
+	 *            quantity of possible encoded sub-sequences.
+	 */
+	public static void convert(File indexFile, File offsetIndexFile, int indexSize) throws IOException {
+		long begin = System.currentTimeMillis();
+		logger.info("Converting the inverted index " + indexFile + " to the version " + InvertedIndexFile.VERSION + ".");
+
+		File convertedFile = new File(indexFile.getPath() + ".tmp");
+		InvertedIndexWriter writer = new InvertedIndexWriter(convertedFile, indexSize);
+
+		boolean converted = false;
+		try {
+			FileInputStream indexIS = new FileInputStream(indexFile);
+			DataInputStream offsetsStream = new DataInputStream(new BufferedInputStream(new FileInputStream(offsetIndexFile)));
+			try {
+				FileChannel channel = indexIS.getChannel();
+				while (offsetsStream.available() > 0) {
+					IndexFileOffset indexFileOffset = IndexFileOffset.newFrom(offsetsStream);
+					ByteBuffer data = ByteBuffer.allocate(indexFileOffset.getLength());
+					long position = indexFileOffset.getOffset();
+					while (data.hasRemaining()) {
+						int read = channel.read(data, position);
+						if (read < 0) {
+							throw new IOException("Unexpected end of " + indexFile + " at " + position + ".");
+						}
+						position += read;
+					}
+
+					InvertedIndexBuck buck = InvertedIndexBuck.parseFrom(data.array());
+					writer.beginBucket(indexFileOffset.getSubSequence());
+					for (int i = 0; i < buck.getBuckCount(); i++) {
+						writer.addEntry(buck.getBuck(i));
+					}
+				}
+			} finally {
+				offsetsStream.close();
+				indexIS.close();
+			}
+			writer.close();
+
+			Files.move(convertedFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			converted = true;
+		} finally {
+			if (!converted) {
+				writer.discard();
+			}
+		}
+		if (!offsetIndexFile.delete()) {
+			logger.error(offsetIndexFile + " can not be deleted.");
+		}
+
+		logger.info(writer.getTotalEntries() + " entries converted in " + (System.currentTimeMillis() - begin) + "ms.");
+	}
+
+	/**
+	 * Converts the index of a data bank. Parameters: the data bank path without extension, the
+	 * sub-sequences length and optionally the sequences type (<i>dna</i>, the default, or
+	 * <i>protein</i>).
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: InvertedIndexConverter <databank path> <sub-sequence length> [dna|protein]");
+			return;
+		}
+		String path = args[0];
+		int subSequenceLength = Integer.parseInt(args[1]);
+		int alphabetSize = DNAAlphabet.SINGLETON.getSize();
+		if (args.length > 2 && args[2].toLowerCase().equals("protein")) {
+			alphabetSize = AminoAcidAlphabet.SINGLETON.getSize();
+		}
+		int indexSize = 1 << (subSequenceLength * SequenceEncoder.bitsByAlphabetSize(alphabetSize));
+
+		File indexFile = new File(path + ".midx");
+		if (InvertedIndexFile.getVersion(indexFile) == InvertedIndexFile.VERSION) {
+			System.err.println(indexFile + " is already in the version " + InvertedIndexFile.VERSION + ".");
+			return;
+		}
+		convert(indexFile, new File(path + ".oidx"), indexSize);
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index.builder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+
+import bio.pih.genoogle.index.InvertedIndexFile;
+
+/**
+ * Merges inverted index files of the same data bank into one {@link InvertedIndexFile}. It is
+ * used to fold the delta segments, built when sequences are appended to a data bank, into its
+ * main index.
+ * <p>
+ * The bucket of each sub-sequence in the merged index is the concatenation of the buckets of the
+ * segments in the given order. As the sequences of each segment have bigger ids than the
+ * sequences of the previous segments, the merged buckets stay sorted by sequence and position.
+ *
+ * @author albrecht
+ */
+public class InvertedIndexMerger {
+
+	private static Logger logger = Logger.getLogger(InvertedIndexMerger.class.getCanonicalName());
+
+	private InvertedIndexMerger() {
+	}
+
+	/**
+	 * Merges the segments into the <code>mergedFile</code>. The segments are not changed, the
+	 * caller replaces them by the merged file.
+	 *
+	 * @param mergedFile
+	 *            file where the merged index is written. It is deleted if the merge fails.
+	 * @param segments
+	 *            index files to merge, in the order of their sequences ids.
+	 * @param indexSize
+	 *            quantity of possible encoded sub-sequences.
+	 */
+	public static void merge(File mergedFile, File[] segments, int indexSize) throws IOException {
+		long begin = System.currentTimeMillis();
+		logger.info("Merging " + segments.length + " index segments into " + mergedFile + ".");
+
+		for (File segment : segments) {
+			if (InvertedIndexFile.getVersion(segment) != InvertedIndexFile.VERSION) {
+				throw new IOException("The index segment " + segment + " is not in the version " + InvertedIndexFile.VERSION
+						+ ".");
+			}
+		}
+
+		InvertedIndexWriter writer = new InvertedIndexWriter(mergedFile, indexSize);
+		boolean merged = false;
+		FileInputStream[] streams = new FileInputStream[segments.length];
+		long[][] offsets = new long[segments.length][];
+		LongBuffer[][] entries = new LongBuffer[segments.length][];
+		try {
+			for (int s = 0; s < segments.length; s++) {
+				streams[s] = new FileInputStream(segments[s]);
+				FileChannel channel = streams[s].getChannel();
+				offsets[s] = InvertedIndexFile.readOffsets(channel, indexSize);
+				entries[s] = InvertedIndexFile.mapEntries(channel, indexSize, offsets[s][indexSize]);
+			}
+
+			for (int i = 0; i < indexSize; i++) {
+				boolean begun = false;
+				for (int s = 0; s < segments.length; s++) {
+					long end = offsets[s][i + 1];
+					for (long e = offsets[s][i]; e < end; e++) {
+						if (!begun) {
+							writer.beginBucket(i);
+							begun = true;
+						}
+						writer.addEntry(InvertedIndexFile.getEntry(entries[s], e));
+					}
+				}
+			}
+			writer.close();
+			merged = true;
+		} finally {
+			for (FileInputStream stream : streams) {
+				if (stream != null) {
+					stream.close();
+				}
+			}
+			if (!merged) {
+				writer.discard();
+			}
+		}
+
+		logger.info(writer.getTotalEntries() + " entries merged in " + (System.currentTimeMillis() - begin) + "ms.");
+	}
+}
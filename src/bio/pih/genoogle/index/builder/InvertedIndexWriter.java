@@ -0,0 +1,127 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index.builder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import bio.pih.genoogle.index.InvertedIndexFile;
+
+/**
+ * Writes an inverted index file in the {@link InvertedIndexFile} format. The buckets must be
+ * written in the increasing order of their encoded sub-sequences.
+ *
+ * @author albrecht
+ */
+public class InvertedIndexWriter {
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private final File path;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long[] offsets;
+	private final ByteBuffer buffer;
+
+	private int nextSubSequence;
+	private long totalEntries;
+
+	/**
+	 * @param file
+	 *            file where the index will be written. Its previous content is discarded.
+	 * @param indexSize
+	 *            quantity of possible encoded sub-sequences.
+	 */
+	public InvertedIndexWriter(File file, int indexSize) throws IOException {
+		this.path = file;
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+		this.channel.position(InvertedIndexFile.getEntriesPosition(indexSize));
+		this.offsets = new long[indexSize + 1];
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(InvertedIndexFile.BYTE_ORDER);
+		this.nextSubSequence = 0;
+		this.totalEntries = 0;
+	}
+
+	/**
+	 * Begins the bucket of the given sub-sequence. The following calls to {@link #addEntry(long)}
+	 * will add entries into it.
+	 *
+	 * @param subSequence
+	 *            encoded sub-sequence, must be bigger than the previous begun one.
+	 */
+	public void beginBucket(int subSequence) throws IOException {
+		if (subSequence < nextSubSequence) {
+			throw new IOException("The bucket " + subSequence + " is out of order. The next bucket should be at least "
+					+ nextSubSequence + ".");
+		}
+		if (subSequence >= offsets.length - 1) {
+			throw new IOException("The bucket " + subSequence + " is bigger than the index size " + (offsets.length - 1) + ".");
+		}
+		for (; nextSubSequence <= subSequence; nextSubSequence++) {
+			offsets[nextSubSequence] = totalEntries;
+		}
+	}
+
+	/**
+	 * @param subSequenceIndexInfo
+	 *            entry encoded by {@link bio.pih.genoogle.index.SubSequenceIndexInfo}.
+	 */
+	public void addEntry(long subSequenceIndexInfo) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.putLong(subSequenceIndexInfo);
+		totalEntries++;
+	}
+
+	/**
+	 * @return quantity of entries written.
+	 */
+	public long getTotalEntries() {
+		return totalEntries;
+	}
+
+	/**
+	 * Writes the header and the offsets table, forces them to the disk and closes the file.
+	 */
+	public void close() throws IOException {
+		flush();
+		for (; nextSubSequence < offsets.length; nextSubSequence++) {
+			offsets[nextSubSequence] = totalEntries;
+		}
+		InvertedIndexFile.writeHeader(channel, offsets);
+		channel.force(true);
+		file.close();
+	}
+
+	/**
+	 * Closes the file, if it is still opened, and deletes it. Used when the index can not be
+	 * finished.
+	 */
+	public void discard() {
+		try {
+			file.close();
+		} catch (IOException e) {
+			// The file is deleted anyway.
+		}
+		path.delete();
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.index.builder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import bio.pih.genoogle.index.IndexConstructionException;
+import bio.pih.genoogle.index.SubSequenceIndexInfo;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Sorts the inverted index entries by sub-sequence, sequence and position using many threads.
+ * <p>
+ * The entries are kept in two parallel primitive arrays: the encoded sub-sequences and the
+ * {@link SubSequenceIndexInfo} of each entry. They are first partitioned by the high order bits
+ * of the sub-sequence, then each partition is sorted by a worker thread with a counting sort by
+ * the remaining sub-sequence bits and the entries of each sub-sequence are sorted by their
+ * {@link SubSequenceIndexInfo}, which is ordered by sequence and position.
+ *
+ * @author albrecht
+ */
+class ParallelEntriesSorter {
+
+	/**
+	 * Memory used by each entry while sorting: the entry and its copy.
+	 */
+	static final int ENTRY_MEMORY = 2 * (4 + 8);
+
+	private final ExecutorService executor;
+	private final int subSequenceBits;
+	private final int partitionBits;
+
+	private int[] subSequencesCopy = new int[0];
+	private long[] infosCopy = new long[0];
+
+	/**
+	 * @param indexSize
+	 *            quantity of possible sub-sequences, must be a power of two.
+	 * @param threads
+	 *            quantity of sorting threads.
+	 */
+	ParallelEntriesSorter(int indexSize, int threads) {
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				// Must not hold the JVM open if the construction fails before shutdown().
+				Thread thread = new Thread(r, "Index entries sorter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.subSequenceBits = Integer.numberOfTrailingZeros(indexSize);
+		// More partitions than threads to balance the work between them.
+		int wantedPartitionBits = 32 - Integer.numberOfLeadingZeros(threads * 4 - 1);
+		this.partitionBits = Math.min(subSequenceBits, wantedPartitionBits);
+	}
+
+	/**
+	 * Sorts the first <code>length</code> entries of the arrays.
+	 */
+	void sort(final int[] subSequences, final long[] infos, int length) throws IndexConstructionException {
+		if (subSequencesCopy.length < length) {
+			subSequencesCopy = new int[length];
+			infosCopy = new long[length];
+		}
+		final int[] partitionedSubSequences = subSequencesCopy;
+		final long[] partitionedInfos = infosCopy;
+
+		final int shift = subSequenceBits - partitionBits;
+		int partitions = 1 << partitionBits;
+		int[] starts = new int[partitions + 1];
+		for (int i = 0; i < length; i++) {
+			starts[(subSequences[i] >>> shift) + 1]++;
+		}
+		for (int p = 0; p < partitions; p++) {
+			starts[p + 1] += starts[p];
+		}
+		int[] next = Arrays.copyOf(starts, partitions);
+		for (int i = 0; i < length; i++) {
+			int pos = next[subSequences[i] >>> shift]++;
+			partitionedSubSequences[pos] = subSequences[i];
+			partitionedInfos[pos] = infos[i];
+		}
+
+		List<Future<?>> futures = Lists.newArrayList();
+		for (int p = 0; p < partitions; p++) {
+			final int begin = starts[p];
+			final int end = starts[p + 1];
+			final int base = p << shift;
+			if (begin == end) {
+				continue;
+			}
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					sortPartition(partitionedSubSequences, partitionedInfos, subSequences, infos, begin, end, base, 1 << shift);
+					return null;
+				}
+			}));
+		}
+
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			throw new IndexConstructionException(e);
+		} catch (ExecutionException e) {
+			throw new IndexConstructionException(e.getCause());
+		}
+	}
+
+	/**
+	 * Counting sort of the partition by sub-sequence from the <code>src</code> arrays into the
+	 * <code>dest</code> arrays, followed by the sort of the entries of each sub-sequence.
+	 */
+	private static void sortPartition(int[] srcSubSequences, long[] srcInfos, int[] destSubSequences, long[] destInfos,
+			int begin, int end, int base, int rangeSize) {
+		int[] starts = new int[rangeSize + 1];
+		for (int i = begin; i < end; i++) {
+			starts[srcSubSequences[i] - base + 1]++;
+		}
+		starts[0] = begin;
+		for (int s = 0; s < rangeSize; s++) {
+			starts[s + 1] += starts[s];
+		}
+
+		int[] next = Arrays.copyOf(starts, rangeSize);
+		for (int i = begin; i < end; i++) {
+			int pos = next[srcSubSequences[i] - base]++;
+			destSubSequences[pos] = srcSubSequences[i];
+			destInfos[pos] = srcInfos[i];
+		}
+
+		for (int s = 0; s < rangeSize; s++) {
+			if (starts[s + 1] - starts[s] > 1) {
+				Arrays.sort(destInfos, starts[s], starts[s + 1]);
+			}
+		}
+	}
+
+	/**
+	 * Stops the sorting threads.
+	 */
+	void shutdown() {
+		executor.shutdown();
+	}
+}
@@ -35,6 +35,7 @@ import bio.pih.genoogle.io.InvalidConfigurationException;
 import bio.pih.genoogle.io.Output;
 import bio.pih.genoogle.io.reader.ParseException;
 import bio.pih.genoogle.search.SearchParams;
+import bio.pih.genoogle.search.SearchScheduler;
 import bio.pih.genoogle.search.UnknowDataBankException;
 import bio.pih.genoogle.search.SearchParams.Parameter;
 import bio.pih.genoogle.search.results.SearchResults;
@@ -56,6 +57,8 @@ public class Console implements Runnable, GenoogleListener {
 	private static final String SEARCH = "search";
 	private static final String PREV = "prev";
 	private static final String HELP = "help";
+	private static final String RELOAD = "reload";
+	private static final String THREADS = "threads";
 
 	private static Logger profileLogger = Logger.getLogger("profile");
 
@@ -198,6 +201,24 @@ public class Console implements Runnable, GenoogleListener {
 							System.out.println(db.getName() + " - " + db.getAlphabet().getName() + "(" + db.getClass().getName()+ ")");
 						}
 
+					} else if (commands[0].equals(RELOAD)) {
+						if (commands.length != 2) {
+							System.out.println("RELOAD database");
+							continue;
+						}
+						genoogle.reloadDatabank(commands[1]);
+						System.out.println(commands[1] + " is being reloaded.");
+
+					} else if (commands[0].equals(THREADS)) {
+						SearchScheduler scheduler = genoogle.getSearchScheduler();
+						System.out.println("requests: " + scheduler.getRunningRequests() + " of "
+								+ scheduler.getMaxSimultaneousRequests() + " running and " + scheduler.getWaitingRequests()
+								+ " waiting" + (scheduler.isUsingVirtualThreads() ? " in virtual threads." : "."));
+						System.out.println("index search: " + scheduler.getIndexSearchThreads() + " threads and "
+								+ scheduler.getIndexSearchQueueDepth() + " waiting tasks.");
+						System.out.println("alignment: " + scheduler.getAlignmentThreads() + " threads and "
+								+ scheduler.getAlignmentQueueDepth() + " waiting tasks.");
+
 					} else if (commands[0].equals(DEFAULT)) {
 						System.out.println(genoogle.getDefaultDatabank());
 
@@ -257,6 +278,8 @@ public class Console implements Runnable, GenoogleListener {
 						System.out.println("Commands:");
 						System.out.println("search <data bank> <input file> <output file> <parameters>: does the search");
 						System.out.println("list : lists the data banks.");
+						System.out.println("reload <data bank> : loads again the data bank files and replaces it without stopping the searches.");
+						System.out.println("threads : shows the threads shared by the searches and their waiting tasks.");
 						System.out.println("parameters : shows the search parameters and their values.");
 						System.out.println("set <parameter>=<value> : set the parameters value.");
 						System.out.println("gc : executes the java garbage collection.");
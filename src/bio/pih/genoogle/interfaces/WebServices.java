@@ -41,6 +41,7 @@ import bio.pih.genoogle.io.IndexedSequenceDataBank;
 import bio.pih.genoogle.io.Output;
 import bio.pih.genoogle.io.SplittedDatabankCollection;
 import bio.pih.genoogle.io.reader.ParseException;
+import bio.pih.genoogle.search.SearchJob;
 import bio.pih.genoogle.search.SearchParams;
 import bio.pih.genoogle.search.SearchParams.Parameter;
 import bio.pih.genoogle.search.results.SearchResults;
@@ -87,6 +88,19 @@ public class WebServices {
 		return databanksList;
 	}
 
+	/**
+	 * Begins to load again the data bank files. The searches continue using the actual data bank
+	 * until the new one is loaded.
+	 */
+	@WebMethod(operationName = "reloadDatabank")
+	public boolean reloadDatabank(@WebParam(name = "databank") String databank) {
+		if (!databanks().contains(databank)) {
+			return false;
+		}
+		genoogle.reloadDatabank(databank);
+		return true;
+	}
+
 	@SuppressWarnings("unchecked")
 	@WebMethod(operationName = "parameters")
 	public List<String> parameters() {
@@ -192,6 +206,57 @@ public class WebServices {
 		return xmlToString(doc);
 	}
 
+	/**
+	 * Submits the search and returns its identifier without waiting it. The client should query
+	 * the search status until it is finished and then get its results.
+	 */
+	@SuppressWarnings("unchecked")
+	@WebMethod(operationName = "submitSearch")
+	public long submitSearch(@WebParam(name = "query") String query, @WebParam(name = "databank") String databank) {
+		MessageContext mc = wsContext.getMessageContext();
+		HttpSession session = ((javax.servlet.http.HttpServletRequest) mc.get(MessageContext.SERVLET_REQUEST)).getSession();
+		if (session == null) {
+			throw new WebServiceException("No session in WebServiceContext");
+		}
+
+		Map<Parameter, Object> parameters = (Map<Parameter, Object>) session.getAttribute("parameters");
+		if (parameters == null) {
+			parameters = SearchParams.getSearchParamsMap();
+		}
+
+		return genoogle.submitSearch(query, databank, parameters);
+	}
+
+	/**
+	 * @return the status and progress of the submitted search.
+	 */
+	@WebMethod(operationName = "searchStatus")
+	public String searchStatus(@WebParam(name = "id") long id) {
+		SearchJob job = genoogle.getSearchJob(id);
+		if (job == null) {
+			return "UNKNOWN";
+		}
+		return job.getStatus() + " " + job.getProgress();
+	}
+
+	/**
+	 * @return the results of the finished search or <code>null</code> if it is not finished.
+	 */
+	@WebMethod(operationName = "searchResults")
+	public String searchResults(@WebParam(name = "id") long id) {
+		SearchResults sr = genoogle.getSearchResults(id);
+		if (sr == null) {
+			return null;
+		}
+		Document doc = Output.genoogleOutputToXML(sr);
+		return xmlToString(doc);
+	}
+
+	@WebMethod(operationName = "cancelSearch")
+	public boolean cancelSearch(@WebParam(name = "id") long id) {
+		return genoogle.cancelSearch(id);
+	}
+
 	@WebMethod
 	public boolean createDatabank(@WebParam(name = "name") String name,
 			@WebParam(name = "fastaFiles") List<String> fastaFiles,
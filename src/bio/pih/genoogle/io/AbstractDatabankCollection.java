@@ -228,6 +228,24 @@ public abstract class AbstractDatabankCollection<T extends AbstractSequenceDataB
 		return totalNumberOfSequences;
 	}
 
+	/**
+	 * Discards the cached totals, used when sequences are appended to a data bank of this
+	 * collection.
+	 */
+	void resetTotals() {
+		synchronized (this) {
+			this.totalDataBaseSize = -1;
+			this.totalNumberOfSequences = -1;
+		}
+	}
+
+	@Override
+	public void close() {
+		for (AbstractSequenceDataBank dataBank : databanks.values()) {
+			dataBank.close();
+		}
+	}
+
 	@Override
 	public void delete() {
 		for (AbstractSequenceDataBank dataBank: databanks.values()) {
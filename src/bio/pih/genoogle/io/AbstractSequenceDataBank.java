@@ -15,6 +15,7 @@ import java.util.NoSuchElementException;
 import bio.pih.genoogle.encoder.SequenceEncoder;
 import bio.pih.genoogle.encoder.SequenceEncoderFactory;
 import bio.pih.genoogle.index.IndexConstructionException;
+import bio.pih.genoogle.index.InvertedIndexType;
 import bio.pih.genoogle.index.ValueOutOfBoundsException;
 import bio.pih.genoogle.io.proto.Io.StoredDatabank;
 import bio.pih.genoogle.io.proto.Io.StoredDatabank.SequenceType;
@@ -42,6 +43,8 @@ public abstract class AbstractSequenceDataBank {
 	protected long dataBankSize;
 
 	protected int lowComplexityFilter = -1;
+	protected InvertedIndexType indexType = null;
+	protected InvertedIndexCache indexCache = null;
 
 	protected final File path;
 	protected final AbstractDatabankCollection<? extends AbstractSimpleSequenceDataBank> parent;
@@ -208,6 +211,13 @@ public abstract class AbstractSequenceDataBank {
 	 */
 	abstract public void delete();
 
+	/**
+	 * Releases the opened files of this data bank. It is called when the data bank is replaced
+	 * and is not used anymore, but the files are opened again if it is accessed after.
+	 */
+	public void close() {
+	}
+
 	public void setLowComplexityFilter(int lowComplexityFilter) {
 		this.lowComplexityFilter = lowComplexityFilter;
 	}
@@ -218,7 +228,41 @@ public abstract class AbstractSequenceDataBank {
 		}
 		return lowComplexityFilter;
 	}
+
+	public void setIndexType(InvertedIndexType indexType) {
+		this.indexType = indexType;
+	}
+
+	/**
+	 * @return how the inverted index of this data bank is loaded. If it is not set, the parent
+	 *         type is used and if neither are set, {@link InvertedIndexType#MEMORY}.
+	 */
+	public InvertedIndexType getIndexType() {
+		if (indexType == null) {
+			if (parent != null) {
+				return parent.getIndexType();
+			}
+			return InvertedIndexType.MEMORY;
+		}
+		return indexType;
+	}
 	
+	public void setIndexCache(InvertedIndexCache indexCache) {
+		this.indexCache = indexCache;
+	}
+
+	/**
+	 * @return the cache which loads the inverted index of this data bank on demand or
+	 *         <code>null</code> if the index is loaded with the data bank. If it is not set, the
+	 *         parent cache is used.
+	 */
+	public InvertedIndexCache getIndexCache() {
+		if (indexCache == null && parent != null) {
+			return parent.getIndexCache();
+		}
+		return indexCache;
+	}
+
 	protected void setStoredDatabankInfo(StoredDatabank.Builder storedDatabankBuilder) {
 		storedDatabankBuilder.setQtdSequences(numberOfSequences);
 		storedDatabankBuilder.setQtdBases(dataBankSize);
@@ -48,11 +48,21 @@ import com.google.protobuf.CodedInputStream;
 public abstract class AbstractSimpleSequenceDataBank extends AbstractSequenceDataBank {
 
 	private volatile int nextSequenceId;
-	protected StoredDatabank storedDatabank;
+	/**
+	 * Replaced, never modified, when sequences are added, so the sequences are read without
+	 * locking this data bank.
+	 */
+	protected volatile StoredDatabank storedDatabank;
 
 	private File dataBankFile = null;
 	private File storedDataBankInfoFile = null;
-	private FileChannel indexFileChannel = null;
+	private volatile FileChannel indexFileChannel = null;
+	private final Object indexFileChannelLock = new Object();
+
+	/**
+	 * Lock of the writers of the data bank files.
+	 */
+	protected final Object appendLock = new Object();
 
 	Logger logger = Logger.getLogger(AbstractSequenceDataBank.class.getCanonicalName());
 
@@ -86,6 +96,7 @@ public abstract class AbstractSimpleSequenceDataBank extends AbstractSequenceDat
 
 		this.numberOfSequences = storedDatabank.getQtdSequences();
 		this.dataBankSize = storedDatabank.getQtdBases();
+		this.nextSequenceId = numberOfSequences;
 
 		logger.info("Databank loaded in " + (System.currentTimeMillis() - begin) + "ms with " + this.numberOfSequences
 				+ " sequences.");
@@ -97,16 +108,26 @@ public abstract class AbstractSimpleSequenceDataBank extends AbstractSequenceDat
 	}
 			
 	/**
+	 * Reads the sequence with a positional read, without locking this data bank, so it is not
+	 * blocked by the sequences being added.
+	 *
 	 * @param sequenceId
 	 * @return {@link StoredSequence} of the given sequenceId.
 	 */
-	public synchronized StoredSequence getSequenceFromId(int sequenceId) throws IOException {
+	public StoredSequence getSequenceFromId(int sequenceId) throws IOException {
 		FileChannel channel = getIndexFileChannel();
 		StoredSequenceInfo storedSequenceInfo = storedDatabank.getSequencesInfo(sequenceId);
 		
 		byte[] data = new byte[storedSequenceInfo.getLength()];
 		ByteBuffer buffer = ByteBuffer.wrap(data);
-		channel.read(buffer, storedSequenceInfo.getOffset());
+		long position = storedSequenceInfo.getOffset();
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of " + getDataBankFile() + " reading the sequence " + sequenceId + ".");
+			}
+			position += read;
+		}
 		
 		return StoredSequence.parseFrom(data);
 	}
@@ -124,43 +145,78 @@ public abstract class AbstractSimpleSequenceDataBank extends AbstractSequenceDat
 		addFastaFile(getFullPath(), forceFormatting);
 	}
 
-	public synchronized void addFastaFile(File fastaFile, boolean forceFormatting) throws NoSuchElementException,
+	public void addFastaFile(File fastaFile, boolean forceFormatting) throws NoSuchElementException,
+			IOException, IndexConstructionException, ParseException, IllegalSymbolException {
+		synchronized (appendLock) {
+			commitSequences(writeSequences(fastaFile, forceFormatting));
+		}
+	}
+
+	/**
+	 * Writes the sequences of the FASTA file into the data bank file. The sequences can not be read
+	 * until they are committed by {@link #commitSequences(StoredDatabank)}. Both must be called
+	 * holding the {@link #appendLock}.
+	 *
+	 * @return the informations of the written sequences.
+	 */
+	protected StoredDatabank writeSequences(File fastaFile, boolean forceFormatting) throws NoSuchElementException,
 			IOException, IndexConstructionException, ParseException, IllegalSymbolException {
 		logger.info("Adding a FASTA file from " + fastaFile);
 		long begin = System.currentTimeMillis();
 		FileChannel dataBankFileChannel = new FileOutputStream(getDataBankFile(), true).getChannel();
-		FileChannel storedSequenceInfoChannel = new FileOutputStream(getStoredDataBankInfoFile(), true).getChannel();
 		bio.pih.genoogle.io.proto.Io.StoredDatabank.Builder storedDatabankBuilder = StoredDatabank.newBuilder();
 
-		BufferedReader is = new BufferedReader(new FileReader(fastaFile));
-		RichSequenceStreamReader fastaFileStream = IOTools.readFasta(is, alphabet);
-
-		while (fastaFileStream.hasNext()) {
-			RichSequence s = null;
-			try {
-				s = fastaFileStream.nextRichSequence();
-			} catch (IllegalSymbolException e) {
-				if (forceFormatting) {
-					logger.info(e);
-					continue;
-				} else {
-					throw e;
+		try {
+			BufferedReader is = new BufferedReader(new FileReader(fastaFile));
+			RichSequenceStreamReader fastaFileStream = IOTools.readFasta(is, alphabet);
+
+			while (fastaFileStream.hasNext()) {
+				RichSequence s = null;
+				try {
+					s = fastaFileStream.nextRichSequence();
+				} catch (IllegalSymbolException e) {
+					if (forceFormatting) {
+						logger.info(e);
+						continue;
+					} else {
+						throw e;
+					}
 				}
-			}
 
-			StoredSequenceInfo[] info = addSequence(s, dataBankFileChannel);
-			for (int i = 0; i < info.length; i++) {
-				storedDatabankBuilder.addSequencesInfo(info[i]);	
+				StoredSequenceInfo[] info = addSequence(s, dataBankFileChannel);
+				for (int i = 0; i < info.length; i++) {
+					storedDatabankBuilder.addSequencesInfo(info[i]);	
+				}
 			}
+			dataBankFileChannel.force(false);
+		} finally {
+			dataBankFileChannel.close();
 		}
 
 		setStoredDatabankInfo(storedDatabankBuilder);
-		storedDatabank = storedDatabankBuilder.build();
-		storedSequenceInfoChannel.write(ByteBuffer.wrap(storedDatabank.toByteArray()));
+		logger.info("FASTA file written in " + (System.currentTimeMillis() - begin) + "ms");
+		return storedDatabankBuilder.build();
+	}
 
-		storedSequenceInfoChannel.close();
-		dataBankFileChannel.close();
-		logger.info("FASTA file added in " + (System.currentTimeMillis() - begin) + "ms");
+	/**
+	 * Appends the informations of the written sequences into the stored data bank info file and
+	 * publishes them for the readers.
+	 */
+	protected void commitSequences(StoredDatabank addedDatabank) throws IOException {
+		FileChannel storedSequenceInfoChannel = new FileOutputStream(getStoredDataBankInfoFile(), true).getChannel();
+		try {
+			// The info file is read as a single message: the sequences informations of the appended
+			// message are concatenated and its totals replace the previous ones.
+			storedSequenceInfoChannel.write(ByteBuffer.wrap(addedDatabank.toByteArray()));
+			storedSequenceInfoChannel.force(false);
+		} finally {
+			storedSequenceInfoChannel.close();
+		}
+		if (storedDatabank == null) {
+			storedDatabank = addedDatabank;
+		} else {
+			storedDatabank = StoredDatabank.newBuilder(storedDatabank).mergeFrom(addedDatabank).build();
+		}
 	}
 
 	synchronized StoredSequenceInfo[] addSequence(RichSequence s, FileChannel dataBankFileChannel) throws IOException,
@@ -257,10 +313,31 @@ public abstract class AbstractSimpleSequenceDataBank extends AbstractSequenceDat
 	}
 	
 	private FileChannel getIndexFileChannel() throws IOException {
-		if (indexFileChannel == null) {
-			indexFileChannel = new RandomAccessFile(getDataBankFile(), "r").getChannel();
+		FileChannel channel = indexFileChannel;
+		if (channel == null) {
+			synchronized (indexFileChannelLock) {
+				channel = indexFileChannel;
+				if (channel == null) {
+					channel = new RandomAccessFile(getDataBankFile(), "r").getChannel();
+					indexFileChannel = channel;
+				}
+			}
+		}
+		return channel; 
+	}
+
+	@Override
+	public void close() {
+		synchronized (indexFileChannelLock) {
+			if (indexFileChannel != null) {
+				try {
+					indexFileChannel.close();
+				} catch (IOException e) {
+					logger.error("Error closing " + getDataBankFile(), e);
+				}
+				indexFileChannel = null;
+			}
 		}
-		return indexFileChannel; 
 	}
 
 	@Override
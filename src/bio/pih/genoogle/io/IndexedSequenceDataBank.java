@@ -9,34 +9,66 @@ package bio.pih.genoogle.io;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import bio.pih.genoogle.encoder.MaskEncoder;
 import bio.pih.genoogle.encoder.SequenceEncoder;
 import bio.pih.genoogle.index.IndexConstructionException;
+import bio.pih.genoogle.index.InvertedIndexType;
 import bio.pih.genoogle.index.MemoryInvertedIndex;
+import bio.pih.genoogle.index.PostingsCursor;
+import bio.pih.genoogle.index.SegmentedPostingsCursor;
 import bio.pih.genoogle.index.SubSequenceIndexInfo;
 import bio.pih.genoogle.index.ValueOutOfBoundsException;
 import bio.pih.genoogle.index.builder.InvertedIndexBuilder;
+import bio.pih.genoogle.index.builder.InvertedIndexMerger;
 import bio.pih.genoogle.io.proto.Io.StoredDatabank;
 import bio.pih.genoogle.io.reader.ParseException;
 import bio.pih.genoogle.seq.Alphabet;
 import bio.pih.genoogle.seq.IllegalSymbolException;
 import bio.pih.genoogle.seq.SymbolList;
 
+import com.google.common.collect.Lists;
+
 /**
  * A data bank witch index its sequences and uses similar subsequences index.
+ * <p>
+ * Sequences can be appended to an encoded data bank with
+ * {@link #appendFastaFile(File, boolean)}. The appended sequences are indexed into a delta
+ * segment, a small index file searched together with the main index, until
+ * {@link #mergeDeltaSegments()} folds the segments into the main index.
+ * <p>
+ * The delta segment is written before the appended sequences are committed into the stored
+ * data bank info file, and a segment with sequences that were not committed is discarded when
+ * the data bank is loaded. The merge moves the delta segments aside before replacing the main
+ * index by the merged one, and an interrupted merge is completed or rolled back when the data
+ * bank is loaded.
  *
  * @author albrecht
  *
  */
 public class IndexedSequenceDataBank extends AbstractSimpleSequenceDataBank {
 
-	protected final MemoryInvertedIndex index;
+	private static final MemoryInvertedIndex[] NO_DELTA_INDEXES = new MemoryInvertedIndex[0];
+
+	private static ExecutorService mergeExecutor = null;
+
+	protected MemoryInvertedIndex index = null;
+	private volatile MemoryInvertedIndex[] deltaIndexes = NO_DELTA_INDEXES;
+	private final Object segmentsLock = new Object();
 	protected InvertedIndexBuilder indexBuilder;
 	protected final MaskEncoder maskEncoder;
 	private final String mask;
 	private final int subSequenceOffset;
+	private final SequenceEncoder indexedSequenceEncoder;
 
 	public IndexedSequenceDataBank(String name, Alphabet alphabet, int subSequenceLength, String mask, File path,
 			AbstractDatabankCollection<? extends AbstractSimpleSequenceDataBank> parent) {
@@ -49,24 +81,288 @@ public class IndexedSequenceDataBank extends AbstractSimpleSequenceDataBank {
 		super(name, alphabet, subSequenceLength, path, parent);
 		this.mask = mask;
 		this.subSequenceOffset = indexedSequenceEncoder.getSubSequenceLength();
+		this.indexedSequenceEncoder = indexedSequenceEncoder;
 
 		if (mask != null) {
 			maskEncoder = new MaskEncoder(mask, encoder);
 		} else {
 			maskEncoder = null;
 		}
+	}
+
+	@Override
+	public boolean load() throws IOException, ValueOutOfBoundsException {
+		synchronized (segmentsLock) {
+			boolean b = super.load();
+			if (b == false) {
+				return false;
+			}
+			recoverMerge();
+			if (getIndexCache() == null) {
+				getIndex().loadFromFile();
+			}
+			loadDeltaSegments();
+			return true;
+		}
+	}
 
-		index = new MemoryInvertedIndex(this, indexedSequenceEncoder);
+	/**
+	 * Ensures that the index is loaded until {@link #releaseIndex()} is called. Each search must
+	 * acquire the index before reading it.
+	 */
+	public void acquireIndex() throws IOException {
+		InvertedIndexCache cache = getIndexCache();
+		if (cache != null) {
+			cache.acquire(this);
+		}
+	}
+
+	/**
+	 * Informs that the search finished to read the index.
+	 */
+	public void releaseIndex() {
+		InvertedIndexCache cache = getIndexCache();
+		if (cache != null) {
+			cache.release(this);
+		}
+	}
+
+	synchronized void loadIndexIfNeeded() throws IOException {
+		if (!getIndex().isLoaded()) {
+			getIndex().loadFromFile();
+		}
+	}
+
+	synchronized void unloadIndex() {
+		this.index = null;
 	}
 
 	@Override
-	public synchronized boolean load() throws IOException, ValueOutOfBoundsException {
-		boolean b = super.load();
-		if (b == false) {
-			return false;
+	public void close() {
+		super.close();
+		InvertedIndexCache cache = getIndexCache();
+		if (cache != null) {
+			cache.remove(this);
+			unloadIndex();
+		}
+	}
+
+	private void loadDeltaSegments() throws IOException {
+		List<MemoryInvertedIndex> deltas = Lists.newArrayList();
+		for (int segment = 1; getDeltaIndexFile(segment).exists(); segment++) {
+			MemoryInvertedIndex delta = new MemoryInvertedIndex(this, indexedSequenceEncoder, getDeltaIndexFile(segment));
+			delta.loadFromFile();
+			if (delta.getMaxSequenceId() >= getNumberOfSequences()) {
+				// Only the last segment can be written without having its sequences committed.
+				logger.warn("The sequences of the delta segment " + getDeltaIndexFile(segment)
+						+ " were not committed, the segment is discarded.");
+				if (!getDeltaIndexFile(segment).delete()) {
+					throw new IOException(getDeltaIndexFile(segment) + " can not be deleted.");
+				}
+				break;
+			}
+			deltas.add(delta);
+		}
+		if (!deltas.isEmpty()) {
+			logger.info("Databank " + getName() + " has " + deltas.size() + " delta segments.");
+		}
+		this.deltaIndexes = deltas.toArray(new MemoryInvertedIndex[deltas.size()]);
+	}
+
+	/**
+	 * @param segment
+	 *            number of the delta segment, beginning at 1.
+	 * @return the index file of the delta segment.
+	 */
+	public File getDeltaIndexFile(int segment) {
+		return new File(getFullPath() + ".delta" + segment + ".midx");
+	}
+
+	/**
+	 * @param segment
+	 *            number of the delta segment, beginning at 1.
+	 * @return the file where the delta segment is moved while the merged index replaces the main
+	 *         index.
+	 */
+	private File getMergedDeltaIndexFile(int segment) {
+		return new File(getDeltaIndexFile(segment).getPath() + ".merged");
+	}
+
+	/**
+	 * @return the file where the main index and the delta segments are merged.
+	 */
+	private File getMergedIndexFile() {
+		return new File(getIndex().getMemoryInvertedIndexFile().getPath() + ".merge");
+	}
+
+	/**
+	 * Completes or rolls back a merge interrupted by a crash. If the merged index file still
+	 * exists it did not replace the main index, so the delta segments moved aside are moved back.
+	 * Otherwise the main index is the merged one and the segments are deleted.
+	 */
+	private void recoverMerge() throws IOException {
+		File mergedIndexFile = getMergedIndexFile();
+		boolean replaced = !mergedIndexFile.exists();
+		for (int segment = 1; getMergedDeltaIndexFile(segment).exists(); segment++) {
+			if (replaced) {
+				if (!getMergedDeltaIndexFile(segment).delete()) {
+					throw new IOException(getMergedDeltaIndexFile(segment) + " can not be deleted.");
+				}
+			} else {
+				logger.warn("Restoring the delta segment " + getDeltaIndexFile(segment) + " of an interrupted merge.");
+				Files.move(getMergedDeltaIndexFile(segment).toPath(), getDeltaIndexFile(segment).toPath(),
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+		}
+		if (!replaced && !mergedIndexFile.delete()) {
+			throw new IOException(mergedIndexFile + " can not be deleted.");
+		}
+	}
+
+	/**
+	 * @return quantity of delta segments stored in the disk.
+	 */
+	public int getDeltaSegmentsCount() {
+		int count = 0;
+		while (getDeltaIndexFile(count + 1).exists()) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Appends the sequences of a FASTA file into this already encoded data bank. The sequences
+	 * are indexed into a new delta segment and, if this data bank is loaded, they can be searched
+	 * when this method returns.
+	 */
+	public void appendFastaFile(File fastaFile, boolean forceFormatting) throws IOException, NoSuchElementException,
+			ValueOutOfBoundsException, IndexConstructionException, ParseException, IllegalSymbolException {
+		synchronized (segmentsLock) {
+			if (!check()) {
+				throw new IOException("Databank " + getName() + " is not encoded. Please encode it before appending sequences.");
+			}
+			if (storedDatabank == null && !super.load()) {
+				throw new IOException("Databank " + getName() + " can not be loaded.");
+			}
+			recoverMerge();
+
+			File deltaFile = getDeltaIndexFile(getDeltaSegmentsCount() + 1);
+			logger.info("Appending " + fastaFile + " into " + getName() + " delta segment " + deltaFile + ".");
+			synchronized (appendLock) {
+				indexBuilder = new InvertedIndexBuilder(this, deltaFile);
+				indexBuilder.constructIndex();
+				try {
+					StoredDatabank addedDatabank = writeSequences(fastaFile, forceFormatting);
+					// The segment is written before the sequences are committed: if it is
+					// interrupted, the segment is discarded when the data bank is loaded.
+					indexBuilder.finishConstruction();
+					commitSequences(addedDatabank);
+				} finally {
+					indexBuilder = null;
+				}
+			}
+
+			if (getIndex().isLoaded()) {
+				MemoryInvertedIndex delta = new MemoryInvertedIndex(this, indexedSequenceEncoder, deltaFile);
+				delta.loadFromFile();
+				synchronized (this) {
+					MemoryInvertedIndex[] deltas = new MemoryInvertedIndex[deltaIndexes.length + 1];
+					System.arraycopy(deltaIndexes, 0, deltas, 0, deltaIndexes.length);
+					deltas[deltaIndexes.length] = delta;
+					this.deltaIndexes = deltas;
+				}
+			}
+			if (parent != null) {
+				parent.resetTotals();
+			}
 		}
-		index.loadFromFile();
-		return true;
+	}
+
+	/**
+	 * Merges the delta segments into the main index. The searches use the old index and segments
+	 * until the merged index is loaded.
+	 */
+	public void mergeDeltaSegments() throws IOException {
+		synchronized (segmentsLock) {
+			int count = getDeltaSegmentsCount();
+			if (count == 0) {
+				return;
+			}
+
+			MemoryInvertedIndex actualIndex = getIndex();
+			File indexFile = actualIndex.getMemoryInvertedIndexFile();
+			actualIndex.checkVersion();
+			recoverMerge();
+
+			File[] segments = new File[count + 1];
+			segments[0] = indexFile;
+			for (int segment = 1; segment <= count; segment++) {
+				segments[segment] = getDeltaIndexFile(segment);
+			}
+			File mergedIndexFile = getMergedIndexFile();
+			InvertedIndexMerger.merge(mergedIndexFile, segments, actualIndex.getIndexSize());
+
+			// The segments are moved aside before the main index is replaced, so a crash never
+			// leaves the segments to be loaded again over the merged index. See recoverMerge().
+			for (int segment = 1; segment <= count; segment++) {
+				Files.move(segments[segment].toPath(), getMergedDeltaIndexFile(segment).toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			Files.move(mergedIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+
+			MemoryInvertedIndex mergedIndex = null;
+			if (actualIndex.isLoaded()) {
+				mergedIndex = getIndexType().newIndex(this, indexedSequenceEncoder);
+				mergedIndex.loadFromFile();
+			}
+			synchronized (this) {
+				this.index = mergedIndex;
+				this.deltaIndexes = NO_DELTA_INDEXES;
+			}
+			if (getIndexCache() != null) {
+				// The merged index is accounted when it is acquired again.
+				getIndexCache().remove(this);
+			}
+
+			for (int segment = 1; segment <= count; segment++) {
+				if (!getMergedDeltaIndexFile(segment).delete()) {
+					logger.error(getMergedDeltaIndexFile(segment) + " can not be deleted.");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merges the delta segments into the main index in a background thread.
+	 * @return the {@link Future} of the merge.
+	 */
+	public Future<Void> mergeDeltaSegmentsInBackground() {
+		return getMergeExecutor().submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				try {
+					mergeDeltaSegments();
+				} catch (IOException e) {
+					logger.error("Error merging the delta segments of " + getName(), e);
+					throw e;
+				}
+				return null;
+			}
+		});
+	}
+
+	private static synchronized ExecutorService getMergeExecutor() {
+		if (mergeExecutor == null) {
+			mergeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Delta segments merger");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return mergeExecutor;
 	}
 
 	public void encodeSequences(boolean forceFormating) throws IOException, NoSuchElementException, ValueOutOfBoundsException,
@@ -99,10 +395,44 @@ public class IndexedSequenceDataBank extends AbstractSimpleSequenceDataBank {
 		return size;
 	}
 
-	public MemoryInvertedIndex getIndex() {
+	/**
+	 * Changes the index type. If the index was already created, it is discarded and a new one of
+	 * the given type will be created at the next access.
+	 */
+	@Override
+	public synchronized void setIndexType(InvertedIndexType indexType) {
+		super.setIndexType(indexType);
+		this.index = null;
+	}
+
+	/**
+	 * The index is created at the first access because its type may be set after this data bank
+	 * construction.
+	 * @return the inverted index of this data bank.
+	 */
+	public synchronized MemoryInvertedIndex getIndex() {
+		if (index == null) {
+			index = getIndexType().newIndex(this, indexedSequenceEncoder);
+		}
 		return index;
 	}
 
+	/**
+	 * @return a new cursor over the main index and the delta segments of this data bank.
+	 */
+	public synchronized PostingsCursor newIndexCursor() {
+		PostingsCursor cursor = getIndex().newCursor();
+		if (deltaIndexes.length == 0) {
+			return cursor;
+		}
+		PostingsCursor[] cursors = new PostingsCursor[deltaIndexes.length + 1];
+		cursors[0] = cursor;
+		for (int i = 0; i < deltaIndexes.length; i++) {
+			cursors[i + 1] = deltaIndexes[i].newCursor();
+		}
+		return new SegmentedPostingsCursor(cursors);
+	}
+
 	/**
 	 * The offset between each subsequence of this data bank.
 	 * @return offset between the begin of two together subsequences.
@@ -128,12 +458,20 @@ public class IndexedSequenceDataBank extends AbstractSimpleSequenceDataBank {
 	 */
 
 	public long[] getMatchingSubSequence(int encodedSubSequence) throws ValueOutOfBoundsException, IOException {
-		return index.getMatchingSubSequence(encodedSubSequence);
+		if (deltaIndexes.length == 0) {
+			return getIndex().getMatchingSubSequence(encodedSubSequence);
+		}
+		PostingsCursor cursor = newIndexCursor();
+		long[] bucket = new long[cursor.seek(encodedSubSequence)];
+		for (int i = 0; i < bucket.length; i++) {
+			bucket[i] = cursor.next();
+		}
+		return bucket;
 	}
 
 	@Override
 	public boolean check() {
-		if (!index.check()) {
+		if (!getIndex().check()) {
 			return false;
 		}
 		return super.check();
@@ -142,7 +480,12 @@ public class IndexedSequenceDataBank extends AbstractSimpleSequenceDataBank {
 	@Override
 	public void delete() {
 		super.delete();
-		index.delete();
+		getIndex().delete();
+		for (int segment = getDeltaSegmentsCount(); segment > 0; segment--) {
+			if (!getDeltaIndexFile(segment).delete()) {
+				logger.error(getDeltaIndexFile(segment) + " can not be deleted.");
+			}
+		}
 	}
 
 	protected void setStoredDatabankInfo(StoredDatabank.Builder storedDatabankBuilder) {
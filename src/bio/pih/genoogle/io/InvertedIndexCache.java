@@ -0,0 +1,147 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.io;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps the inverted indexes of the {@link IndexedSequenceDataBank} loaded only while they are
+ * used, within a memory budget.
+ * <p>
+ * When a data bank uses a cache, its index is not loaded with the data bank but at its first
+ * search. When the memory used by the loaded indexes is bigger than the budget, the least
+ * recently used indexes which are not being used by a search are unloaded.
+ *
+ * @author albrecht
+ */
+public class InvertedIndexCache {
+
+	private static Logger logger = Logger.getLogger(InvertedIndexCache.class.getCanonicalName());
+
+	private final long memoryBudget;
+	private long usedMemory = 0;
+
+	/**
+	 * Searches using each data bank index.
+	 */
+	private final Map<IndexedSequenceDataBank, Integer> pins = Maps.newHashMap();
+
+	/**
+	 * Memory used by the loaded indexes, in access order.
+	 */
+	private final LinkedHashMap<IndexedSequenceDataBank, Long> loaded = new LinkedHashMap<IndexedSequenceDataBank, Long>(16,
+			0.75f, true);
+
+	/**
+	 * @param memoryBudget
+	 *            memory in bytes which the loaded indexes should not exceed.
+	 */
+	public InvertedIndexCache(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @return memory in bytes used by the loaded indexes.
+	 */
+	public synchronized long getUsedMemory() {
+		return usedMemory;
+	}
+
+	/**
+	 * @return <code>true</code> if the index of the data bank is loaded by this cache.
+	 */
+	public synchronized boolean isLoaded(IndexedSequenceDataBank databank) {
+		return loaded.containsKey(databank);
+	}
+
+	/**
+	 * Loads the index of the data bank, if it is not loaded, and keeps it loaded until
+	 * {@link #release(IndexedSequenceDataBank)} is called.
+	 */
+	public void acquire(IndexedSequenceDataBank databank) throws IOException {
+		synchronized (this) {
+			Integer count = pins.get(databank);
+			pins.put(databank, count == null ? 1 : count + 1);
+			if (loaded.get(databank) != null) {
+				return;
+			}
+		}
+
+		try {
+			// The pin prevents the eviction while the index is loaded.
+			databank.loadIndexIfNeeded();
+		} catch (IOException e) {
+			release(databank);
+			throw e;
+		}
+
+		synchronized (this) {
+			if (!loaded.containsKey(databank)) {
+				long memory = databank.getIndex().getMemoryUsage();
+				loaded.put(databank, memory);
+				usedMemory += memory;
+				logger.info("Index of " + databank.getName() + " loaded using " + memory + " bytes. " + usedMemory + " of "
+						+ memoryBudget + " bytes are used.");
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * Informs that a search finished to use the index of the data bank.
+	 */
+	public synchronized void release(IndexedSequenceDataBank databank) {
+		Integer count = pins.get(databank);
+		if (count == null) {
+			return;
+		}
+		if (count == 1) {
+			pins.remove(databank);
+		} else {
+			pins.put(databank, count - 1);
+		}
+		evict();
+	}
+
+	/**
+	 * Forgets the index of the data bank, because it was unloaded or replaced by the data bank.
+	 */
+	public synchronized void remove(IndexedSequenceDataBank databank) {
+		Long memory = loaded.remove(databank);
+		if (memory != null) {
+			usedMemory -= memory;
+		}
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<IndexedSequenceDataBank, Long>> iterator = loaded.entrySet().iterator();
+		while (usedMemory > memoryBudget && iterator.hasNext()) {
+			Map.Entry<IndexedSequenceDataBank, Long> entry = iterator.next();
+			IndexedSequenceDataBank databank = entry.getKey();
+			if (pins.containsKey(databank)) {
+				continue;
+			}
+			iterator.remove();
+			usedMemory -= entry.getValue();
+			databank.unloadIndex();
+			logger.info("Index of " + databank.getName() + " unloaded. " + usedMemory + " of " + memoryBudget
+					+ " bytes are used.");
+		}
+	}
+}
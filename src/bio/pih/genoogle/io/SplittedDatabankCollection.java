@@ -208,6 +208,38 @@ public class SplittedDatabankCollection extends AbstractDatabankCollection<Index
 		});
 	}
 
+	/**
+	 * Appends the sequences of a FASTA file into the last sub data bank.
+	 *
+	 * @see IndexedSequenceDataBank#appendFastaFile(File, boolean)
+	 */
+	public void appendFastaFile(File fastaFile, boolean forceFormatting) throws IOException, NoSuchElementException,
+			ValueOutOfBoundsException, IndexConstructionException, ParseException, IllegalSymbolException {
+		getSubDatabank(qtdSubBases - 1).appendFastaFile(fastaFile, forceFormatting);
+	}
+
+	/**
+	 * Merges the delta segments of all sub data banks into their main indexes.
+	 *
+	 * @see IndexedSequenceDataBank#mergeDeltaSegments()
+	 */
+	public void mergeDeltaSegments() throws IOException {
+		for (int i = 0; i < qtdSubBases; i++) {
+			getSubDatabank(i).mergeDeltaSegments();
+		}
+	}
+
+	/**
+	 * @return the loaded sub data bank or a new instance if this collection is not loaded.
+	 */
+	private IndexedSequenceDataBank getSubDatabank(int i) {
+		IndexedSequenceDataBank subDataBank = getDatabank(this.getName() + "_sub_" + i);
+		if (subDataBank == null) {
+			subDataBank = new IndexedSequenceDataBank(this.getName() + "_sub_" + i, alphabet, subSequenceLength, mask, new File(getSubDatabankName(i)), this);
+		}
+		return subDataBank;
+	}
+
 	@Override
 	public boolean check() {
 		for (int i = 0; i < qtdSubBases; i++) {
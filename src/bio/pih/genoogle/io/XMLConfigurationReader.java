@@ -18,6 +18,7 @@ import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
 
 import bio.pih.genoogle.Genoogle;
+import bio.pih.genoogle.index.InvertedIndexType;
 import bio.pih.genoogle.index.ValueOutOfBoundsException;
 import bio.pih.genoogle.search.SearchManager;
 import bio.pih.genoogle.seq.Alphabet;
@@ -56,7 +57,9 @@ public class XMLConfigurationReader {
 	public static SearchManager getSearchManager() throws IOException, ValueOutOfBoundsException, InvalidConfigurationException {
 		Element rootElement = doc.getRootElement();
 		Element searchManagerElement = rootElement.element("search-manager");
-		SearchManager searchManager = new SearchManager(getMaxSimultaneousSearchs(searchManagerElement));
+		SearchManager searchManager = new SearchManager(getMaxSimultaneousSearchs(searchManagerElement),
+				getVirtualThreads(searchManagerElement), getThreads(searchManagerElement, "index-search-threads"),
+				getThreads(searchManagerElement, "alignment-threads"));
 
 		List<AbstractSequenceDataBank> dataBanks = XMLConfigurationReader.getDataBanks();
 		for (AbstractSequenceDataBank dataBank : dataBanks) {
@@ -70,6 +73,30 @@ public class XMLConfigurationReader {
 		return searchManager;
 	}
 
+	private static InvertedIndexCache indexCache = null;
+
+	/**
+	 * @return the cache which loads the data banks indexes on demand within the memory budget
+	 *         specified in megabytes by the <i>index-memory-budget</i> element or
+	 *         <code>null</code> if the element is not specified or its value is zero, then the
+	 *         indexes are loaded with the data banks.
+	 */
+	public static synchronized InvertedIndexCache getIndexCache() {
+		if (indexCache == null) {
+			Element searchManagerElement = doc.getRootElement().element("search-manager");
+			Element budgetElement = searchManagerElement.element("index-memory-budget");
+			if (budgetElement == null) {
+				return null;
+			}
+			long budget = Long.parseLong(budgetElement.attributeValue("value"));
+			if (budget <= 0) {
+				return null;
+			}
+			indexCache = new InvertedIndexCache(budget * 1024 * 1024);
+		}
+		return indexCache;
+	}
+
 	/**
 	 * @return how many simultaneous searchs a searchManager can handle.
 	 */
@@ -79,6 +106,30 @@ public class XMLConfigurationReader {
 		return Integer.parseInt(value);
 	}
 
+	/**
+	 * @return if the requests should run in virtual threads, <code>false</code> if it is not
+	 *         specified.
+	 */
+	private static boolean getVirtualThreads(Element searchManager) {
+		Element virtualThreads = searchManager.element("virtual-threads");
+		if (virtualThreads == null) {
+			return false;
+		}
+		return Boolean.parseBoolean(virtualThreads.attributeValue("value"));
+	}
+
+	/**
+	 * @return the quantity of threads of the element or the quantity of available processors if
+	 *         it is not specified.
+	 */
+	private static int getThreads(Element searchManager, String elementName) {
+		Element threads = searchManager.element(elementName);
+		if (threads == null) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		return Integer.parseInt(threads.attributeValue("value"));
+	}
+
 	private static Integer match = null;
 	private static Integer mismatch = null;
 
@@ -106,6 +157,34 @@ public class XMLConfigurationReader {
 		return mismatch.intValue();
 	}
 
+	/**
+	 * Score of gaps used when they are not specified, which was the linear cost used before they
+	 * were configurable.
+	 */
+	private static final int DEFAULT_GAP_SCORE = -5;
+
+	/**
+	 * @return score of the first position of a gap, -5 if it is not specified.
+	 */
+	public static int getGapOpenScore() {
+		return getGapScore("gap-open");
+	}
+
+	/**
+	 * @return score of each further position of a gap, -5 if it is not specified.
+	 */
+	public static int getGapExtendScore() {
+		return getGapScore("gap-extend");
+	}
+
+	private static int getGapScore(String name) {
+		Element element = doc.getRootElement().element("score").element(name);
+		if (element == null) {
+			return DEFAULT_GAP_SCORE;
+		}
+		return Integer.parseInt(element.attributeValue("value"));
+	}
+
 	/**
 	 * @return {@link List} of {@link AbstractSequenceDataBank} that are
 	 *         configured in the XML file.
@@ -126,6 +205,7 @@ public class XMLConfigurationReader {
 			if (databank == null) {
 				return null;
 			}
+			databank.setIndexCache(getIndexCache());
 			sequenceDataBanks.add(databank);
 		}
 
@@ -139,6 +219,7 @@ public class XMLConfigurationReader {
 		String lowComplexityFilterString = e.attributeValue("low-complexity-filter");
 		String type = e.attributeValue("type");
 		String remoteSimilarity = e.attributeValue("remoteSimilarity");
+		String indexTypeString = e.attributeValue("index-type");
 
 		boolean remoteSimilarityDatabank = false;
 		if (remoteSimilarity != null) {
@@ -174,6 +255,14 @@ public class XMLConfigurationReader {
 			lowComplexityFilter = Integer.parseInt(lowComplexityFilterString);
 		}
 
+		InvertedIndexType indexType = null;
+		if (indexTypeString != null) {
+			indexType = InvertedIndexType.getByName(indexTypeString);
+			if (indexType == null) {
+				throw new InvalidConfigurationException("Index type: " + indexTypeString + " is invalid.");
+			}
+		}
+
 		Alphabet alphabet = DNAAlphabet.SINGLETON;
 		if (type != null) {
 			if (type.toLowerCase().equals("dna")) {
@@ -200,6 +289,7 @@ public class XMLConfigurationReader {
 
 			SplittedDatabankCollection splittedSequenceDatabank = new SplittedDatabankCollection(name, alphabet, new File(Genoogle.getHome(), path), subSequenceLength, size, mask);
 			splittedSequenceDatabank.setLowComplexityFilter(lowComplexityFilter);
+			splittedSequenceDatabank.setIndexType(indexType);
 
 			Iterator databankIterator = e.elementIterator();
 			while (databankIterator.hasNext()) {
@@ -219,11 +309,14 @@ public class XMLConfigurationReader {
 		} else if (e.getName().trim().equals("databank")) {
 			File file = new File(path);
 			try {
+				IndexedSequenceDataBank databank;
 				if (remoteSimilarityDatabank == false) {
-					return new IndexedSequenceDataBank(name, alphabet, subSequenceLength, mask, file, parent);
+					databank = new IndexedSequenceDataBank(name, alphabet, subSequenceLength, mask, file, parent);
 				} else {
-					return new RemoteSimilaritySequenceDataBank(name, alphabet, subSequenceLength, file, parent); 										
+					databank = new RemoteSimilaritySequenceDataBank(name, alphabet, subSequenceLength, file, parent);
 				}
+				databank.setIndexType(indexType);
+				return databank;
 			} catch (ValueOutOfBoundsException e1) {
 				logger.fatal("Error creating IndexedDNASequenceDataBank.", e1);
 			}
@@ -306,6 +399,50 @@ public class XMLConfigurationReader {
 		return Integer.parseInt(value);
 	}
 
+	/**
+	 * @return the seeding engine used at the index search, zero if it is not specified.
+	 */
+	public static int getSeedingEngine() {
+		Element element = getSearchParameters().element("seeding-engine");
+		if (element == null) {
+			return 0;
+		}
+		return Integer.parseInt(element.attributeValue("value"));
+	}
+
+	/**
+	 * @return the window of the two hits filter of the index search, zero if it is not specified.
+	 */
+	public static int getTwoHitWindow() {
+		Element element = getSearchParameters().element("two-hit-window");
+		if (element == null) {
+			return 0;
+		}
+		return Integer.parseInt(element.attributeValue("value"));
+	}
+
+	/**
+	 * @return if the alignment is pipelined with the index search, zero if it is not specified.
+	 */
+	public static int getPipelinedAlignment() {
+		Element element = getSearchParameters().element("pipelined-alignment");
+		if (element == null) {
+			return 0;
+		}
+		return Integer.parseInt(element.attributeValue("value"));
+	}
+
+	/**
+	 * @return the kernel used to align the extended areas, zero if it is not specified.
+	 */
+	public static int getAlignmentKernel() {
+		Element element = getSearchParameters().element("alignment-kernel");
+		if (element == null) {
+			return 0;
+		}
+		return Integer.parseInt(element.attributeValue("value"));
+	}
+
 	private static String readPath(String path) {
 		return path.replace('/', File.separatorChar);
 	}
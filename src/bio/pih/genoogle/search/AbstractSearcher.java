@@ -16,17 +16,24 @@ import bio.pih.genoogle.search.results.SearchResults;
  * This interface defines the methods that are presents in a similar sequence
  * searcher.
  * 
- * The doSearch method works asynchronous, returning an unique identifier for
- * the solicited search. The verifySearch return the current status of the
- * search. Others methods are for
+ * The searcher is executed by the {@link SearchManager}, synchronously or as a {@link SearchJob}
+ * whose status, progress and results can be queried by its identifier. The search stops when
+ * its {@link SearchProgress} is cancelled.
  * 
  * @author albrecht
  */
 public abstract class AbstractSearcher implements Callable<SearchResults> {
 
+	/**
+	 * HSPs with this or a higher e-value are not kept in the results.
+	 */
+	public static final double MAX_HSP_EVALUE = 0.1;
+
 	protected final long id;
 	protected final SearchParams sp;
 	protected final SearchResults sr;
+	protected final SearchScheduler scheduler;
+	protected final SearchProgress progress = new SearchProgress();
 	
 	/**
 	 * @param id
@@ -34,10 +41,13 @@ public abstract class AbstractSearcher implements Callable<SearchResults> {
 	 *            Parameter of the search
 	 * @param databank 
 	 *            Sequence data bank where the search will be performed.
+	 * @param scheduler
+	 *            threads where the search tasks are executed.
 	 */
-	public AbstractSearcher(long id, SearchParams sp, AbstractSequenceDataBank databank) {
+	public AbstractSearcher(long id, SearchParams sp, AbstractSequenceDataBank databank, SearchScheduler scheduler) {
 		this.id = id;
 		this.sp = sp;
+		this.scheduler = scheduler;
 		this.sr = new SearchResults(sp);
 	}
 		
@@ -47,4 +57,15 @@ public abstract class AbstractSearcher implements Callable<SearchResults> {
 	public SearchResults getSearchResults() {
 		return sr;
 	}
+
+	/**
+	 * @return the progress of the search, where it can be cancelled.
+	 */
+	public SearchProgress getProgress() {
+		return progress;
+	}
+
+	public long getId() {
+		return id;
+	}
 }
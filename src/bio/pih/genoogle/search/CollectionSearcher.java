@@ -12,12 +12,12 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
-import java.util.concurrent.CompletionService;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.log4j.Logger;
 
@@ -29,6 +29,7 @@ import bio.pih.genoogle.search.results.Hit;
 import bio.pih.genoogle.search.results.SearchResults;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * A searcher that does search operation at each data bank of its collection.
@@ -42,8 +43,8 @@ public class CollectionSearcher extends AbstractSearcher {
 
 	private final AbstractDatabankCollection<AbstractSequenceDataBank> databankCollection;
 
-	public CollectionSearcher(long code, SearchParams sp, AbstractDatabankCollection<AbstractSequenceDataBank> databank) {
-		super(code, sp, databank);
+	public CollectionSearcher(long code, SearchParams sp, AbstractDatabankCollection<AbstractSequenceDataBank> databank, SearchScheduler scheduler) {
+		super(code, sp, databank, scheduler);
 		this.databankCollection = databank;
 	}
 
@@ -51,48 +52,357 @@ public class CollectionSearcher extends AbstractSearcher {
 	public SearchResults call() {
 		long begin = System.currentTimeMillis();
 
-		int indexSearchers = databankCollection.size();
-
-		ExecutorService subDatabanksExecutor = Executors.newFixedThreadPool(indexSearchers);
-		CompletionService<IndexSearchResults> subDataBanksCS = new ExecutorCompletionService<IndexSearchResults>(subDatabanksExecutor);
-
-		ExecutorService queryExecutor = Executors.newFixedThreadPool(sp.getMaxThreadsIndexSearch());
-
 		List<Throwable> fails = Lists.newLinkedList();
 		fails = Collections.synchronizedList(fails);
-		Iterator<AbstractSequenceDataBank> it = databankCollection.databanksIterator();
-		while (it.hasNext()) {
-			AbstractSequenceDataBank innerBank = it.next();
-			final IndexBothStrandSearcher indexSearcher = new IndexBothStrandSearcher(id, sp, (IndexedSequenceDataBank) innerBank, queryExecutor, fails);
-			subDataBanksCS.submit(indexSearcher);
+		if (sp.isPipelinedAlignment()) {
+			return searchAndAlignPipelined(fails, begin);
+		}
+
+		IndexSearchResults indexSearchResults = searchIndex(fails);
+		if (indexSearchResults == null) {
+			sr.addAllFails(fails);
+			return sr;
 		}
 
+		return align(indexSearchResults, fails, begin);
+	}
+
+	/**
+	 * Searches the query at the index of each data bank of the collection.
+	 * 
+	 * @return the joined results or <code>null</code> if the search failed.
+	 */
+	private IndexSearchResults searchIndex(List<Throwable> fails) {
+		List<IndexBothStrandSearcher> bothStrandSearchers = submitIndexSearches(fails, null);
+
 		IndexSearchResults indexSearchResults = null;
 		try {
-			;
-			for (int i = 0; i < indexSearchers; i++) {
-				IndexSearchResults subResults = subDataBanksCS.take().get();
+			for (int i = 0; i < bothStrandSearchers.size(); i++) {
+				IndexSearchResults subResults = bothStrandSearchers.get(i).getResults();
 				if (subResults == null) {
 					logger.error("Results from searcher " + i + " was empty.");
 				} else {
+					indexSearchResults = merge(indexSearchResults, subResults);
+				}
+			}
+		} catch (InterruptedException e) {
+			sr.addFail(e);
+			return null;
+		}
+
+		return indexSearchResults;
+	}
+
+	/**
+	 * Submits the index searchers of all data banks of the collection, before waiting for any of
+	 * them.
+	 * 
+	 * @param finishedQueue
+	 *            where the searcher of each data bank is put when it finishes, or
+	 *            <code>null</code>.
+	 * @return the searchers of each data bank.
+	 */
+	private List<IndexBothStrandSearcher> submitIndexSearches(List<Throwable> fails, BlockingQueue<IndexBothStrandSearcher> finishedQueue) {
+		ExecutorService queryExecutor = scheduler.getIndexSearchExecutor(sp.getMaxThreadsIndexSearch());
+
+		List<IndexBothStrandSearcher> bothStrandSearchers = Lists.newArrayList();
+		Iterator<AbstractSequenceDataBank> it = databankCollection.databanksIterator();
+		while (it.hasNext()) {
+			AbstractSequenceDataBank innerBank = it.next();
+			IndexBothStrandSearcher indexSearcher = new IndexBothStrandSearcher(id, sp, (IndexedSequenceDataBank) innerBank, queryExecutor, fails);
+			indexSearcher.setFinishedQueue(finishedQueue);
+			List<IndexSearcher> created = indexSearcher.createSearchers();
+			if (created == null) {
+				logger.error("Results from searcher at " + innerBank.getName() + " was empty.");
+				continue;
+			}
+			progress.addIndexSearches(created.size());
+			for (IndexSearcher searcher : created) {
+				searcher.setProgress(progress);
+				queryExecutor.submit(searcher);
+			}
+			bothStrandSearchers.add(indexSearcher);
+		}
+		return bothStrandSearchers;
+	}
+
+	/**
+	 * Searches the index of the data banks and aligns the best candidates of each data bank as
+	 * soon as its index search finishes, while the other data banks are still searched.
+	 * <p>
+	 * The candidates which are among the best results when a data bank finishes are aligned.
+	 * They can be replaced by better candidates of the data banks which finish later, then their
+	 * alignments are cancelled and discarded, so the aligned sequences are the same of the not
+	 * pipelined search. The search returns only after all its alignments finished.
+	 */
+	private SearchResults searchAndAlignPipelined(List<Throwable> fails, long begin) {
+		BlockingQueue<IndexBothStrandSearcher> finishedQueue = new LinkedBlockingQueue<IndexBothStrandSearcher>();
+		List<IndexBothStrandSearcher> bothStrandSearchers = submitIndexSearches(fails, finishedQueue);
+		int pending = bothStrandSearchers.size();
+		ExecutorService alignerExecutor = scheduler.getAlignmentExecutor(sp.getMaxThreadsExtendAlign());
+		Map<RetrievedSequenceAreas, PipelinedAlignment> alignments = Maps.newIdentityHashMap();
+		List<PipelinedAlignment> discarded = Lists.newArrayList();
+
+		try {
+			IndexSearchResults indexSearchResults = null;
+			try {
+				while (pending > 0) {
+					IndexBothStrandSearcher finished = finishedQueue.take();
+					pending--;
+					IndexSearchResults subResults = finished.getResults();
+					if (subResults == null) {
+						logger.error("Results from a searcher of " + this.toString() + " was empty.");
+						continue;
+					}
+					// Merged by the data bank position, so the ranking is the same of the not pipelined
+					// search, which merges them in the data banks order.
 					if (indexSearchResults == null) {
-						indexSearchResults = subResults;
+						indexSearchResults = new IndexSearchResults(sp.getMaxHitsResults(), subResults.getIndexSearchers());
+					}
+					indexSearchResults.merge(subResults, bothStrandSearchers.indexOf(finished));
+					if (fails.size() > 0) {
+						continue;
+					}
+
+					int began = 0;
+					Map<RetrievedSequenceAreas, PipelinedAlignment> best = Maps.newIdentityHashMap();
+					for (int i = 0; i < indexSearchResults.size(); i++) {
+						progress.checkCancelled();
+						RetrievedSequenceAreas retrievedArea = indexSearchResults.get(i);
+						PipelinedAlignment alignment = alignments.remove(retrievedArea);
+						if (alignment == null) {
+							alignment = submitAlignment(alignerExecutor, indexSearchResults, retrievedArea);
+							began++;
+						}
+						best.put(retrievedArea, alignment);
+					}
+					// The candidates left were replaced by better ones.
+					for (PipelinedAlignment alignment : alignments.values()) {
+						alignment.progress.cancel();
+						discarded.add(alignment);
+					}
+					alignments = best;
+					logger.info("(" + id + ") " + began + " alignments began, " + pending + " data banks are searching their indexes.");
+				}
+			} catch (InterruptedException e) {
+				sr.addFail(e);
+				return sr;
+			} catch (IOException e) {
+				sr.addFail(e);
+				return sr;
+			} catch (CancellationException e) {
+				sr.addFail(e);
+				return sr;
+			}
+
+			if (fails.size() > 0 || indexSearchResults == null) {
+				sr.addAllFails(fails);
+				return sr;
+			}
+
+			logger.info("DNAIndexBothStrandSearcher total Time of " + this.toString() + " " + (System.currentTimeMillis() - begin));
+			long alignmentBegin = System.currentTimeMillis();
+
+			int maxHits = sp.getMaxHitsResults() > 0 ? sp.getMaxHitsResults() : indexSearchResults.size();
+			maxHits = Math.min(maxHits, indexSearchResults.size());
+			try {
+				for (int i = 0; i < maxHits; i++) {
+					PipelinedAlignment alignment = alignments.get(indexSearchResults.get(i));
+					alignment.countDown.await();
+					sr.addAllHits(alignment.results.getHits());
+					if (alignment.results.hasFail()) {
+						sr.addAllFails(alignment.results.getFails());
+					}
+				}
+			} catch (InterruptedException e) {
+				sr.addFail(e);
+				return sr;
+			}
+			if (progress.isCancelled()) {
+				sr.addFail(new CancellationException("Search cancelled."));
+				return sr;
+			}
+			logger.info("(" + id + ") " + discarded.size() + " pipelined alignments were discarded.");
+
+			return finishAlignments(alignmentBegin, begin);
+
+		} finally {
+			// The alignments can not continue after the search returns, because the data bank
+			// can be closed as soon as it is released.
+			for (PipelinedAlignment alignment : alignments.values()) {
+				alignment.progress.cancel();
+				discarded.add(alignment);
+			}
+			awaitAlignments(discarded);
+		}
+	}
+
+	/**
+	 * Waits the given alignments, which were cancelled and stop soon.
+	 */
+	private static void awaitAlignments(List<PipelinedAlignment> alignments) {
+		try {
+			for (PipelinedAlignment alignment : alignments) {
+				alignment.countDown.await();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private PipelinedAlignment submitAlignment(ExecutorService alignerExecutor, IndexSearchResults indexSearchResults,
+			RetrievedSequenceAreas retrievedArea) throws IOException {
+		PipelinedAlignment alignment = new PipelinedAlignment(sp, progress);
+		SequenceAligner sequenceAligner = new SequenceAligner(alignment.countDown, indexSearchResults.getIndexSearchers(), retrievedArea, alignment.results, databankCollection);
+		sequenceAligner.setProgress(alignment.progress);
+		alignment.progress.addAlignments(1);
+		alignerExecutor.submit(sequenceAligner);
+		return alignment;
+	}
+
+	/**
+	 * Alignment of a candidate which began before the end of the index search. Its hit is kept
+	 * apart until it is known if the candidate is among the best results, and it is cancelled
+	 * alone when the candidate is replaced by a better one.
+	 */
+	private static class PipelinedAlignment {
+		private final CountDownLatch countDown = new CountDownLatch(1);
+		private final SearchResults results;
+		private final SearchProgress progress;
+
+		public PipelinedAlignment(SearchParams sp, SearchProgress searchProgress) {
+			this.results = new SearchResults(sp);
+			this.progress = new SearchProgress(searchProgress);
+		}
+	}
+
+	private static IndexSearchResults merge(IndexSearchResults indexSearchResults, IndexSearchResults subResults) {
+		if (indexSearchResults == null) {
+			return subResults;
+		}
+		indexSearchResults.merge(subResults);
+		return indexSearchResults;
+	}
+
+	/**
+	 * Searches many queries at the same data bank collection. The index of each data bank is
+	 * read only once for all queries, using a {@link IndexSearchBatch}.
+	 * 
+	 * @param searchers
+	 *            searchers of the same data bank collection.
+	 * @return the results of each searcher, in the same order.
+	 */
+	public static List<SearchResults> callBatch(List<CollectionSearcher> searchers) {
+		long begin = System.currentTimeMillis();
+		List<SearchResults> results = Lists.newArrayList();
+		if (searchers.isEmpty()) {
+			return results;
+		}
+
+		int queries = searchers.size();
+		CollectionSearcher first = searchers.get(0);
+		List<List<Throwable>> fails = Lists.newArrayList();
+		for (int i = 0; i < queries; i++) {
+			List<Throwable> searcherFails = Lists.newLinkedList();
+			fails.add(Collections.synchronizedList(searcherFails));
+		}
+		IndexSearchResults[] indexSearchResults = new IndexSearchResults[queries];
+
+		ExecutorService queryExecutor = first.scheduler.getIndexSearchExecutor(first.sp.getMaxThreadsIndexSearch());
+
+		// The searches of all data banks are submitted before waiting for any of them, so a data
+		// bank is searched while the index of the next one is read.
+		List<IndexedSequenceDataBank> innerBanks = Lists.newArrayList();
+		List<List<IndexBothStrandSearcher>> banksSearchers = Lists.newArrayList();
+		Iterator<AbstractSequenceDataBank> it = first.databankCollection.databanksIterator();
+		while (it.hasNext()) {
+			IndexedSequenceDataBank innerBank = (IndexedSequenceDataBank) it.next();
+			innerBanks.add(innerBank);
+			banksSearchers.add(submitBatch(searchers, innerBank, queryExecutor, fails));
+		}
+
+		try {
+			for (int bank = 0; bank < innerBanks.size(); bank++) {
+				List<IndexBothStrandSearcher> bothStrandSearchers = banksSearchers.get(bank);
+				for (int i = 0; i < queries; i++) {
+					IndexBothStrandSearcher bothStrandSearcher = bothStrandSearchers.get(i);
+					if (bothStrandSearcher == null) {
+						continue;
+					}
+					IndexSearchResults subResults = bothStrandSearcher.getResults();
+					if (subResults == null) {
+						logger.error("Results from searcher " + searchers.get(i).id + " at " + innerBanks.get(bank).getName() + " was empty.");
 					} else {
-						indexSearchResults.merge(subResults);
+						indexSearchResults[i] = merge(indexSearchResults[i], subResults);
 					}
 				}
 			}
 		} catch (InterruptedException e) {
-			sr.addFail(e);
-			return sr;
-		} catch (ExecutionException e) {
-			sr.addFail(e);
-			return sr;
+			for (CollectionSearcher searcher : searchers) {
+				searcher.sr.addFail(e);
+				results.add(searcher.sr);
+			}
+			return results;
+		}
+
+		logger.info("Batch index search of " + queries + " queries total Time " + (System.currentTimeMillis() - begin));
+
+		for (int i = 0; i < queries; i++) {
+			CollectionSearcher searcher = searchers.get(i);
+			if (indexSearchResults[i] == null) {
+				searcher.sr.addAllFails(fails.get(i));
+				results.add(searcher.sr);
+			} else {
+				results.add(searcher.align(indexSearchResults[i], fails.get(i), begin));
+			}
 		}
+		return results;
+	}
 
-		queryExecutor.shutdown();
-		subDatabanksExecutor.shutdown();
+	/**
+	 * Reads the index of the data bank once for all queries and submits their searchers, without
+	 * waiting for them.
+	 * 
+	 * @return the searcher of each query at the data bank, <code>null</code> for the queries
+	 *         whose searchers could not be created.
+	 */
+	private static List<IndexBothStrandSearcher> submitBatch(List<CollectionSearcher> searchers, IndexedSequenceDataBank innerBank,
+			ExecutorService queryExecutor, List<List<Throwable>> fails) {
+		List<IndexBothStrandSearcher> bothStrandSearchers = Lists.newArrayList();
+		List<IndexSearcher> indexSearchers = Lists.newArrayList();
+		for (int i = 0; i < searchers.size(); i++) {
+			CollectionSearcher searcher = searchers.get(i);
+			IndexBothStrandSearcher bothStrandSearcher = new IndexBothStrandSearcher(searcher.id, searcher.sp, innerBank, queryExecutor, fails.get(i));
+			List<IndexSearcher> created = bothStrandSearcher.createSearchers();
+			if (created == null) {
+				bothStrandSearchers.add(null);
+			} else {
+				bothStrandSearchers.add(bothStrandSearcher);
+				searcher.progress.addIndexSearches(created.size());
+				for (IndexSearcher indexSearcher : created) {
+					indexSearcher.setProgress(searcher.progress);
+				}
+				indexSearchers.addAll(created);
+			}
+		}
 
+		// If the batch is not read, each searcher reads the index by itself.
+		try {
+			IndexSearchBatch.read(innerBank, indexSearchers);
+		} catch (IOException e) {
+			logger.error("Error reading the index of " + innerBank.getName() + " for the batch.", e);
+		}
+
+		for (IndexSearcher indexSearcher : indexSearchers) {
+			queryExecutor.submit(indexSearcher);
+		}
+		return bothStrandSearchers;
+	}
+
+	/**
+	 * Extends and aligns the areas found by the index search.
+	 */
+	private SearchResults align(IndexSearchResults indexSearchResults, List<Throwable> fails, long begin) {
 		if (fails.size() > 0) {
 			sr.addAllFails(fails);
 			return sr;
@@ -102,22 +412,33 @@ public class CollectionSearcher extends AbstractSearcher {
 
 		long alignmentBegin = System.currentTimeMillis();
 
-		ExecutorService alignerExecutor = Executors.newFixedThreadPool(sp.getMaxThreadsExtendAlign());
+		ExecutorService alignerExecutor = scheduler.getAlignmentExecutor(sp.getMaxThreadsExtendAlign());
 
 		int maxHits = sp.getMaxHitsResults() > 0 ? sp.getMaxHitsResults() : indexSearchResults.size();
 		maxHits = Math.min(maxHits, indexSearchResults.size());
 
 		CountDownLatch alignnmentsCountDown = new CountDownLatch(maxHits);
+		progress.addAlignments(maxHits);
 
+		// The hits of each candidate are kept apart and added in the candidates order, so the
+		// hits with the same score are in the same order of the pipelined search.
+		SearchResults[] alignmentsResults = new SearchResults[maxHits];
 		try {
 			for (int i = 0; i < maxHits; i++) {
+				progress.checkCancelled();
 				RetrievedSequenceAreas retrievedArea = indexSearchResults.get(i);
-				SequenceAligner sequenceAligner = new SequenceAligner(alignnmentsCountDown, indexSearchResults.getIndexSearchers(), retrievedArea, sr, databankCollection);
+				alignmentsResults[i] = new SearchResults(sp);
+				SequenceAligner sequenceAligner = new SequenceAligner(alignnmentsCountDown, indexSearchResults.getIndexSearchers(), retrievedArea, alignmentsResults[i], databankCollection);
+				sequenceAligner.setProgress(progress);
 				alignerExecutor.submit(sequenceAligner);
 			}
 		} catch (IOException e) {
 			sr.addFail(e);
 			return sr;
+		} catch (CancellationException e) {
+			// The submitted aligners stop by themselves.
+			sr.addFail(e);
+			return sr;
 		}
 
 		try {
@@ -126,9 +447,24 @@ public class CollectionSearcher extends AbstractSearcher {
 			sr.addFail(e);
 			return sr;
 		}
+		if (progress.isCancelled()) {
+			sr.addFail(new CancellationException("Search cancelled."));
+			return sr;
+		}
+		for (SearchResults alignmentResults : alignmentsResults) {
+			sr.addAllHits(alignmentResults.getHits());
+			if (alignmentResults.hasFail()) {
+				sr.addAllFails(alignmentResults.getFails());
+			}
+		}
 
-		alignerExecutor.shutdown();
+		return finishAlignments(alignmentBegin, begin);
+	}
 
+	/**
+	 * Filters and sorts the HSPs and the hits of the aligned sequences.
+	 */
+	private SearchResults finishAlignments(long alignmentBegin, long begin) {
 		ListIterator<Hit> hitsIterator = sr.getHits().listIterator();
 		while (hitsIterator.hasNext()) {
 			Hit hit = hitsIterator.next();
@@ -151,7 +487,7 @@ public class CollectionSearcher extends AbstractSearcher {
 		ListIterator<HSP> iterator = HSPs.listIterator();
 		while (iterator.hasNext()) {
 			HSP hsp = iterator.next();
-			if (hsp.getEValue() >= 0.1) {
+			if (hsp.getEValue() >= MAX_HSP_EVALUE) {
 				iterator.remove();
 			}
 		}
@@ -0,0 +1,126 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.search;
+
+import java.util.Arrays;
+
+/**
+ * Stores the data retrieved from the Inverted Index sorting the sub-sequences by their diagonal.
+ * <p>
+ * Instead of merging each sub-sequence with the opened areas of its sequence, the sub-sequences
+ * are stored as (sequence id, diagonal, query position) in primitive arrays. At the end, they are
+ * radix sorted by sequence and diagonal and the areas are built in one pass over each diagonal.
+ * The time does not depend on how many areas are opened at the same sequence, what happens with
+ * repetitive sequences, but only sub-sequences at the same diagonal are joined.
+ * 
+ * @author albrecht
+ */
+public class DiagonalIndexRetrievedData extends IndexRetrievedData {
+
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX = 1 << RADIX_BITS;
+
+	/**
+	 * Sequence id at the high bits and the diagonal, as unsigned, at the low bits.
+	 */
+	private long[] keys = new long[1024];
+	private int[] queryPositions = new int[1024];
+	private int size = 0;
+
+	public DiagonalIndexRetrievedData(int size, SearchParams sp, int subSequenceLength, IndexSearcher searcher) {
+		super(size, sp, subSequenceLength, searcher);
+	}
+
+	@Override
+	void addSubSequence(int queryPos, int sequencePos, int sequenceId) {
+		int diagonal = sequencePos - queryPos;
+
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			queryPositions = Arrays.copyOf(queryPositions, size * 2);
+		}
+		keys[size] = ((long) sequenceId << 32) | ((diagonal ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+		queryPositions[size] = queryPos;
+		size++;
+	}
+
+	@Override
+	public void finish() {
+		// The sub-sequences are added in the query order and the sort is stable, so each diagonal
+		// is sorted by the query position.
+		radixSort();
+
+		int i = 0;
+		while (i < size) {
+			long key = keys[i];
+			int sequenceId = (int) (key >>> 32);
+			int diagonal = ((int) key) ^ Integer.MIN_VALUE;
+
+			int queryBegin = queryPositions[i];
+			int queryEnd = queryBegin + subSequenceLength;
+			i++;
+			while (i < size && keys[i] == key) {
+				int queryPos = queryPositions[i];
+				if (queryPos > queryEnd + maxSubSequenceDistance) {
+					addArea(sequenceId, diagonal, queryBegin, queryEnd);
+					queryBegin = queryPos;
+				}
+				queryEnd = queryPos + subSequenceLength;
+				i++;
+			}
+			addArea(sequenceId, diagonal, queryBegin, queryEnd);
+		}
+
+		keys = null;
+		queryPositions = null;
+		super.finish();
+	}
+
+	private void addArea(int sequenceId, int diagonal, int queryBegin, int queryEnd) {
+		if (queryEnd - queryBegin >= minLength) {
+			hits++;
+			addRetrievedArea(sequenceId, queryBegin, queryEnd, queryBegin + diagonal, queryEnd + diagonal);
+		}
+	}
+
+	/**
+	 * Stable LSD radix sort of the keys, moving the query positions together. The digits which are
+	 * equal at all keys are skipped. The digits are of 8 bits, so the counts array is small enough
+	 * to be allocated at each sort.
+	 */
+	private void radixSort() {
+		long[] keysBuffer = new long[size];
+		int[] positionsBuffer = new int[size];
+		int[] count = new int[RADIX + 1];
+
+		for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+			Arrays.fill(count, 0);
+			for (int i = 0; i < size; i++) {
+				count[(int) ((keys[i] >>> shift) & (RADIX - 1)) + 1]++;
+			}
+			if (count[(int) ((keys[0] >>> shift) & (RADIX - 1)) + 1] == size) {
+				continue;
+			}
+			for (int i = 0; i < RADIX; i++) {
+				count[i + 1] += count[i];
+			}
+			for (int i = 0; i < size; i++) {
+				int pos = count[(int) ((keys[i] >>> shift) & (RADIX - 1))]++;
+				keysBuffer[pos] = keys[i];
+				positionsBuffer[pos] = queryPositions[i];
+			}
+
+			long[] keysTmp = keys;
+			keys = keysBuffer;
+			keysBuffer = keysTmp;
+			int[] positionsTmp = queryPositions;
+			queryPositions = positionsBuffer;
+			positionsBuffer = positionsTmp;
+		}
+	}
+}
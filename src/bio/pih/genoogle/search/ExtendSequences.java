@@ -90,6 +90,8 @@ public class ExtendSequences {
 		int queryPos, databankPos;
 		
 		final int subSequenceLength = extensionEncoder.getSubSequenceLength();
+		final int alphabetSize = extensionEncoder.getAlphabet().getSize();
+		final int[] scores = substitutionTable == null ? null : substitutionTable.getEncodedScores(extensionEncoder);
 
 		// right extend
 		bestQueryPos = endQuerySegment;
@@ -111,9 +113,7 @@ public class ExtendSequences {
 					score++;
 				}
 			} else {
-				char a = extensionEncoder.getSymbolFromBits(queryValue);
-				char b = extensionEncoder.getSymbolFromBits(databankValue);				
-				score += substitutionTable.getValue(a, b);				
+				score += scores[queryValue * alphabetSize + databankValue];
 			}
 			
 			if (score >= bestScore) {
@@ -149,9 +149,7 @@ public class ExtendSequences {
 					score++;
 				}
 			} else {
-				char a = extensionEncoder.getSymbolFromBits(queryValue);
-				char b = extensionEncoder.getSymbolFromBits(databankValue);				
-				score += substitutionTable.getValue(a, b);				
+				score += scores[queryValue * alphabetSize + databankValue];
 			}
 			
 			if (score >= bestScore) {
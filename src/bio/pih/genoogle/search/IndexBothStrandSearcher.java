@@ -7,11 +7,16 @@
 
 package bio.pih.genoogle.search;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 
@@ -24,6 +29,9 @@ import bio.pih.genoogle.seq.SymbolList;
 import bio.pih.genoogle.statistics.MatchDismatchStatistics;
 import bio.pih.genoogle.statistics.Statistics;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
 public class IndexBothStrandSearcher implements Callable<IndexSearchResults> {
 
 	private IndexSearcher searcher;
@@ -33,12 +41,11 @@ public class IndexBothStrandSearcher implements Callable<IndexSearchResults> {
 	private final long id;
 	private final SearchParams sp;
 	private final IndexedSequenceDataBank databank;
-	private final ArrayList<RetrievedArea>[] retrievedAreas;
-	private final ArrayList<RetrievedArea>[] rcRetrievedAreas;
+	private final SequencesRetrievedAreas retrievedAreas = new SequencesRetrievedAreas();
+	private final SequencesRetrievedAreas rcRetrievedAreas = new SequencesRetrievedAreas();
 	private final List<Throwable> fails;
 	private final ExecutorService executor;
 
-	@SuppressWarnings("unchecked")
 	public IndexBothStrandSearcher(long id, SearchParams sp, IndexedSequenceDataBank databank,
 			ExecutorService executor, List<Throwable> fails) {
 		this.id = id;
@@ -46,18 +53,34 @@ public class IndexBothStrandSearcher implements Callable<IndexSearchResults> {
 		this.databank = databank;
 		this.executor = executor;
 		this.fails = fails;
-		int numberOfSequences = databank.getNumberOfSequences();
-		this.retrievedAreas = new ArrayList[numberOfSequences];
-		this.rcRetrievedAreas = new ArrayList[numberOfSequences];
-		for (int i = 0; i < numberOfSequences; i++) {
-			retrievedAreas[i] = new ArrayList<RetrievedArea>(0);
-			rcRetrievedAreas[i] = new ArrayList<RetrievedArea>(0);
-		}
 	}
 
+	private long searchBegin;
+	private CountDownLatch indexSearchersCountDown;
+	private BlockingQueue<IndexBothStrandSearcher> finishedQueue = null;
+	private final List<IndexSearcher> searchers = Lists.newArrayList();
+
 	@Override
 	public IndexSearchResults call() throws InterruptedException {
-		long searchBegin = System.currentTimeMillis();
+		List<IndexSearcher> created = createSearchers();
+		if (created == null) {
+			return null;
+		}
+		for (IndexSearcher indexSearcher : created) {
+			executor.submit(indexSearcher);
+		}
+		return getResults();
+	}
+
+	/**
+	 * Creates the searchers of the query slices and of their reverse complements, without
+	 * submitting them to the executor.
+	 * 
+	 * @return the created searchers or <code>null</code> if the reverse complement of the query
+	 *         could not be created.
+	 */
+	List<IndexSearcher> createSearchers() {
+		searchBegin = System.currentTimeMillis();
 
 		SymbolList query = sp.getQuery();
 
@@ -95,36 +118,113 @@ public class IndexBothStrandSearcher implements Callable<IndexSearchResults> {
 			sliceSize = length / querySplitQuantity;
 		}
 
-		CountDownLatch indexSearchersCountDown = new CountDownLatch(querySplitQuantity * 2);
+		indexSearchersCountDown = new SearchersCountDown(querySplitQuantity * 2);
+
+		int overlap = sp.getMinHspLength() - subSequenceLength;
+		int[] cuts = null;
+		int[] rcCuts = null;
+		QuerySlicePlanner planner = null;
+		QuerySlicePlanner rcPlanner = null;
+		int patternLength = databank.getMaskEncoder() == null ? subSequenceLength : databank.getMaskEncoder().getPatternLength();
+		if (querySplitQuantity > 1 && length >= querySplitQuantity * patternLength) {
+			try {
+				planner = new QuerySlicePlanner(databank, IndexSearcher.getEncodedSubSequences(seqString, databank.getEncoder(), patternLength, databank.getMaskEncoder()), length);
+				rcPlanner = new QuerySlicePlanner(databank, IndexSearcher.getEncodedSubSequences(rcString, databank.getEncoder(), patternLength, databank.getMaskEncoder()), length);
+				cuts = planner.cut(querySplitQuantity, patternLength);
+				rcCuts = rcPlanner.cut(querySplitQuantity, patternLength);
+			} catch (IOException e) {
+				logger.error("(" + id + ") Error planning the query slices, they will have the same length.", e);
+				planner = null;
+				rcPlanner = null;
+			}
+		}
+		if (planner == null) {
+			cuts = new int[querySplitQuantity + 1];
+			for (int i = 0; i < querySplitQuantity; i++) {
+				cuts[i] = sliceSize * i;
+			}
+			cuts[querySplitQuantity] = length;
+			rcCuts = cuts;
+		}
 
 		logger.info("(" + id + ") " + querySplitQuantity + " threads with slice query with " + length + " bases.");
+		final Map<IndexSearcher, Long> slicesWork = Maps.newHashMap();
 		for (int i = 0; i < querySplitQuantity; i++) {
-			int begin = (sliceSize * i);
-			int end = (sliceSize * i) + sliceSize + (sp.getMinHspLength() - subSequenceLength);
-			if (end > length) {
-				end = length;
-			}
-			logger.info("(" + id + ") " + i + " [" + begin + " - " + end + "].");
+			int begin = cuts[i];
+			int end = Math.min(cuts[i + 1] + overlap, length);
+			int rcBegin = rcCuts[i];
+			int rcEnd = Math.min(rcCuts[i + 1] + overlap, length);
+			logger.info("(" + id + ") " + i + " [" + begin + " - " + end + "] reverse complement [" + rcBegin + " - " + rcEnd + "].");
 			String sliceQuery = seqString.substring(begin, end);
-			String rcSliceQuery = rcString.substring(begin, end);
-			submitSearch(sliceQuery, begin, query, encodedQuery, statistics, indexSearchersCountDown);
-			submitRCSearch(rcSliceQuery, begin, rcQuery, rcEncodedQuery, statistics, indexSearchersCountDown);
+			String rcSliceQuery = rcString.substring(rcBegin, rcEnd);
+			createSearch(sliceQuery, begin, query, encodedQuery, statistics, indexSearchersCountDown);
+			createRCSearch(rcSliceQuery, rcBegin, rcQuery, rcEncodedQuery, statistics, indexSearchersCountDown);
+			if (planner != null) {
+				slicesWork.put(searcher, planner.getWork(begin, end));
+				slicesWork.put(crSearcher, rcPlanner.getWork(rcBegin, rcEnd));
+			}
 		}
 
+		if (planner != null) {
+			// The slices with more work are started first.
+			Collections.sort(searchers, new Comparator<IndexSearcher>() {
+				@Override
+				public int compare(IndexSearcher o1, IndexSearcher o2) {
+					return slicesWork.get(o2).compareTo(slicesWork.get(o1));
+				}
+			});
+		}
+
+		return searchers;
+	}
+
+	/**
+	 * Sets the queue where this searcher is put when all searchers created by
+	 * {@link #createSearchers()} finish. It must be set before creating them.
+	 */
+	void setFinishedQueue(BlockingQueue<IndexBothStrandSearcher> finishedQueue) {
+		this.finishedQueue = finishedQueue;
+	}
+
+	/**
+	 * Count down of the searchers which puts this searcher at the finished queue when it reaches
+	 * zero.
+	 */
+	private class SearchersCountDown extends CountDownLatch {
+		private final AtomicBoolean finished = new AtomicBoolean(false);
+
+		public SearchersCountDown(int count) {
+			super(count);
+		}
+
+		@Override
+		public void countDown() {
+			super.countDown();
+			if (getCount() == 0 && finishedQueue != null && finished.compareAndSet(false, true)) {
+				finishedQueue.add(IndexBothStrandSearcher.this);
+			}
+		}
+	}
+
+	/**
+	 * Waits the searchers created by {@link #createSearchers()} and joins their results.
+	 * 
+	 * @return the results or <code>null</code> if some searcher failed.
+	 */
+	IndexSearchResults getResults() throws InterruptedException {
 		indexSearchersCountDown.await();
 
 		if (fails.size() > 0) {
 			return null;
 		}
 
-		IndexSearchResults results = new IndexSearchResults(searcher, crSearcher);
+		IndexSearchResults results = new IndexSearchResults(sp.getMaxHitsResults(), searcher, crSearcher);
 		
-		int numberOfSequences = databank.getNumberOfSequences();
-		for (int i = 0; i < numberOfSequences; i++) {
-			ArrayList<RetrievedArea> areas1 = retrievedAreas[i];
-			ArrayList<RetrievedArea> areas2 = rcRetrievedAreas[i];
+		for (int i : SequencesRetrievedAreas.getSequenceIds(retrievedAreas, rcRetrievedAreas)) {
+			List<RetrievedArea> areas1 = retrievedAreas.get(i);
+			List<RetrievedArea> areas2 = rcRetrievedAreas.get(i);
 
-			if (areas1.size() > 0 || areas2.size() > 0) {
+			if ((areas1 != null && areas1.size() > 0) || (areas2 != null && areas2.size() > 0)) {
 				@SuppressWarnings("unchecked")
 				RetrievedSequenceAreas retrievedAreas = new RetrievedSequenceAreas(i, searcher.getDatabank(), areas1, areas2);
 				results.add(retrievedAreas);
@@ -136,15 +236,15 @@ public class IndexBothStrandSearcher implements Callable<IndexSearchResults> {
 		return results;
 	}
 
-	private void submitSearch(String sliceQuery, int offset, SymbolList fullQuery, int[] encodedQuery,
+	private void createSearch(String sliceQuery, int offset, SymbolList fullQuery, int[] encodedQuery,
 			Statistics statistics, CountDownLatch countDown) {
 		searcher = new IndexSearcher(id, sp, databank, sliceQuery, offset, fullQuery, encodedQuery, retrievedAreas, statistics, countDown, fails, 1);
-		executor.submit(searcher);
+		searchers.add(searcher);
 	}
 
-	private void submitRCSearch(String sliceQuery, int offset, SymbolList fullQuery, int[] encodedQuery,
+	private void createRCSearch(String sliceQuery, int offset, SymbolList fullQuery, int[] encodedQuery,
 			Statistics statistics, CountDownLatch countDown) {
 		crSearcher = new IndexReverseComplementSearcher(id, sp, databank, sliceQuery, offset, fullQuery, encodedQuery, rcRetrievedAreas, statistics, countDown, fails, 1);
-		executor.submit(crSearcher);
+		searchers.add(crSearcher);
 	}
 }
@@ -7,29 +7,53 @@
 
 package bio.pih.genoogle.search;
 
+import java.util.Arrays;
 import java.util.List;
 
 import bio.pih.genoogle.index.SubSequenceIndexInfo;
-import bio.pih.genoogle.util.CircularArrayList;
-import bio.pih.genoogle.util.Poll;
 
 import com.google.common.collect.Lists;
 
 /**
  * Stores the data retrieved from the Inverted Index.
+ * <p>
+ * Only the sequences which have retrieved sub-sequences are stored, in an open addressing table
+ * indexed by the sequence id. The opened areas are stored as packed integers in a single array
+ * and the areas of each sequence are linked by their positions in this array, so the memory used
+ * depends on the quantity of retrieved sub-sequences and not on the data bank size.
  * 
  * @author albrecht
  */
 public class IndexRetrievedData {
 
-	private final List<RetrievedArea>[] retrievedAreasArray;
-	private final CircularArrayList[] openedAreasArray;
-	private final Poll poll = new Poll();
-	private final int minLength;
-	private final int subSequenceLength;
-	private final int maxSubSequenceDistance;
+	private static final int EMPTY = -1;
+	private static final int INITIAL_TABLE_SIZE = 1024;
+
+	// Fields of each opened area in the areas array.
+	private static final int QUERY_BEGIN = 0;
+	private static final int QUERY_END = 1;
+	private static final int SEQUENCE_BEGIN = 2;
+	private static final int SEQUENCE_END = 3;
+	private static final int NEXT = 4;
+	private static final int AREA_FIELDS = 5;
+
+	protected final int minLength;
+	protected final int subSequenceLength;
+	protected final int maxSubSequenceDistance;
 	public int hits;
 
+	private final TwoHitFilter twoHitFilter;
+
+	// Open addressing table: sequence id, first opened area and retrieved areas of the sequence.
+	private int[] sequenceIds;
+	private int[] openedAreas;
+	private List<RetrievedArea>[] sequencesRetrievedAreas;
+	private int sequences = 0;
+
+	private int[] areas = new int[64 * AREA_FIELDS];
+	private int usedAreas = 0;
+	private int freeAreas = EMPTY;
+
 	/**
 	 * Constructor.
 	 * 
@@ -43,23 +67,23 @@ public class IndexRetrievedData {
 	 *            Index searcher that is used.
 	 */
 	public IndexRetrievedData(int size, SearchParams sp, int subSequenceLength, IndexSearcher searcher) {
-		this(size, sp, subSequenceLength, searcher, null);
-	}
-
-	@SuppressWarnings("unchecked")
-	public IndexRetrievedData(int size, SearchParams sp, int subSequenceLength, IndexSearcher searche, List<RetrievedArea>[] retrievedData) {
-
 		this.minLength = sp.getMinHspLength();
 		this.subSequenceLength = subSequenceLength;
 		this.maxSubSequenceDistance = sp.getMaxSubSequencesDistance();
-
-		if (retrievedData == null) {
-			this.retrievedAreasArray = new List[size];
+		if (sp.getTwoHitWindow() > 0) {
+			this.twoHitFilter = new TwoHitFilter(sp.getTwoHitWindow(), subSequenceLength);
 		} else {
-			this.retrievedAreasArray = retrievedData;
+			this.twoHitFilter = null;
 		}
 
-		openedAreasArray = new CircularArrayList[size];
+		int tableSize = 16;
+		while (tableSize < INITIAL_TABLE_SIZE && tableSize < size * 2) {
+			tableSize <<= 1;
+		}
+		this.sequenceIds = new int[tableSize];
+		Arrays.fill(sequenceIds, EMPTY);
+		this.openedAreas = new int[tableSize];
+		this.sequencesRetrievedAreas = newRetrievedAreasArray(tableSize);
 	}
 
 	/**
@@ -72,10 +96,34 @@ public class IndexRetrievedData {
 	 *            representation of the sub sequence by
 	 *            {@link SubSequenceIndexInfo}.
 	 */
-	final void addSubSequenceInfoIntRepresention(int queryPos, long subSequenceInfoIntRepresention) {
+	public final void addSubSequenceInfoIntRepresention(int queryPos, long subSequenceInfoIntRepresention) {
 		int sequencePos = SubSequenceIndexInfo.getStart(subSequenceInfoIntRepresention);
 		int sequenceId = SubSequenceIndexInfo.getSequenceId(subSequenceInfoIntRepresention);
 
+		if (twoHitFilter == null) {
+			addSubSequence(queryPos, sequencePos, sequenceId);
+			return;
+		}
+
+		int diagonal = sequencePos - queryPos;
+		int previousHit = twoHitFilter.hit(sequenceId, diagonal, queryPos);
+		if (previousHit != TwoHitFilter.NO_HIT) {
+			addSubSequence(previousHit, previousHit + diagonal, sequenceId);
+			addSubSequence(queryPos, sequencePos, sequenceId);
+		}
+	}
+
+	/**
+	 * Adds a sub-sequence which passed the filters.
+	 * 
+	 * @param queryPos
+	 *            Position in the query.
+	 * @param sequencePos
+	 *            Position in the data bank sequence.
+	 * @param sequenceId
+	 *            Data bank sequence id.
+	 */
+	void addSubSequence(int queryPos, int sequencePos, int sequenceId) {
 		mergeOrRemoveOrNew(queryPos, sequencePos, sequenceId);
 	}
 
@@ -90,87 +138,199 @@ public class IndexRetrievedData {
 	 *            Data bank sequence id.
 	 */
 	private final void mergeOrRemoveOrNew(int queryPos, int sequencePos, int sequenceId) {
+		int slot = getSlot(sequenceId);
 
-		CircularArrayList openedList = openedAreasArray[sequenceId];
+		boolean merged = false;
+		int previous = EMPTY;
+		int area = openedAreas[slot];
+		while (area != EMPTY) {
+			int base = area * AREA_FIELDS;
+			int next = areas[base + NEXT];
+			if (testAndSet(base, queryPos, sequencePos)) {
+				merged = true;
+				previous = area;
+			} else if (queryPos - areas[base + QUERY_END] > maxSubSequenceDistance) {
+				// The area end is away from the actual query position: it is closed.
+				if (length(base) >= minLength) {
+					hits++;
+					addRetrievedArea(slot, base);
+				}
+				if (previous == EMPTY) {
+					openedAreas[slot] = next;
+				} else {
+					areas[previous * AREA_FIELDS + NEXT] = next;
+				}
+				areas[base + NEXT] = freeAreas;
+				freeAreas = area;
+			} else {
+				previous = area;
+			}
+			area = next;
+		}
 
-		if (openedList == null) {
-			openedList = poll.pop();
+		if (!merged) {
+			int newArea = newArea(queryPos, sequencePos);
+			if (previous == EMPTY) {
+				openedAreas[slot] = newArea;
+			} else {
+				areas[previous * AREA_FIELDS + NEXT] = newArea;
+			}
 		}
+	}
 
-		if (openedList.size() == 0) {
-			openedAreasArray[sequenceId] = openedList;
-			openedList.add(queryPos, sequencePos, subSequenceLength);
+	private boolean testAndSet(int base, int queryPos, int sequencePos) {
+		if (queryPos < areas[base + QUERY_BEGIN] || queryPos > areas[base + QUERY_END] + maxSubSequenceDistance) {
+			return false;
+		}
+		if (sequencePos < areas[base + SEQUENCE_BEGIN] || sequencePos > areas[base + SEQUENCE_END] + maxSubSequenceDistance) {
+			return false;
+		}
+		areas[base + QUERY_END] = Math.max(areas[base + QUERY_END], queryPos + subSequenceLength);
+		areas[base + SEQUENCE_END] = Math.max(areas[base + SEQUENCE_END], sequencePos + subSequenceLength);
+		return true;
+	}
 
+	private int length(int base) {
+		return Math.min(areas[base + QUERY_END] - areas[base + QUERY_BEGIN], areas[base + SEQUENCE_END]
+				- areas[base + SEQUENCE_BEGIN]);
+	}
+
+	private int newArea(int queryPos, int sequencePos) {
+		int area;
+		if (freeAreas != EMPTY) {
+			area = freeAreas;
+			freeAreas = areas[area * AREA_FIELDS + NEXT];
 		} else {
-			boolean merged = false;
-			int totalRemove = 0;
-			int pos = 0;
-			for (RetrievedArea openedArea = openedList.get(pos); (openedArea = openedList.get(pos)) != null; pos++) {
-				// Try merge with previous area.
-				if (openedArea.testAndSet(queryPos, sequencePos, maxSubSequenceDistance, subSequenceLength)) {
-					merged = true;
-					openedList.rePos(openedArea, pos);
-					// Check if the area end is away from the actual sequence
-					// position.
-				} else if (queryPos - openedArea.getQueryAreaEnd() > maxSubSequenceDistance) {
-					// Count areas to remove.
-					totalRemove++;
-					if (openedArea.length() >= minLength) {
-						if (retrievedAreasArray[sequenceId] == null) {
-							retrievedAreasArray[sequenceId] = Lists.newArrayList();
-						}
-						hits++;
-						retrievedAreasArray[sequenceId].add(openedArea.copy());
-					}
-				}
+			area = usedAreas++;
+			if (usedAreas * AREA_FIELDS > areas.length) {
+				areas = Arrays.copyOf(areas, areas.length * 2);
 			}
+		}
+		int base = area * AREA_FIELDS;
+		areas[base + QUERY_BEGIN] = queryPos;
+		areas[base + QUERY_END] = queryPos + subSequenceLength;
+		areas[base + SEQUENCE_BEGIN] = sequencePos;
+		areas[base + SEQUENCE_END] = sequencePos + subSequenceLength;
+		areas[base + NEXT] = EMPTY;
+		return area;
+	}
 
-			if (totalRemove != 0) {
-				openedList.removeElements(totalRemove);
+	private void addRetrievedArea(int slot, int base) {
+		addSlotRetrievedArea(slot, areas[base + QUERY_BEGIN], areas[base + QUERY_END], areas[base + SEQUENCE_BEGIN],
+				areas[base + SEQUENCE_END]);
+	}
+
+	/**
+	 * Adds a closed area of the sequence to the retrieved areas.
+	 */
+	final void addRetrievedArea(int sequenceId, int queryBegin, int queryEnd, int sequenceBegin, int sequenceEnd) {
+		addSlotRetrievedArea(getSlot(sequenceId), queryBegin, queryEnd, sequenceBegin, sequenceEnd);
+	}
+
+	private void addSlotRetrievedArea(int slot, int queryBegin, int queryEnd, int sequenceBegin, int sequenceEnd) {
+		List<RetrievedArea> list = sequencesRetrievedAreas[slot];
+		if (list == null) {
+			list = Lists.newArrayList();
+			sequencesRetrievedAreas[slot] = list;
+		}
+		list.add(new RetrievedArea(queryBegin, queryEnd, sequenceBegin, sequenceEnd, Math.min(queryEnd - queryBegin,
+				sequenceEnd - sequenceBegin)));
+	}
+
+	/**
+	 * @return the slot of the sequence at the table, adding it if it is not there.
+	 */
+	private int getSlot(int sequenceId) {
+		int mask = sequenceIds.length - 1;
+		int slot = hash(sequenceId) & mask;
+		while (sequenceIds[slot] != EMPTY) {
+			if (sequenceIds[slot] == sequenceId) {
+				return slot;
 			}
+			slot = (slot + 1) & mask;
+		}
 
-			if (!merged) {
-				openedList.add(queryPos, sequencePos, subSequenceLength);
-			} else {
-				if (openedList.size() == 0) {
-					poll.push(openedList);
-					openedAreasArray[sequenceId] = null;
+		// Keeps the load factor below 1/2.
+		if ((sequences + 1) * 2 > sequenceIds.length) {
+			rehash();
+			return getSlot(sequenceId);
+		}
+
+		sequenceIds[slot] = sequenceId;
+		openedAreas[slot] = EMPTY;
+		sequences++;
+		return slot;
+	}
+
+	private void rehash() {
+		int[] oldSequenceIds = sequenceIds;
+		int[] oldOpenedAreas = openedAreas;
+		List<RetrievedArea>[] oldRetrievedAreas = sequencesRetrievedAreas;
+
+		int tableSize = oldSequenceIds.length * 2;
+		sequenceIds = new int[tableSize];
+		Arrays.fill(sequenceIds, EMPTY);
+		openedAreas = new int[tableSize];
+		sequencesRetrievedAreas = newRetrievedAreasArray(tableSize);
+
+		int mask = tableSize - 1;
+		for (int i = 0; i < oldSequenceIds.length; i++) {
+			if (oldSequenceIds[i] != EMPTY) {
+				int slot = hash(oldSequenceIds[i]) & mask;
+				while (sequenceIds[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
 				}
+				sequenceIds[slot] = oldSequenceIds[i];
+				openedAreas[slot] = oldOpenedAreas[i];
+				sequencesRetrievedAreas[slot] = oldRetrievedAreas[i];
 			}
 		}
 	}
 
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static List<RetrievedArea>[] newRetrievedAreasArray(int size) {
+		return new List[size];
+	}
+
+	private static int hash(int sequenceId) {
+		int h = sequenceId * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
 	/**
 	 * Finish the index searching process. It will close all retrieved areas and
 	 * it will check if the areas has the minumun length.
-	 * 
-	 * @return all {@link RetrievedArea} that has at least the minimum length.
 	 */
-	public List<RetrievedArea>[] finish() {
-		for (int sequenceId = 0; sequenceId < openedAreasArray.length; sequenceId++) {
-			CircularArrayList openedList = openedAreasArray[sequenceId];
-			if (openedList != null) {
-				int pos = 0;
-				for (RetrievedArea openedArea = openedList.get(pos); (openedArea = openedList.get(pos)) != null; pos++) {
-					if (openedArea.length() >= minLength) {
-						if (retrievedAreasArray[sequenceId] == null) {
-							retrievedAreasArray[sequenceId] = Lists.newArrayList();
-						}
-						retrievedAreasArray[sequenceId].add(openedArea);
-					}
+	public void finish() {
+		for (int slot = 0; slot < sequenceIds.length; slot++) {
+			if (sequenceIds[slot] == EMPTY) {
+				continue;
+			}
+			for (int area = openedAreas[slot]; area != EMPTY; area = areas[area * AREA_FIELDS + NEXT]) {
+				int base = area * AREA_FIELDS;
+				if (length(base) >= minLength) {
+					addRetrievedArea(slot, base);
 				}
 			}
+			openedAreas[slot] = EMPTY;
 		}
-		
-		return retrievedAreasArray;
+		areas = null;
 	}
 
 	/**
-	 * Get the retrieved areas.
+	 * Get the retrieved areas of each retrieved sequence.
 	 * 
-	 * @return all {@link RetrievedArea} that has at least the minimum length.
+	 * @return all {@link RetrievedArea} that has at least the minimum length, indexed by table
+	 *         slot. Use {@link #getSequenceId(int)} to get the sequence id of the slot.
 	 */
 	public List<RetrievedArea>[] getRetrievedAreasArray() {
-		return retrievedAreasArray;
+		return sequencesRetrievedAreas;
+	}
+
+	/**
+	 * @return the sequence id of the slot of {@link #getRetrievedAreasArray()}.
+	 */
+	public int getSequenceId(int slot) {
+		return sequenceIds[slot];
 	}
 }
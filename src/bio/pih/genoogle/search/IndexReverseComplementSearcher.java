@@ -20,13 +20,13 @@ public class IndexReverseComplementSearcher extends IndexReverseSearcher {
 
 	public IndexReverseComplementSearcher(long id, SearchParams sp, IndexedSequenceDataBank databank, SequenceEncoder encoder, int subSequenceLength,
 			String rcSliceQuery, int offset, SymbolList rcQuery, int[] rcEncodedQuery, 
-			List<RetrievedArea>[] rcRetrievedAreas, Statistics statistics, CountDownLatch countDown, List<Throwable> fails, int readFrame) {
+			SequencesRetrievedAreas rcRetrievedAreas, Statistics statistics, CountDownLatch countDown, List<Throwable> fails, int readFrame) {
 		super(id, sp, databank, encoder, subSequenceLength, rcSliceQuery, offset, rcQuery, rcEncodedQuery, rcRetrievedAreas, statistics, countDown, fails, readFrame);
 	}
 	
 	public IndexReverseComplementSearcher(long id, SearchParams sp, IndexedSequenceDataBank databank, 
 			String rcSliceQuery, int offset, SymbolList rcQuery, int[] rcEncodedQuery, 
-			List<RetrievedArea>[] rcRetrievedAreas, Statistics statistics, CountDownLatch countDown, List<Throwable> fails, int readFrame) {
+			SequencesRetrievedAreas rcRetrievedAreas, Statistics statistics, CountDownLatch countDown, List<Throwable> fails, int readFrame) {
 		super(id, sp, databank, rcSliceQuery, offset, rcQuery, rcEncodedQuery, rcRetrievedAreas, statistics, countDown, fails, readFrame);
 	}
 
@@ -21,14 +21,14 @@ public class IndexReverseSearcher extends IndexSearcher {
 
 	public IndexReverseSearcher(long id, SearchParams sp, IndexedSequenceDataBank databank, SequenceEncoder encoder, int subSequenceLength,
 			String sliceQuery, int offset, SymbolList query, int[] encodedQuery,
-			List<RetrievedArea>[] rcRetrievedAreas, Statistics statistics, 
+			SequencesRetrievedAreas rcRetrievedAreas, Statistics statistics, 
 			CountDownLatch countDown, List<Throwable> fails, int readFrame) {
 		super(id, sp, databank, encoder, subSequenceLength, sliceQuery, offset, query, encodedQuery, rcRetrievedAreas, statistics, countDown, fails, readFrame);
 	}	
 	
 	public IndexReverseSearcher(long id, SearchParams sp, IndexedSequenceDataBank databank, 
 			String sliceQuery, int offset, SymbolList query, int[] encodedQuery, 
-			List<RetrievedArea>[] rcRetrievedAreas, Statistics statistics, 
+			SequencesRetrievedAreas rcRetrievedAreas, Statistics statistics, 
 			CountDownLatch countDown, List<Throwable> fails, int readFrame) {
 		super(id, sp, databank, sliceQuery, offset, query, encodedQuery, rcRetrievedAreas, statistics, countDown, fails, readFrame);
 	}
@@ -0,0 +1,160 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.search;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import bio.pih.genoogle.index.PostingsCursor;
+import bio.pih.genoogle.io.IndexedSequenceDataBank;
+
+/**
+ * Reads the inverted index buckets for many {@link IndexSearcher} of the same data bank at
+ * once.
+ * <p>
+ * The sub-sequences of all searchers are sorted, so each distinct bucket is read only once and
+ * the buckets are read in the index order. The entries are kept in a single array and each
+ * searcher reads them later, in the order of its query positions, as if it had read the index.
+ * <p>
+ * The entries of a batch are limited to {@link #MAX_ENTRIES}. A batch which reads more entries is
+ * abandoned and its searchers read the index by themselves.
+ *
+ * @author albrecht
+ */
+class IndexSearchBatch {
+
+	private static final Logger logger = Logger.getLogger(IndexSearchBatch.class.getName());
+
+	/**
+	 * Maximum quantity of entries kept by a batch, 512MB.
+	 */
+	static final int MAX_ENTRIES = 1 << 26;
+
+	private long[] entries = new long[1024];
+	private int totalEntries = 0;
+
+	/**
+	 * Begin of the entries of each distinct bucket, it has one position more than the quantity of
+	 * distinct buckets.
+	 */
+	private int[] bucketsBegin;
+
+	/**
+	 * The distinct bucket of each sub-sequence of the searchers.
+	 */
+	private int[] subSequencesBucket;
+
+	private IndexSearchBatch() {
+	}
+
+	/**
+	 * Reads the buckets of the sub-sequences of the searchers and sets the batch into them.
+	 *
+	 * @param databank
+	 *            data bank of all searchers.
+	 * @param searchers
+	 * @return the batch or <code>null</code> if its buckets have more than {@link #MAX_ENTRIES}
+	 *         entries, then the batch is not set into the searchers.
+	 */
+	static IndexSearchBatch read(IndexedSequenceDataBank databank, List<IndexSearcher> searchers) throws IOException {
+		long begin = System.currentTimeMillis();
+		IndexSearchBatch batch = new IndexSearchBatch();
+
+		int total = 0;
+		for (IndexSearcher searcher : searchers) {
+			total += searcher.getQuerySubSequences().length;
+		}
+
+		// Sub-sequence in the high bits and the position in the batch in the low bits.
+		long[] keys = new long[total];
+		int pos = 0;
+		for (IndexSearcher searcher : searchers) {
+			for (int subSequence : searcher.getQuerySubSequences()) {
+				keys[pos] = ((long) subSequence << 32) | pos;
+				pos++;
+			}
+		}
+		Arrays.sort(keys);
+
+		batch.subSequencesBucket = new int[total];
+		int[] bucketsBegin = new int[total + 1];
+		int buckets = 0;
+
+		databank.acquireIndex();
+		try {
+			PostingsCursor cursor = databank.newIndexCursor();
+			long previous = -1;
+			for (int i = 0; i < total; i++) {
+				long subSequence = keys[i] >>> 32;
+				if (subSequence != previous) {
+					bucketsBegin[buckets] = batch.totalEntries;
+					if (!batch.addBucket(cursor, (int) subSequence)) {
+						logger.info(searchers.size() + " searchers with " + total + " sub-sequences read more than "
+								+ MAX_ENTRIES + " entries, they will read the index by themselves.");
+						return null;
+					}
+					buckets++;
+					previous = subSequence;
+				}
+				batch.subSequencesBucket[(int) keys[i]] = buckets - 1;
+			}
+		} finally {
+			databank.releaseIndex();
+		}
+		bucketsBegin[buckets] = batch.totalEntries;
+		batch.bucketsBegin = bucketsBegin;
+
+		pos = 0;
+		for (IndexSearcher searcher : searchers) {
+			searcher.setBatch(batch, pos);
+			pos += searcher.getQuerySubSequences().length;
+		}
+
+		logger.info(searchers.size() + " searchers with " + total + " sub-sequences read " + buckets + " buckets with "
+				+ batch.totalEntries + " entries in " + (System.currentTimeMillis() - begin) + "ms.");
+		return batch;
+	}
+
+	/**
+	 * @return <code>false</code> if the bucket does not fit in the batch.
+	 */
+	private boolean addBucket(PostingsCursor cursor, int subSequence) throws IOException {
+		int length = cursor.seek(subSequence);
+		if (length > MAX_ENTRIES - totalEntries) {
+			return false;
+		}
+		if (totalEntries + length > entries.length) {
+			int newLength = (int) Math.min(MAX_ENTRIES, Math.max(entries.length * 2l, totalEntries + length));
+			entries = Arrays.copyOf(entries, newLength);
+		}
+		while (cursor.hasNext()) {
+			entries[totalEntries++] = cursor.next();
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the entries of the bucket of a sub-sequence into the retrieved data.
+	 *
+	 * @param batchPos
+	 *            position of the sub-sequence in the batch.
+	 * @param retrievedData
+	 * @param queryPos
+	 *            position of the sub-sequence in the query.
+	 */
+	void retrieveIndexPosition(int batchPos, IndexRetrievedData retrievedData, int queryPos) {
+		int bucket = subSequencesBucket[batchPos];
+		int end = bucketsBegin[bucket + 1];
+		for (int i = bucketsBegin[bucket]; i < end; i++) {
+			retrievedData.addSubSequenceInfoIntRepresention(queryPos, entries[i]);
+		}
+	}
+}
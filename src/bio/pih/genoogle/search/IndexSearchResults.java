@@ -7,51 +7,200 @@
 
 package bio.pih.genoogle.search;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+import bio.pih.genoogle.util.BinaryHeap;
+
 import com.google.common.collect.Lists;
 
+/**
+ * The sequences areas found by the index search, ordered by their biggest area length. When the
+ * quantity of results is limited, only the best results are kept in a bounded min-heap, so the
+ * candidates which will not be aligned are discarded as they are added.
+ * <p>
+ * The results with the same length are in the order which they were added, and the results of
+ * a merged {@link IndexSearchResults} are after the results of this one, or are ordered by the
+ * position given at the merge.
+ */
 public class IndexSearchResults {
-	
-	private static Comparator<RetrievedSequenceAreas> AREAS_LENGTH_COMPARATOR = new Comparator<RetrievedSequenceAreas>() {
+
+	/**
+	 * Orders the worst result first: shorter areas and, with the same length, added later.
+	 */
+	private static final Comparator<Candidate> WORST_FIRST_COMPARATOR = new Comparator<Candidate>() {
 		@Override
-		public int compare(final RetrievedSequenceAreas o1, final RetrievedSequenceAreas o2) {
-			return o2.getBiggestLength() - o1.getBiggestLength();
+		public int compare(final Candidate o1, final Candidate o2) {
+			int length1 = o1.areas.getBiggestLength();
+			int length2 = o2.areas.getBiggestLength();
+			if (length1 != length2) {
+				return length1 < length2 ? -1 : 1;
+			}
+			return o1.order > o2.order ? -1 : (o1.order == o2.order ? 0 : 1);
 		}
 	};
-		
+
+	private static final Comparator<Candidate> BEST_FIRST_COMPARATOR = Collections.reverseOrder(WORST_FIRST_COMPARATOR);
+
 	private final IndexSearcher[] searchers;
-	List<RetrievedSequenceAreas> results = Lists.newLinkedList();
-	boolean sorted = false;
-		
+	private final int maxResults;
+
+	/**
+	 * Bounded heap with the worst kept result at its top, when the results are limited.
+	 */
+	private final BinaryHeap<Candidate> heap;
+
+	/**
+	 * All results, when they are not limited.
+	 */
+	private final List<Candidate> candidates;
+
+	private long added = 0;
+	private Candidate[] sorted = null;
+
+	/**
+	 * Creates the results without limit of quantity.
+	 */
 	public IndexSearchResults(IndexSearcher ... searcher) {
-		searchers = searcher;			
+		this(0, searcher);
 	}
-	
+
+	/**
+	 * @param maxResults
+	 *            quantity of best results which are kept or <code>0</code> to keep all.
+	 * @param searcher
+	 */
+	public IndexSearchResults(int maxResults, IndexSearcher ... searcher) {
+		this.searchers = searcher;
+		this.maxResults = maxResults;
+		if (maxResults > 0) {
+			this.heap = new BinaryHeap<Candidate>(maxResults, WORST_FIRST_COMPARATOR);
+			this.candidates = null;
+		} else {
+			this.heap = null;
+			this.candidates = Lists.newArrayList();
+		}
+	}
+
 	public void add(RetrievedSequenceAreas areas) {
-		results.add(areas);
+		unsort();
+		add(new Candidate(areas, added));
+		added++;
 	}
-	
+
+	private void add(Candidate candidate) {
+		if (heap == null) {
+			candidates.add(candidate);
+		} else if (heap.size() < maxResults) {
+			heap.add(candidate);
+		} else if (WORST_FIRST_COMPARATOR.compare(candidate, heap.top()) > 0) {
+			heap.switchTop(candidate);
+		}
+	}
+
 	public RetrievedSequenceAreas get(int pos) {
-		if (!sorted) {
-			Collections.sort(results, AREAS_LENGTH_COMPARATOR);
-			sorted = true;
+		if (sorted == null) {
+			sort();
+		}
+		return sorted[pos].areas;
+	}
+
+	/**
+	 * Takes the results from the heap or the list and sorts them from the best to the worst.
+	 */
+	private void sort() {
+		Candidate[] results;
+		if (heap == null) {
+			results = candidates.toArray(new Candidate[candidates.size()]);
+			candidates.clear();
+			Arrays.sort(results, BEST_FIRST_COMPARATOR);
+		} else {
+			results = new Candidate[heap.size()];
+			for (int i = results.length - 1; i >= 0; i--) {
+				results[i] = heap.removeTop();
+			}
+		}
+
+		sorted = results;
+	}
+
+	/**
+	 * Puts back the sorted results into the heap or the list, to add more results.
+	 */
+	private void unsort() {
+		if (sorted == null) {
+			return;
+		}
+		Candidate[] results = sorted;
+		sorted = null;
+		for (Candidate candidate : results) {
+			add(candidate);
 		}
-		return results.get(pos);
 	}
-		
+
 	public IndexSearcher[] getIndexSearchers() {
 		return searchers;
 	}
-		
+
 	public int size() {
-		return results.size();
+		if (sorted != null) {
+			return sorted.length;
+		}
+		return heap == null ? candidates.size() : heap.size();
 	}
-	
+
+	/**
+	 * Adds the results of other {@link IndexSearchResults}, after the results of this one. The
+	 * other results can not be used after the merge.
+	 */
 	public void merge(IndexSearchResults indexSearchResults) {
-		this.results.addAll(indexSearchResults.results);
-		sorted = false;
+		mergeAfter(indexSearchResults, added);
+		added += indexSearchResults.added;
+	}
+
+	/**
+	 * Adds the results of other {@link IndexSearchResults} ordered by the given position, so the
+	 * ranking does not depend on the order of the merges. The results of this one must have been
+	 * merged by position too. The other results can not be used after the merge.
+	 * 
+	 * @param position
+	 *            position of the merged results, as the data bank position at its collection.
+	 */
+	public void merge(IndexSearchResults indexSearchResults, int position) {
+		mergeAfter(indexSearchResults, ((long) position) << 32);
+	}
+
+	/**
+	 * Adds the results of other {@link IndexSearchResults} with their orders after the offset.
+	 */
+	private void mergeAfter(IndexSearchResults indexSearchResults, long offset) {
+		unsort();
+		indexSearchResults.unsort();
+		if (indexSearchResults.heap == null) {
+			for (Candidate candidate : indexSearchResults.candidates) {
+				add(new Candidate(candidate.areas, offset + candidate.order));
+			}
+			indexSearchResults.candidates.clear();
+		} else {
+			while (!indexSearchResults.heap.isEmpty()) {
+				Candidate candidate = indexSearchResults.heap.removeTop();
+				add(new Candidate(candidate.areas, offset + candidate.order));
+			}
+		}
+	}
+
+	/**
+	 * A result with the order which it was added.
+	 */
+	private static class Candidate {
+		private final RetrievedSequenceAreas areas;
+		private final long order;
+
+		public Candidate(RetrievedSequenceAreas areas, long order) {
+			this.areas = areas;
+			this.order = order;
+		}
 	}
 }
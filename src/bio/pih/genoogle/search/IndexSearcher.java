@@ -16,6 +16,7 @@ import org.apache.log4j.Logger;
 import bio.pih.genoogle.alignment.GenoogleSequenceAlignment;
 import bio.pih.genoogle.encoder.MaskEncoder;
 import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.index.PostingsCursor;
 import bio.pih.genoogle.index.ValueOutOfBoundsException;
 import bio.pih.genoogle.io.IndexedSequenceDataBank;
 import bio.pih.genoogle.io.RemoteSimilaritySequenceDataBank;
@@ -23,8 +24,6 @@ import bio.pih.genoogle.search.results.HSP;
 import bio.pih.genoogle.seq.SymbolList;
 import bio.pih.genoogle.statistics.Statistics;
 
-import com.google.common.collect.Lists;
-
 /**
  * Interface witch defines methods for search for similar sequences and checks.
  * 
@@ -39,7 +38,7 @@ public class IndexSearcher implements Runnable {
 	protected final SequenceEncoder encoder;
 	protected final IndexedSequenceDataBank databank;
 	private final Statistics statistics;
-	private final List<RetrievedArea>[] retrievedAreas;
+	private final SequencesRetrievedAreas retrievedAreas;
 	private final CountDownLatch countDown;
 
 	private final int subSequenceLength;
@@ -52,8 +51,18 @@ public class IndexSearcher implements Runnable {
 
 	private final int readFrame;
 
+	/**
+	 * The cancellation of the search is checked each 64 query sub-sequences.
+	 */
+	private static final int CANCELLATION_CHECK_MASK = 63;
+
+	private SearchProgress progress = new SearchProgress();
+	private int[] querySubSequences = null;
+	private IndexSearchBatch batch = null;
+	private int batchOffset;
+
 	public IndexSearcher(long id, SearchParams sp, IndexedSequenceDataBank databank, SequenceEncoder encoder, int subSequenceLength, String sliceQuery,
-			int offset, SymbolList fullQuery, int[] encodedQuery, List<RetrievedArea>[] retrievedAreas,
+			int offset, SymbolList fullQuery, int[] encodedQuery, SequencesRetrievedAreas retrievedAreas,
 			Statistics statistics, CountDownLatch countDown, List<Throwable> fails, int readFrame) {
 		this.id = id;
 		this.sp = sp;
@@ -72,7 +81,7 @@ public class IndexSearcher implements Runnable {
 	}
 
 	public IndexSearcher(long id, SearchParams sp, IndexedSequenceDataBank databank, String sliceQuery,
-			int offset, SymbolList fullQuery, int[] encodedQuery, List<RetrievedArea>[] retrievedAreas,
+			int offset, SymbolList fullQuery, int[] encodedQuery, SequencesRetrievedAreas retrievedAreas,
 			Statistics statistics, CountDownLatch countDown, List<Throwable> fails, int readFrame) {
 		
 		this(id, sp, databank, databank.getEncoder(),
@@ -91,6 +100,7 @@ public class IndexSearcher implements Runnable {
 	@Override
 	public void run() {
 		try {
+			progress.checkCancelled();
 			int queryLength = sliceQuery.length();
 			if (queryLength < subSequenceLength) {
 				logger.info("Sequence: \"" + sliceQuery + "\" is too short. Its length is "
@@ -102,7 +112,7 @@ public class IndexSearcher implements Runnable {
 					+ " with the sequence with " + sliceQuery.length() + " bases and min subSequenceLength >= "
 					+ this.sp.getMinHspLength());
 
-			int[] iess = getEncodedSubSequences(sliceQuery, databank.getMaskEncoder());
+			int[] iess = getQuerySubSequences();
 
 			long init = System.currentTimeMillis();
 			IndexRetrievedData retrievedData = getIndexPositions(iess, offset);
@@ -110,42 +120,19 @@ public class IndexSearcher implements Runnable {
 			retrievedData.finish();
 
 			List<RetrievedArea>[] retrievedAreasArray = retrievedData.getRetrievedAreasArray();
-
-			if (this.retrievedAreas == retrievedAreasArray) {
-				logger.info("[" + this.toString() + "] Index search time:" + (System.currentTimeMillis() - init) + " with " + retrievedData.hits + " hits.");
-                return;
-			}
-
 			final int length = retrievedAreasArray.length;
 
-			for (int i = 0; i < length; i++) {
-				List<RetrievedArea> localRetrievedAreas = retrievedAreasArray[i];
-                // TODO LOCK HERE BY THE "I"
+			for (int slot = 0; slot < length; slot++) {
+				List<RetrievedArea> localRetrievedAreas = retrievedAreasArray[slot];
 				if (localRetrievedAreas != null) {
-					List<RetrievedArea> retrievedAreasList = retrievedAreas[i];
-                    // LOCK HERE
-                    if (retrievedAreasList == null) {
-                    	retrievedAreas[i] = localRetrievedAreas;
-                    }
-					else {
-						List<RetrievedArea> toAdd = Lists.newArrayList();
-						for (RetrievedArea existingArea : retrievedAreasList) {
-							for (RetrievedArea newArea : localRetrievedAreas) {
-								if (!existingArea.testAndSet(newArea.getQueryAreaBegin(),
-										newArea.getSequenceAreaBegin(), sp.getMaxSubSequencesDistance(),
-										subSequenceLength)) {
-									toAdd.add(newArea);
-								}
-							}
-						}
-						retrievedAreasList.addAll(toAdd);
-					}
+					retrievedAreas.merge(retrievedData.getSequenceId(slot), localRetrievedAreas, sp.getMaxSubSequencesDistance());
 				}
 			}
 			logger.info("[" + this.toString() + "] Index search time:" + (System.currentTimeMillis() - init) + " with " + retrievedData.hits + " hits.");
 		} catch (Throwable t) {
 			fails.add(t);
 		} finally {
+			progress.indexSearchDone();
 			countDown.countDown();
 		}
 	}
@@ -154,42 +141,99 @@ public class IndexSearcher implements Runnable {
 			IOException {
 
 		IndexRetrievedData retrievedData;
-        if (fullQuery.getLength() == sliceQuery.length())  {
-        	retrievedData = new IndexRetrievedData(databank.getNumberOfSequences(), sp, subSequenceLength, this, this.retrievedAreas);
-        } else {
-		    retrievedData = new IndexRetrievedData(databank.getNumberOfSequences(), sp, subSequenceLength, this);
-        }
-                
-		for (int ss = 0; ss < iess.length; ss++) {
-			retrieveIndexPosition(iess[ss], retrievedData, ss + offset);
-		}		
+		if (sp.getSeedingEngine() == SearchParams.DIAGONAL_SORT_SEEDING) {
+			retrievedData = new DiagonalIndexRetrievedData(databank.getNumberOfSequences(), sp, subSequenceLength, this);
+		} else {
+			retrievedData = new IndexRetrievedData(databank.getNumberOfSequences(), sp, subSequenceLength, this);
+		}
+
+		if (batch != null) {
+			for (int ss = 0; ss < iess.length; ss++) {
+				if ((ss & CANCELLATION_CHECK_MASK) == 0) {
+					progress.checkCancelled();
+				}
+				batch.retrieveIndexPosition(batchOffset + ss, retrievedData, ss + offset);
+			}
+			// The batch entries are not needed anymore by this searcher.
+			batch = null;
+			return retrievedData;
+		}
+
+		databank.acquireIndex();
+		try {
+			PostingsCursor cursor = databank.newIndexCursor();
+			for (int ss = 0; ss < iess.length; ss++) {
+				if ((ss & CANCELLATION_CHECK_MASK) == 0) {
+					progress.checkCancelled();
+				}
+				retrieveIndexPosition(iess[ss], retrievedData, ss + offset, cursor);
+			}
+		} finally {
+			databank.releaseIndex();
+		}
 		return retrievedData;
 	}
 
-	private void retrieveIndexPosition(int encodedSubSequence, IndexRetrievedData retrievedData, int queryPos)
-			throws ValueOutOfBoundsException, IOException {
+	/**
+	 * @return the encoded sub-sequences of the query slice, empty if the slice is shorter than
+	 *         the sub-sequences.
+	 */
+	int[] getQuerySubSequences() {
+		if (querySubSequences == null) {
+			if (sliceQuery.length() < subSequenceLength) {
+				querySubSequences = new int[0];
+			} else {
+				querySubSequences = getEncodedSubSequences(sliceQuery, encoder, subSequenceLength, databank.getMaskEncoder());
+			}
+		}
+		return querySubSequences;
+	}
 
-		final long[] indexPositions = databank.getMatchingSubSequence(encodedSubSequence);
+	/**
+	 * @param progress
+	 *            progress of the search, informed when this searcher finishes and checked for
+	 *            its cancellation.
+	 */
+	void setProgress(SearchProgress progress) {
+		this.progress = progress;
+	}
 
-        for (int i = 0; i < indexPositions.length; i++) {
-			retrievedData.addSubSequenceInfoIntRepresention(queryPos, indexPositions[i]);
-		}
+	/**
+	 * Makes this searcher read the index entries from a batch which already read the buckets of
+	 * its sub-sequences, instead of reading the index.
+	 * 
+	 * @param batch
+	 * @param batchOffset
+	 *            position of the first sub-sequence of this searcher in the batch.
+	 */
+	void setBatch(IndexSearchBatch batch, int batchOffset) {
+		this.batch = batch;
+		this.batchOffset = batchOffset;
 	}
 
-	private int[] getEncodedSubSequences(String querySequence) {
-		int size = querySequence.length() - (subSequenceLength - 1);
-		int[] iess = new int[size];
+	private void retrieveIndexPosition(int encodedSubSequence, IndexRetrievedData retrievedData, int queryPos,
+			PostingsCursor cursor) throws ValueOutOfBoundsException, IOException {
 
-		for (int i = 0; i < size; i++) {
-			String subSequence = querySequence.substring(i, i + subSequenceLength);
-			iess[i] = encoder.encodeSubSequenceToInteger(subSequence);
+		cursor.seek(encodedSubSequence);
+		while (cursor.hasNext()) {
+			retrievedData.addSubSequenceInfoIntRepresention(queryPos, cursor.next());
 		}
-		return iess;
 	}
 
-	private int[] getEncodedSubSequences(String querySequence, MaskEncoder maskEncoder) {
+	/**
+	 * @return the encoded sub-sequences of each position of the sequence.
+	 */
+	static int[] getEncodedSubSequences(String querySequence, SequenceEncoder encoder, int subSequenceLength,
+			MaskEncoder maskEncoder) {
 		if (maskEncoder == null) {
-			return getEncodedSubSequences(querySequence);
+			int size = querySequence.length() - (subSequenceLength - 1);
+			int[] iess = new int[size];
+
+			for (int i = 0; i < size; i++) {
+				String subSequence = querySequence.substring(i, i + subSequenceLength);
+				iess[i] = encoder.encodeSubSequenceToInteger(subSequence);
+			}
+			return iess;
 		}
 
 		int size = querySequence.length() - (maskEncoder.getPatternLength() - 1);
@@ -7,7 +7,6 @@
 
 package bio.pih.genoogle.search;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
@@ -27,18 +26,18 @@ public class IndexSixFramesSearcher implements Callable<IndexSearchResults> {
 	private final long id;
 	private final SearchParams sp;
 	private final RemoteSimilaritySequenceDataBank databank;
-	private final ArrayList<RetrievedArea>[] retrievedAreasFrame1;
-	private final ArrayList<RetrievedArea>[] retrievedAreasFrame2;
-	private final ArrayList<RetrievedArea>[] retrievedAreasFrame3;
-	private final ArrayList<RetrievedArea>[] rcRetrievedAreasFrame1;
-	private final ArrayList<RetrievedArea>[] rcRetrievedAreasFrame2;
-	private final ArrayList<RetrievedArea>[] rcRetrievedAreasFrame3;
+	private final SequencesRetrievedAreas retrievedAreasFrame1 = new SequencesRetrievedAreas();
+	private final SequencesRetrievedAreas retrievedAreasFrame2 = new SequencesRetrievedAreas();
+	private final SequencesRetrievedAreas retrievedAreasFrame3 = new SequencesRetrievedAreas();
+	private final SequencesRetrievedAreas rcRetrievedAreasFrame1 = new SequencesRetrievedAreas();
+	private final SequencesRetrievedAreas rcRetrievedAreasFrame2 = new SequencesRetrievedAreas();
+	private final SequencesRetrievedAreas rcRetrievedAreasFrame3 = new SequencesRetrievedAreas();
 	private final List<Throwable> fails;
 	private final ExecutorService executor;
 	private final SequenceEncoder encoder;
+	private SearchProgress progress = new SearchProgress();
 
 		
-	@SuppressWarnings("unchecked")
 	public IndexSixFramesSearcher(long id, SearchParams sp, RemoteSimilaritySequenceDataBank databank,
 			ExecutorService executor, List<Throwable> fails) {
 		this.id = id;
@@ -46,15 +45,16 @@ public class IndexSixFramesSearcher implements Callable<IndexSearchResults> {
 		this.databank = databank;
 		this.executor = executor;
 		this.fails = fails;
-		int numberOfSequences = databank.getNumberOfSequences();
 		this.encoder = databank.getReducedEncoder();
+	}
 
-        this.retrievedAreasFrame1 = new ArrayList[numberOfSequences];
-		this.retrievedAreasFrame2 = new ArrayList[numberOfSequences];
-        this.retrievedAreasFrame3 = new ArrayList[numberOfSequences];
-		this.rcRetrievedAreasFrame1 = new ArrayList[numberOfSequences];
-		this.rcRetrievedAreasFrame2 = new ArrayList[numberOfSequences];
-		this.rcRetrievedAreasFrame3 = new ArrayList[numberOfSequences];
+	/**
+	 * @param progress
+	 *            progress of the search, informed when each frame searcher finishes and checked
+	 *            for the search cancellation.
+	 */
+	void setProgress(SearchProgress progress) {
+		this.progress = progress;
 	}
 
 	// TODO: Fix statistics (correct alphabet and match and mismatch scores)	
@@ -86,6 +86,7 @@ public class IndexSixFramesSearcher implements Callable<IndexSearchResults> {
 		int[] encodedReducedComplement3 = encoder.encodeSymbolListToIntegerArray(complement3);
 		
 		CountDownLatch indexSearchersCountDown = new CountDownLatch(6);
+		progress.addIndexSearches(6);
 		
 		IndexSearcher searcher1 = submitSearch(read1.seqString(), 0, dnaToProtein1, encodedReducedRead1, indexSearchersCountDown, 1, retrievedAreasFrame1);
 		IndexSearcher searcher2 = submitSearch(read2.seqString(), 0, dnaToProtein2, encodedReducedRead2, indexSearchersCountDown, 2, retrievedAreasFrame2);
@@ -101,22 +102,19 @@ public class IndexSixFramesSearcher implements Callable<IndexSearchResults> {
 			return null;
 		}
 
-		IndexSearchResults results = new IndexSearchResults(searcher1, searcher2, searcher3, rcSearcher1, rcSearcher2, rcSearcher3);
+		IndexSearchResults results = new IndexSearchResults(sp.getMaxHitsResults(), searcher1, searcher2, searcher3, rcSearcher1, rcSearcher2, rcSearcher3);
 		
-		int numberOfSequences = databank.getNumberOfSequences();
-		for (int i = 0; i < numberOfSequences; i++) {
-			ArrayList<RetrievedArea> areas1 = retrievedAreasFrame1[i];
-			ArrayList<RetrievedArea> areas2 = retrievedAreasFrame2[i];
-			ArrayList<RetrievedArea> areas3 = retrievedAreasFrame3[i];
-			ArrayList<RetrievedArea> areas4 = rcRetrievedAreasFrame1[i];
-			ArrayList<RetrievedArea> areas5 = rcRetrievedAreasFrame2[i];
-			ArrayList<RetrievedArea> areas6 = rcRetrievedAreasFrame3[i];
-			
-			if (areas1 != null || areas2 != null || areas3 != null || areas4 != null || areas5 != null || areas6 != null) {
-				@SuppressWarnings("unchecked")
-				RetrievedSequenceAreas retrievedAreas = new RetrievedSequenceAreas(i, searcher1.getDatabank(), areas1, areas2, areas3, areas4, areas5, areas6);
-				results.add(retrievedAreas);
-			}
+		for (int i : SequencesRetrievedAreas.getSequenceIds(retrievedAreasFrame1, retrievedAreasFrame2, retrievedAreasFrame3, rcRetrievedAreasFrame1, rcRetrievedAreasFrame2, rcRetrievedAreasFrame3)) {
+			List<RetrievedArea> areas1 = retrievedAreasFrame1.get(i);
+			List<RetrievedArea> areas2 = retrievedAreasFrame2.get(i);
+			List<RetrievedArea> areas3 = retrievedAreasFrame3.get(i);
+			List<RetrievedArea> areas4 = rcRetrievedAreasFrame1.get(i);
+			List<RetrievedArea> areas5 = rcRetrievedAreasFrame2.get(i);
+			List<RetrievedArea> areas6 = rcRetrievedAreasFrame3.get(i);
+
+			@SuppressWarnings("unchecked")
+			RetrievedSequenceAreas retrievedAreas = new RetrievedSequenceAreas(i, searcher1.getDatabank(), areas1, areas2, areas3, areas4, areas5, areas6);
+			results.add(retrievedAreas);
 		}
 
 		logger.info("(" + id + ") " + "Index search time: " + (System.currentTimeMillis() - searchBegin));
@@ -126,21 +124,23 @@ public class IndexSixFramesSearcher implements Callable<IndexSearchResults> {
 
 
 	private IndexSearcher submitSearch(String sliceQuery, int offset, SymbolList fullQuery, int[] encodedQuery,
-			CountDownLatch countDown, int frame, List<RetrievedArea>[] retrievedAreas) {
+			CountDownLatch countDown, int frame, SequencesRetrievedAreas retrievedAreas) {
 		SubstitutionMatrixStatistics statistics = new SubstitutionMatrixStatistics(databank.getAaEncoder().getAlphabet(), SubstitutionMatrix.BLOSUM62,
 				 fullQuery, databank.getTotalDataBaseSize(), databank.getTotalNumberOfSequences());
 		
 		IndexSearcher searcher = new IndexSearcher(id, sp, databank, encoder, encoder.getSubSequenceLength() , sliceQuery, offset, fullQuery, encodedQuery, retrievedAreas, statistics, countDown, fails, frame);
+		searcher.setProgress(progress);
 		executor.submit(searcher);
 		return searcher;
 	}
 
 	private IndexSearcher submitRCSearch(String sliceQuery, int offset, SymbolList fullQuery, int[] encodedQuery,
-			CountDownLatch countDown, int frame, List<RetrievedArea>[] retrievedAreas) {
+			CountDownLatch countDown, int frame, SequencesRetrievedAreas retrievedAreas) {
 		SubstitutionMatrixStatistics statistics = new SubstitutionMatrixStatistics(databank.getAaEncoder().getAlphabet(), SubstitutionMatrix.BLOSUM62, 
 				fullQuery, databank.getTotalDataBaseSize(), databank.getTotalNumberOfSequences());
 		
 		IndexSearcher crSearcher = new IndexReverseComplementSearcher(id, sp, databank, encoder, encoder.getSubSequenceLength(), sliceQuery, offset, fullQuery, encodedQuery, retrievedAreas, statistics, countDown, fails, frame);
+		crSearcher.setProgress(progress);
 		executor.submit(crSearcher);
 		return crSearcher;
 	}
@@ -0,0 +1,88 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.search;
+
+import java.io.IOException;
+
+import bio.pih.genoogle.index.PostingsCursor;
+import bio.pih.genoogle.io.IndexedSequenceDataBank;
+
+/**
+ * Divides a query in slices with about the same quantity of index entries to read, instead of
+ * the same length. The work of each position of the query is the size of the index bucket of its
+ * sub-sequence plus one.
+ * 
+ * @author albrecht
+ */
+final class QuerySlicePlanner {
+
+	/**
+	 * Accumulated work of the positions before each position.
+	 */
+	private final long[] work;
+	private final int queryLength;
+
+	/**
+	 * @param databank
+	 *            data bank where the query will be searched.
+	 * @param subSequences
+	 *            encoded sub-sequences of each query position.
+	 * @param queryLength
+	 */
+	QuerySlicePlanner(IndexedSequenceDataBank databank, int[] subSequences, int queryLength) throws IOException {
+		this.queryLength = queryLength;
+		this.work = new long[queryLength + 1];
+
+		databank.acquireIndex();
+		try {
+			PostingsCursor cursor = databank.newIndexCursor();
+			for (int i = 0; i < queryLength; i++) {
+				int positionWork = 1;
+				if (i < subSequences.length) {
+					positionWork += cursor.seek(subSequences[i]);
+				}
+				work[i + 1] = work[i] + positionWork;
+			}
+		} finally {
+			databank.releaseIndex();
+		}
+	}
+
+	/**
+	 * @param slices
+	 *            quantity of slices.
+	 * @param minSliceLength
+	 *            minimum length of each slice.
+	 * @return the begin of each slice and the query length at the last position.
+	 */
+	int[] cut(int slices, int minSliceLength) {
+		int[] cuts = new int[slices + 1];
+		cuts[slices] = queryLength;
+		long total = work[queryLength];
+
+		int pos = 0;
+		for (int i = 1; i < slices; i++) {
+			long target = (total * i) / slices;
+			int min = cuts[i - 1] + minSliceLength;
+			int max = queryLength - (slices - i) * minSliceLength;
+			pos = Math.max(pos, min);
+			while (pos < max && work[pos] < target) {
+				pos++;
+			}
+			cuts[i] = Math.min(pos, max);
+		}
+		return cuts;
+	}
+
+	/**
+	 * @return the work of the query positions from begin to end, exclusive.
+	 */
+	long getWork(int begin, int end) {
+		return work[end] - work[begin];
+	}
+}
@@ -11,9 +11,9 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.apache.log4j.Logger;
 
@@ -37,8 +37,8 @@ public class RemoteSimilaritySearcher extends AbstractSearcher {
 	
 	private final RemoteSimilaritySequenceDataBank databank;
 
-	public RemoteSimilaritySearcher(long code, SearchParams sp, RemoteSimilaritySequenceDataBank databank) {
-		super(code, sp, databank);
+	public RemoteSimilaritySearcher(long code, SearchParams sp, RemoteSimilaritySequenceDataBank databank, SearchScheduler scheduler) {
+		super(code, sp, databank, scheduler);
 		this.databank = databank;
 	}
 
@@ -46,11 +46,12 @@ public class RemoteSimilaritySearcher extends AbstractSearcher {
 	public SearchResults call() {
 		long begin = System.currentTimeMillis();
 
-		ExecutorService queryExecutor = Executors.newFixedThreadPool(sp.getMaxThreadsIndexSearch());
+		ExecutorService queryExecutor = scheduler.getIndexSearchExecutor(sp.getMaxThreadsIndexSearch());
 		
 		List<Throwable> fails = Lists.newLinkedList();
 		fails = Collections.synchronizedList(fails);
 		final IndexSixFramesSearcher indexSearcher = new IndexSixFramesSearcher(id, sp, databank, queryExecutor, fails);		
+		indexSearcher.setProgress(progress);
 		
 		IndexSearchResults indexSearchResults = null;
 		try {
@@ -60,36 +61,44 @@ public class RemoteSimilaritySearcher extends AbstractSearcher {
 			return sr;
 		} 
 
-		queryExecutor.shutdown();
-
 		if (fails.size() > 0) {
 			sr.addAllFails(fails);
 			return sr;
 		}
+		if (progress.isCancelled()) {
+			sr.addFail(new CancellationException("Search cancelled."));
+			return sr;
+		}
 
 		logger.info("Index Searcher " + this.toString() + " " + (System.currentTimeMillis() - begin));
 
 		long alignmentBegin = System.currentTimeMillis();
 
-		ExecutorService alignerExecutor = Executors.newFixedThreadPool(sp.getMaxThreadsExtendAlign());
+		ExecutorService alignerExecutor = scheduler.getAlignmentExecutor(sp.getMaxThreadsExtendAlign());
 
 		int maxHits = sp.getMaxHitsResults() > 0 ? sp.getMaxHitsResults() : indexSearchResults.size();
 		maxHits = Math.min(maxHits, indexSearchResults.size());
 
 		CountDownLatch alignnmentsCountDown = new CountDownLatch(maxHits);
+		progress.addAlignments(maxHits);
 
 		try {
 			for (int i = 0; i < maxHits; i++) {
+				progress.checkCancelled();
 				RetrievedSequenceAreas retrievedArea = indexSearchResults.get(i);
 				SequenceAligner sequenceAligner = new SequenceAligner(alignnmentsCountDown, indexSearchResults.getIndexSearchers(), retrievedArea, 
 						sr, databank, databank.getEncoder(), databank.getAaEncoder(), databank.getReducedEncoder(), 
 						// TODO: be possible to set the substitution matrix
 						SubstitutionMatrix.BLOSUM62);
+				sequenceAligner.setProgress(progress);
 				alignerExecutor.submit(sequenceAligner);
 			}
 		} catch (IOException e) {
 			sr.addFail(e);
 			return sr;
+		} catch (CancellationException e) {
+			sr.addFail(e);
+			return sr;
 		}
 
 		try {
@@ -98,8 +107,10 @@ public class RemoteSimilaritySearcher extends AbstractSearcher {
 			sr.addFail(e);
 			return sr;
 		}
-
-		alignerExecutor.shutdown();
+		if (progress.isCancelled()) {
+			sr.addFail(new CancellationException("Search cancelled."));
+			return sr;
+		}
 
 		ListIterator<Hit> hitsIterator = sr.getHits().listIterator();
 		while (hitsIterator.hasNext()) {
@@ -123,7 +134,7 @@ public class RemoteSimilaritySearcher extends AbstractSearcher {
 		ListIterator<HSP> iterator = HSPs.listIterator();
 		while (iterator.hasNext()) {
 			HSP hsp = iterator.next();
-			if (hsp.getEValue() >= 0.1) {
+			if (hsp.getEValue() >= MAX_HSP_EVALUE) {
 				iterator.remove();
 			}
 		}
@@ -1,7 +1,14 @@
 package bio.pih.genoogle.search;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
 import bio.pih.genoogle.io.Utils;
 
+import com.google.common.collect.Lists;
+
 
 /**
  * HSP
@@ -9,6 +16,17 @@ import bio.pih.genoogle.io.Utils;
  * @author albrecht
  */
 public final class RetrievedArea {
+
+	/**
+	 * Sorts the areas by their begin at the query.
+	 */
+	public static final Comparator<RetrievedArea> QUERY_BEGIN_COMPARATOR = new Comparator<RetrievedArea>() {
+		@Override
+		public int compare(RetrievedArea o1, RetrievedArea o2) {
+			return o1.queryAreaBegin < o2.queryAreaBegin ? -1 : (o1.queryAreaBegin == o2.queryAreaBegin ? 0 : 1);
+		}
+	};
+
 	private int queryAreaBegin;
 	private int queryAreaEnd;
 	private int sequenceAreaBegin;
@@ -19,7 +37,7 @@ public final class RetrievedArea {
 		reset(queryAreaBegin, sequenceAreaBegin, subSequenceLength);
 	}
 
-	private RetrievedArea(int queryAreaBegin, int queryAreaEnd, int sequenceAreaBegin, int sequenceAreaEnd, int length) {
+	RetrievedArea(int queryAreaBegin, int queryAreaEnd, int sequenceAreaBegin, int sequenceAreaEnd, int length) {
 		this.queryAreaBegin = queryAreaBegin;
 		this.queryAreaEnd = queryAreaEnd;
 		this.sequenceAreaBegin = sequenceAreaBegin;
@@ -65,6 +83,68 @@ public final class RetrievedArea {
 		return false;
 	}
 
+	/**
+	 * Extends this area with the other area if the other area begins inside of this area or at
+	 * most <i>maxSubSequenceDistance</i> after its end, at the query and at the sequence.
+	 * 
+	 * @return <code>true</code> if this area was extended.
+	 */
+	public boolean merge(RetrievedArea other, int maxSubSequenceDistance) {
+		if (!Utils.isIn(queryAreaBegin, queryAreaEnd + maxSubSequenceDistance, other.queryAreaBegin)) {
+			return false;
+		}
+		if (!Utils.isIn(sequenceAreaBegin, sequenceAreaEnd + maxSubSequenceDistance, other.sequenceAreaBegin)) {
+			return false;
+		}
+		this.queryAreaEnd = Math.max(this.queryAreaEnd, other.queryAreaEnd);
+		this.sequenceAreaEnd = Math.max(this.sequenceAreaEnd, other.sequenceAreaEnd);
+		this.length = Math.min(queryAreaEnd - queryAreaBegin, sequenceAreaEnd - sequenceAreaBegin);
+		return true;
+	}
+
+	/**
+	 * Merges two lists of areas of the same sequence.
+	 * 
+	 * @param sorted
+	 *            areas sorted by {@link #QUERY_BEGIN_COMPARATOR}.
+	 * @param others
+	 *            areas in any order, this list is sorted.
+	 * @return the areas of both lists, merged and sorted by their begin at the query.
+	 */
+	public static List<RetrievedArea> merge(List<RetrievedArea> sorted, List<RetrievedArea> others, int maxSubSequenceDistance) {
+		Collections.sort(others, QUERY_BEGIN_COMPARATOR);
+
+		List<RetrievedArea> merged = Lists.newArrayList();
+		List<RetrievedArea> opened = Lists.newLinkedList();
+		int i = 0;
+		int j = 0;
+		while (i < sorted.size() || j < others.size()) {
+			RetrievedArea area;
+			if (j == others.size() || (i < sorted.size() && sorted.get(i).queryAreaBegin <= others.get(j).queryAreaBegin)) {
+				area = sorted.get(i++);
+			} else {
+				area = others.get(j++);
+			}
+
+			boolean extended = false;
+			Iterator<RetrievedArea> iterator = opened.iterator();
+			while (iterator.hasNext()) {
+				RetrievedArea openedArea = iterator.next();
+				if (area.queryAreaBegin > openedArea.queryAreaEnd + maxSubSequenceDistance) {
+					// The next areas begin after it too.
+					iterator.remove();
+				} else if (!extended && openedArea.merge(area, maxSubSequenceDistance)) {
+					extended = true;
+				}
+			}
+			if (!extended) {
+				opened.add(area);
+				merged.add(area);
+			}
+		}
+		return merged;
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
@@ -14,18 +14,18 @@ public class RetrievedSequenceAreas {
 	
 	private final int sequenceId;
 	private final int biggestHspLength;
-	private final ArrayList<RetrievedArea>[] areas;
-	private final ArrayList<RetrievedArea>[] rcAreas;
+	private final List<RetrievedArea>[] areas;
+	private final List<RetrievedArea>[] rcAreas;
 	private final int frames;
 	private final IndexedSequenceDataBank databank;
 
 	@SuppressWarnings("unchecked")
-	public RetrievedSequenceAreas(int sequenceId, IndexedSequenceDataBank databank, ArrayList<RetrievedArea> ... areas) {
+	public RetrievedSequenceAreas(int sequenceId, IndexedSequenceDataBank databank, List<RetrievedArea> ... areas) {
 		this.sequenceId = sequenceId;
 		this.databank = databank;
 		this.frames = areas.length / 2;
-		this.areas = new ArrayList[frames];
-		this.rcAreas = new ArrayList[frames];
+		this.areas = new List[frames];
+		this.rcAreas = new List[frames];
 		for (int i = 0; i < frames; i++) {
                         if (areas[i] != null && areas[i].size() > 0) {
                             this.areas[i] = areas[i]; 
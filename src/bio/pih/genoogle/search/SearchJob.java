@@ -0,0 +1,154 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import bio.pih.genoogle.search.results.SearchResults;
+
+/**
+ * A search submitted to the {@link SearchManager} which is executed asynchronously. Its status,
+ * progress and results are queried by its identifier.
+ *
+ * @author albrecht
+ */
+public class SearchJob {
+
+	/**
+	 * Status of a {@link SearchJob}.
+	 */
+	public enum Status {
+		/**
+		 * Waiting for its admission.
+		 */
+		WAITING,
+		RUNNING,
+		FINISHED,
+		/**
+		 * Finished with fails.
+		 */
+		FAILED,
+		CANCELLED
+	}
+
+	private final AbstractSearcher searcher;
+	private final long submitTime;
+	private volatile Future<SearchResults> future = null;
+	private volatile boolean started = false;
+	private volatile long finishTime = 0;
+	private volatile long lastAccess;
+
+	SearchJob(AbstractSearcher searcher) {
+		this.searcher = searcher;
+		this.submitTime = System.currentTimeMillis();
+		this.lastAccess = submitTime;
+	}
+
+	void setFuture(Future<SearchResults> future) {
+		this.future = future;
+	}
+
+	void started() {
+		started = true;
+	}
+
+	void finished() {
+		finishTime = System.currentTimeMillis();
+	}
+
+	public long getId() {
+		return searcher.getId();
+	}
+
+	public SearchParams getSearchParams() {
+		return searcher.getSearchResults().getParams();
+	}
+
+	/**
+	 * @return the finished index search and alignment tasks.
+	 */
+	public SearchProgress getProgress() {
+		return searcher.getProgress();
+	}
+
+	/**
+	 * Informs that the client of the search is still interested in it.
+	 */
+	void touch() {
+		lastAccess = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return last time when the client queried this search.
+	 */
+	long getLastAccess() {
+		return lastAccess;
+	}
+
+	public long getSubmitTime() {
+		return submitTime;
+	}
+
+	/**
+	 * @return time when the search finished or 0 if it is not finished.
+	 */
+	public long getFinishTime() {
+		return finishTime;
+	}
+
+	public Status getStatus() {
+		if (searcher.getProgress().isCancelled()) {
+			return Status.CANCELLED;
+		}
+		if (finishTime != 0) {
+			return searcher.getSearchResults().hasFail() ? Status.FAILED : Status.FINISHED;
+		}
+		if (started) {
+			return Status.RUNNING;
+		}
+		return Status.WAITING;
+	}
+
+	public boolean isDone() {
+		return finishTime != 0;
+	}
+
+	/**
+	 * Waits the search to finish.
+	 * 
+	 * @return the results of the search.
+	 */
+	public SearchResults waitResults() throws InterruptedException, ExecutionException {
+		return future.get();
+	}
+
+	/**
+	 * @return the results of the search or <code>null</code> if it is not finished.
+	 */
+	public SearchResults getResults() {
+		if (finishTime == 0) {
+			return null;
+		}
+		return searcher.getSearchResults();
+	}
+
+	/**
+	 * Cancels the search. A waiting search does not run and a running search stops at the next
+	 * check of its index search and alignment tasks. The task is not cancelled at the executor,
+	 * because it releases the data bank when it finishes.
+	 */
+	public void cancel() {
+		searcher.getProgress().cancel();
+	}
+
+	@Override
+	public String toString() {
+		return getId() + " " + getStatus() + " " + getProgress();
+	}
+}
@@ -10,22 +10,32 @@ package bio.pih.genoogle.search;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
 import bio.pih.genoogle.Genoogle;
 import bio.pih.genoogle.io.AbstractSequenceDataBank;
 import bio.pih.genoogle.io.SequencesProvider;
+import bio.pih.genoogle.io.XMLConfigurationReader;
 import bio.pih.genoogle.io.reader.ParseException;
 import bio.pih.genoogle.search.SearchParams.Parameter;
 import bio.pih.genoogle.search.results.SearchResults;
@@ -33,11 +43,14 @@ import bio.pih.genoogle.seq.IllegalSymbolException;
 import bio.pih.genoogle.seq.SymbolList;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 /**
  * Manage Searchers, check its status and stores and returns its results.
  * Each {@link Genoogle} instance has one {@link SearchManager}.
+ * <p>
+ * The data banks can be replaced while the searches are running: the new data bank is loaded
+ * in background and swapped atomically, the new searches use the new data bank and the old
+ * one is closed when the searches which were using it finish.
  * 
  * @author albrecht
  */
@@ -46,35 +59,223 @@ public class SearchManager {
 	private static Logger logger = Logger.getLogger(SearchManager.class.getName());
 	private static Logger profileLogger = Logger.getLogger("profile");
 
-	private Map<String, AbstractSequenceDataBank> databanks;
-	private ExecutorService requestsExecutor = null;
+	/**
+	 * Maximum quantity of queries of the same request whose index search is done together,
+	 * reading each index bucket only once. It is not bigger because each query keeps its
+	 * retrieved areas for all sequences of the data bank while the batch is searched.
+	 */
+	private static final int QUERIES_BATCH_SIZE = 32;
+
+	/**
+	 * Maximum sum of the queries lengths of a batch. The sub-sequences of the queries, and so the
+	 * index entries kept by the batch, grow with their lengths, so a batch of long queries has
+	 * less queries.
+	 */
+	private static final int QUERIES_BATCH_MAX_BASES = 64 * 1024;
+
+	/**
+	 * Time in milliseconds after the last query of a submitted search when its client is
+	 * considered gone: the search is cancelled, if it is running, and forgotten.
+	 */
+	private static final long ABANDONED_SEARCH_TIMEOUT = 10 * 60 * 1000;
 
 	/**
+	 * Time in milliseconds between the checks for abandoned searches.
+	 */
+	private static final long ABANDONED_SEARCHES_CHECK_INTERVAL = 60 * 1000;
+
+	private final ConcurrentMap<String, LoadedDatabank> databanks;
+	private final ConcurrentMap<Long, SearchJob> jobs = new ConcurrentHashMap<Long, SearchJob>();
+	private volatile String defaultDataBankName = null;
+	private final ExecutorService requestsExecutor;
+	private final ExecutorService reloadExecutor;
+	private final ScheduledExecutorService abandonedSearchesExecutor;
+	private final SearchScheduler scheduler;
+
+	/**
+	 * Creates the search manager with one index search thread and one alignment thread for each
+	 * available processor.
+	 * 
 	 * @param maxSimulaneousSearchs
 	 * 
 	 */
 	public SearchManager(int maxSimulaneousSearchs) {
-		databanks = Maps.newHashMap();
-		requestsExecutor = Executors.newFixedThreadPool(maxSimulaneousSearchs);		
+		this(maxSimulaneousSearchs, false, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * @param maxSimulaneousSearchs
+	 *            quantity of requests which run at the same time, the others wait for their
+	 *            admission.
+	 * @param virtualThreads
+	 *            if each request should run in its own virtual thread, when the Java virtual
+	 *            machine has them.
+	 * @param indexSearchThreads
+	 *            threads shared by the index searches of all searches.
+	 * @param alignmentThreads
+	 *            threads shared by the alignments of all searches.
+	 */
+	public SearchManager(int maxSimulaneousSearchs, boolean virtualThreads, int indexSearchThreads,
+			int alignmentThreads) {
+		databanks = new ConcurrentHashMap<String, LoadedDatabank>();
+		scheduler = new SearchScheduler(maxSimulaneousSearchs, virtualThreads, indexSearchThreads, alignmentThreads);
+		requestsExecutor = scheduler.getRequestsExecutor();
+		reloadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Data banks reloader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		abandonedSearchesExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Abandoned searches remover");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		abandonedSearchesExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					removeAbandonedSearches();
+				} catch (RuntimeException e) {
+					// A thrown exception would cancel the next executions.
+					logger.error("Error removing the abandoned searches.", e);
+				}
+			}
+		}, ABANDONED_SEARCHES_CHECK_INTERVAL, ABANDONED_SEARCHES_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
 	}
 	
 	/**
 	 * Shutdown the search manager.Service
 	 */
 	public void shutdown() throws InterruptedException {
-		requestsExecutor.shutdown();
-		requestsExecutor.awaitTermination(100, TimeUnit.MILLISECONDS);			
+		abandonedSearchesExecutor.shutdownNow();
+		reloadExecutor.shutdown();
+		scheduler.shutdown();
+		scheduler.awaitRequestsTermination(100, TimeUnit.MILLISECONDS);
 	}
 	
 	/**
+	 * Adds a loaded data bank. If there is a data bank with the same name, it is replaced and it
+	 * will be closed when the searches using it finish.
+	 * 
 	 * @param databank
 	 */
 	public void addDatabank(AbstractSequenceDataBank databank) {
-		databanks.put(databank.getName(), databank);
+		LoadedDatabank old = databanks.put(databank.getName(), new LoadedDatabank(databank));
+		if (defaultDataBankName == null) {
+			defaultDataBankName = databank.getName();
+		}
+		if (old != null) {
+			logger.info("Data bank " + databank.getName() + " replaced.");
+			old.release();
+		}
 	}
 	
 	public AbstractSequenceDataBank getDatabank(String name) {
-		return databanks.get(name);
+		LoadedDatabank loadedDatabank = databanks.get(name);
+		if (loadedDatabank == null) {
+			return null;
+		}
+		return loadedDatabank.databank;
+	}
+
+	/**
+	 * Loads again the data bank with the given name from the configuration file in background
+	 * and replaces the actual one when it is loaded. The searches are not stopped. The failures
+	 * are logged, so the returned {@link Future} can be ignored.
+	 * 
+	 * @param name
+	 * @return {@link Future} which informs if the data bank was loaded and replaced.
+	 */
+	public Future<Boolean> reloadDatabank(final String name) {
+		return reloadExecutor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				List<AbstractSequenceDataBank> configuredDatabanks;
+				try {
+					configuredDatabanks = XMLConfigurationReader.getDataBanks();
+				} catch (Exception e) {
+					logger.error("It was not possible to read the data banks of the configuration file to reload " + name + ".", e);
+					return false;
+				}
+				if (configuredDatabanks == null) {
+					logger.error("There are no data banks in the configuration file to reload " + name + ".");
+					return false;
+				}
+				for (AbstractSequenceDataBank databank : configuredDatabanks) {
+					if (databank.getName().equals(name)) {
+						return loadAndReplace(databank);
+					}
+				}
+				logger.error("Data bank " + name + " is not in the configuration file.");
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Loads the given data bank in background and replaces the actual data bank with the same
+	 * name when it is loaded. The searches are not stopped. The failures are logged, so the
+	 * returned {@link Future} can be ignored.
+	 * 
+	 * @param databank
+	 *            not loaded data bank.
+	 * @return {@link Future} which informs if the data bank was loaded and replaced.
+	 */
+	public Future<Boolean> reloadDatabank(final AbstractSequenceDataBank databank) {
+		return reloadExecutor.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return loadAndReplace(databank);
+			}
+		});
+	}
+
+	/**
+	 * Loads the data bank and replaces the actual one. If the load fails, the new data bank is
+	 * closed and the actual one is kept.
+	 */
+	private boolean loadAndReplace(AbstractSequenceDataBank databank) {
+		long begin = System.currentTimeMillis();
+		logger.info("Reloading data bank " + databank.getName() + ".");
+		boolean loaded = false;
+		try {
+			loaded = databank.load();
+			if (!loaded) {
+				logger.error("It was not possible to load the data bank \"" + databank.getName() + "\".");
+			}
+		} catch (Exception e) {
+			logger.error("It was not possible to load the data bank \"" + databank.getName() + "\".", e);
+		}
+		if (!loaded) {
+			databank.close();
+			return false;
+		}
+		addDatabank(databank);
+		logger.info("Data bank " + databank.getName() + " reloaded in " + (System.currentTimeMillis() - begin) + "ms.");
+		return true;
+	}
+
+	/**
+	 * @return the actual data bank with the given name, which must be released after its use.
+	 */
+	private LoadedDatabank acquireDatabank(String name) throws UnknowDataBankException {
+		while (true) {
+			LoadedDatabank loadedDatabank = databanks.get(name);
+			if (loadedDatabank == null) {
+				throw new UnknowDataBankException(name);
+			}
+			// It fails only if the data bank was replaced and closed after the get.
+			if (loadedDatabank.acquire()) {
+				return loadedDatabank;
+			}
+		}
 	}
 	
 	/**
@@ -91,14 +292,25 @@ public class SearchManager {
 		CompletionService<SearchResults> completionService = new ExecutorCompletionService<SearchResults>(
 				requestsExecutor);
 
-		AbstractSequenceDataBank databank = databanks.get(databankName);
-		if (databank == null) {
-			throw new UnknowDataBankException(databankName);
+		LoadedDatabank loadedDatabank = acquireDatabank(databankName);
+		try {
+			return doSyncSearch(in, loadedDatabank.databank, parameters, completionService, begin);
+		} finally {
+			loadedDatabank.release();
 		}
-		
+	}
+
+	private List<SearchResults> doSyncSearch(BufferedReader in, AbstractSequenceDataBank databank,
+			Map<Parameter, Object> parameters, CompletionService<SearchResults> completionService, long begin)
+			throws InterruptedException, ExecutionException, NoSuchElementException, IOException,
+			IllegalSymbolException, ParseException {
+		String databankName = databank.getName();
 		SequencesProvider provider = new SequencesProvider(in, databank.getAlphabet());
 		
 		int totalSubmited = 0;
+		List<Future<List<SearchResults>>> batches = Lists.newLinkedList();
+		List<CollectionSearcher> batch = Lists.newArrayList();
+		int batchBases = 0;
 		while(provider.hasNext()) {
 			SymbolList nextSequence = provider.getNextSequence();
 			if (nextSequence == null) {
@@ -112,10 +324,28 @@ public class SearchManager {
 				sp = new SearchParams(nextSequence, databankName, parameters);
 			}
 			long id = getNextSearchId();
-			final AbstractSearcher searcher = SearcherFactory.getSearcher(id, sp, databank);
+			final AbstractSearcher searcher = SearcherFactory.getSearcher(id, sp, databank, scheduler);
 
-			completionService.submit(searcher);
-			totalSubmited ++;
+			if (searcher instanceof CollectionSearcher) {
+				if (!batch.isEmpty() && batchBases + nextSequence.getLength() > QUERIES_BATCH_MAX_BASES) {
+					batches.add(submitBatch(batch));
+					batch = Lists.newArrayList();
+					batchBases = 0;
+				}
+				batch.add((CollectionSearcher) searcher);
+				batchBases += nextSequence.getLength();
+				if (batch.size() == QUERIES_BATCH_SIZE) {
+					batches.add(submitBatch(batch));
+					batch = Lists.newArrayList();
+					batchBases = 0;
+				}
+			} else {
+				completionService.submit(searcher);
+				totalSubmited ++;
+			}
+		}
+		if (!batch.isEmpty()) {
+			batches.add(submitBatch(batch));
 		}
 
 		List<SearchResults> results = Lists.newLinkedList();
@@ -131,11 +361,31 @@ public class SearchManager {
 			profileLogger.info("  " + (i+1) +"/" +totalSubmited + " in " + (total) + " and total is " + (c - begin));
 		}
 
+		int i = 0;
+		for (Future<List<SearchResults>> future : batches) {
+			List<SearchResults> batchResults = future.get();
+			results.addAll(batchResults);
+			i++;
+			long c = System.currentTimeMillis();
+			profileLogger.info("  batch " + i + "/" + batches.size() + " with " + batchResults.size() + " queries in "
+					+ (c - prev) + " and total is " + (c - begin));
+			prev = c;
+		}
+
 		return results;
 	}
 
+	private Future<List<SearchResults>> submitBatch(final List<CollectionSearcher> batch) {
+		return requestsExecutor.submit(new Callable<List<SearchResults>>() {
+			@Override
+			public List<SearchResults> call() {
+				return CollectionSearcher.callBatch(batch);
+			}
+		});
+	}
+
 	/**
-	 * Do a search.
+	 * Do a search. If the waiting thread is interrupted, the search is cancelled.
 	 * 
 	 * @param sp
 	 * @return {@link SearchResults} of this search.
@@ -143,18 +393,135 @@ public class SearchManager {
 	public SearchResults doSyncSearch(SearchParams sp) throws UnknowDataBankException,
 			InterruptedException, ExecutionException {
 		logger.info("doSyncSearch on " + sp);
-		AbstractSequenceDataBank databank = databanks.get(sp.getDatabank());
-		if (databank == null) {
-			throw new UnknowDataBankException(sp.getDatabank());
+		SearchJob job = startSearch(sp);
+		try {
+			return job.waitResults();
+		} catch (InterruptedException e) {
+			job.cancel();
+			throw e;
 		}
-		long id = getNextSearchId();
-		final AbstractSearcher searcher = SearcherFactory.getSearcher(id, sp, databank);
+	}
 
-		CompletionService<SearchResults> completionService = new ExecutorCompletionService<SearchResults>(
-				requestsExecutor);
+	/**
+	 * Submits a search which is executed asynchronously.
+	 * <p>
+	 * The client should query the search with {@link #getSearchJob(long)} or
+	 * {@link #getSearchResults(long)}, otherwise after some minutes it is considered abandoned,
+	 * cancelled and forgotten by a periodic check.
+	 * 
+	 * @param sp
+	 * @return identifier of the search.
+	 */
+	public long submitSearch(SearchParams sp) throws UnknowDataBankException {
+		logger.info("submitSearch on " + sp);
+		SearchJob job = startSearch(sp);
+		jobs.put(job.getId(), job);
+		return job.getId();
+	}
+
+	/**
+	 * @return the submitted search with the given identifier or <code>null</code> if it does
+	 *         not exist or it was forgotten.
+	 */
+	public SearchJob getSearchJob(long id) {
+		SearchJob job = jobs.get(id);
+		if (job != null) {
+			job.touch();
+		}
+		return job;
+	}
+
+	/**
+	 * Returns the results of a finished submitted search, which is forgotten.
+	 * 
+	 * @return the results of the search or <code>null</code> if it is not finished or it does
+	 *         not exist.
+	 */
+	public SearchResults getSearchResults(long id) {
+		SearchJob job = getSearchJob(id);
+		if (job == null || !job.isDone()) {
+			return null;
+		}
+		jobs.remove(id);
+		return job.getResults();
+	}
+
+	/**
+	 * Cancels and forgets a submitted search.
+	 * 
+	 * @return <code>false</code> if the search does not exist.
+	 */
+	public boolean cancelSearch(long id) {
+		SearchJob job = jobs.remove(id);
+		if (job == null) {
+			return false;
+		}
+		job.cancel();
+		logger.info("Search " + id + " cancelled.");
+		return true;
+	}
+
+	/**
+	 * @return the submitted searches which were not forgotten.
+	 */
+	public Collection<SearchJob> getSearchJobs() {
+		return Collections.unmodifiableCollection(jobs.values());
+	}
+
+	private void removeAbandonedSearches() {
+		long limit = System.currentTimeMillis() - ABANDONED_SEARCH_TIMEOUT;
+		Iterator<SearchJob> iterator = jobs.values().iterator();
+		while (iterator.hasNext()) {
+			SearchJob job = iterator.next();
+			if (job.getLastAccess() < limit) {
+				iterator.remove();
+				job.cancel();
+				logger.info("Search " + job.getId() + " abandoned by its client.");
+			}
+		}
+	}
+
+	/**
+	 * Submits the search to the requests executor. The data bank is released when the search
+	 * finishes, even if it is cancelled before running.
+	 */
+	private SearchJob startSearch(SearchParams sp) throws UnknowDataBankException {
+		final LoadedDatabank loadedDatabank = acquireDatabank(sp.getDatabank());
+		try {
+			long id = getNextSearchId();
+			final AbstractSearcher searcher = SearcherFactory.getSearcher(id, sp, loadedDatabank.databank, scheduler);
+			final SearchJob job = new SearchJob(searcher);
+			job.setFuture(requestsExecutor.submit(new Callable<SearchResults>() {
+				@Override
+				public SearchResults call() {
+					try {
+						job.started();
+						if (searcher.getProgress().isCancelled()) {
+							searcher.getSearchResults().addFail(new CancellationException("Search cancelled."));
+							return searcher.getSearchResults();
+						}
+						return searcher.call();
+					} catch (Exception e) {
+						searcher.getSearchResults().addFail(e);
+						return searcher.getSearchResults();
+					} finally {
+						job.finished();
+						loadedDatabank.release();
+					}
+				}
+			}));
+			return job;
+		} catch (RuntimeException e) {
+			loadedDatabank.release();
+			throw e;
+		}
+	}
 
-		completionService.submit(searcher);
-		return completionService.take().get();
+	/**
+	 * @return the threads shared by the searches.
+	 */
+	public SearchScheduler getScheduler() {
+		return scheduler;
 	}
 
 	/**
@@ -162,7 +529,11 @@ public class SearchManager {
 	 *         {@link SearchResults} is managing.
 	 */
 	public Collection<AbstractSequenceDataBank> getDatabanks() {
-		return databanks.values();
+		List<AbstractSequenceDataBank> list = Lists.newArrayList();
+		for (LoadedDatabank loadedDatabank : databanks.values()) {
+			list.add(loadedDatabank.databank);
+		}
+		return list;
 	}
 	
 	/**
@@ -171,7 +542,7 @@ public class SearchManager {
 	 * @return name of the default data bank.
 	 */
 	public String getDefaultDataBankName() {
-		return this.databanks.keySet().iterator().next();
+		return defaultDataBankName;
 	}
 
 	private long searchId = 0;
@@ -181,4 +552,39 @@ public class SearchManager {
 		searchId++;
 		return id;
 	}
+
+	/**
+	 * A loaded data bank with the count of its users: the {@link SearchManager} while it is the
+	 * actual data bank and each running search. It is closed when the count reaches zero.
+	 */
+	private static class LoadedDatabank {
+		private final AbstractSequenceDataBank databank;
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		public LoadedDatabank(AbstractSequenceDataBank databank) {
+			this.databank = databank;
+		}
+
+		/**
+		 * @return <code>false</code> if the data bank is already closed.
+		 */
+		public boolean acquire() {
+			while (true) {
+				int actual = references.get();
+				if (actual == 0) {
+					return false;
+				}
+				if (references.compareAndSet(actual, actual + 1)) {
+					return true;
+				}
+			}
+		}
+
+		public void release() {
+			if (references.decrementAndGet() == 0) {
+				logger.info("Closing the replaced data bank " + databank.getName() + ".");
+				databank.close();
+			}
+		}
+	}
 }
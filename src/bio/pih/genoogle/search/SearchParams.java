@@ -40,6 +40,12 @@ public final class SearchParams {
 	private int querySplitQuantity;
 	private int matchScore;
 	private int mismatchScore;
+	private int seedingEngine = SEEDING_ENGINE;
+	private int twoHitWindow = TWO_HIT_WINDOW;
+	private int pipelinedAlignment = PIPELINED_ALIGNMENT;
+	private int gapOpenScore = GAP_OPEN_SCORE;
+	private int gapExtendScore = GAP_EXTEND_SCORE;
+	private int alignmentKernel = ALIGNMENT_KERNEL;
 
 
 	/**
@@ -75,6 +81,63 @@ public final class SearchParams {
 
 	public static final int MISMATCH_SCORE = XMLConfigurationReader.getMismatchScore();
 
+	/**
+	 * Seeding engine which merges each sub-sequence found at the index with the opened areas of
+	 * its sequence.
+	 */
+	public static final int MERGE_SEEDING = 0;
+
+	/**
+	 * Seeding engine which sorts the sub-sequences found at the index by their diagonal and builds
+	 * the areas at the end of the index search.
+	 */
+	public static final int DIAGONAL_SORT_SEEDING = 1;
+
+	/**
+	 * Default seeding engine: {@link #MERGE_SEEDING} or {@link #DIAGONAL_SORT_SEEDING}.
+	 */
+	public static final int SEEDING_ENGINE = XMLConfigurationReader.getSeedingEngine();
+
+	/**
+	 * Default maximum query distance between two hits at the same diagonal to use them, zero to
+	 * use all hits.
+	 */
+	public static final int TWO_HIT_WINDOW = XMLConfigurationReader.getTwoHitWindow();
+
+	/**
+	 * Default alignment mode: zero aligns after the index search of all sub-databanks, one
+	 * begins to align the best candidates of each sub-databank as soon as its index search
+	 * finishes.
+	 */
+	public static final int PIPELINED_ALIGNMENT = XMLConfigurationReader.getPipelinedAlignment();
+
+	/**
+	 * Default score of the first position of a gap in the alignment.
+	 */
+	public static final int GAP_OPEN_SCORE = XMLConfigurationReader.getGapOpenScore();
+
+	/**
+	 * Default score of each further position of a gap in the alignment. When it is equal to
+	 * {@link #GAP_OPEN_SCORE} the gap costs are linear.
+	 */
+	public static final int GAP_EXTEND_SCORE = XMLConfigurationReader.getGapExtendScore();
+
+	/**
+	 * Alignment kernel which computes only the cells near the main diagonal of the extended areas.
+	 */
+	public static final int BANDED_ALIGNMENT = 0;
+
+	/**
+	 * Alignment kernel which computes the whole matrix of the extended areas with the striped
+	 * method. It is used only with linear gap costs.
+	 */
+	public static final int STRIPED_ALIGNMENT = 1;
+
+	/**
+	 * Default alignment kernel: {@link #BANDED_ALIGNMENT} or {@link #STRIPED_ALIGNMENT}.
+	 */
+	public static final int ALIGNMENT_KERNEL = XMLConfigurationReader.getAlignmentKernel();
+
 	public SearchParams(SymbolList query, String databankName) {
 		this(query, databankName, MATCH_SCORE, MISMATCH_SCORE, 
 				MAX_SUB_SEQUENCE_DISTANCE, SEQUENCES_EXTEND_DROPOFF, MIN_HSP_LENGTH, MAX_HITS_RESULTS, 
@@ -91,7 +154,13 @@ public final class SearchParams {
 		MIN_QUERY_SLICE_LENGTH("MinQuerySliceLength", Integer.class),
 		QUERY_SPLIT_QUANTITY("QuerySplitQuantity", Integer.class),
 		MATCH_SCORE("MatchScore", Integer.class),
-		MISMATCH_SCORE("MismatchScore", Integer.class);
+		MISMATCH_SCORE("MismatchScore", Integer.class),
+		SEEDING_ENGINE("SeedingEngine", Integer.class),
+		TWO_HIT_WINDOW("TwoHitWindow", Integer.class),
+		PIPELINED_ALIGNMENT("PipelinedAlignment", Integer.class),
+		GAP_OPEN_SCORE("GapOpenScore", Integer.class),
+		GAP_EXTEND_SCORE("GapExtendScore", Integer.class),
+		ALIGNMENT_KERNEL("AlignmentKernel", Integer.class);
 
 		private String name;
 		private Class<?> clazz;
@@ -164,6 +233,24 @@ public final class SearchParams {
 			case MISMATCH_SCORE:
 				this.mismatchScore = (Integer) v;
 				break;
+			case SEEDING_ENGINE:
+				this.seedingEngine = (Integer) v;
+				break;
+			case TWO_HIT_WINDOW:
+				this.twoHitWindow = (Integer) v;
+				break;
+			case PIPELINED_ALIGNMENT:
+				this.pipelinedAlignment = (Integer) v;
+				break;
+			case GAP_OPEN_SCORE:
+				this.gapOpenScore = (Integer) v;
+				break;
+			case GAP_EXTEND_SCORE:
+				this.gapExtendScore = (Integer) v;
+				break;
+			case ALIGNMENT_KERNEL:
+				this.alignmentKernel = (Integer) v;
+				break;
 			}
 		}
 	}
@@ -242,15 +329,16 @@ public final class SearchParams {
 	}
 
 	/**
-	 * @return quantity of threads which will be used to perform the index search of the input query
-	 *         sub-sequences.
+	 * @return quantity of threads of the {@link SearchScheduler} which will be used at the same
+	 *         time to perform the index search of the input query sub-sequences.
 	 */
 	public int getMaxThreadsIndexSearch() {
 		return maxThreadsIndexSearch;
 	}
 	
 	/**
-	 * @return quantity of threads which will be used to extend and align the HSPs.
+	 * @return quantity of threads of the {@link SearchScheduler} which will be used at the same
+	 *         time to extend and align the HSPs.
 	 */
 	public int getMaxThreadsExtendAlign() {
 		return maxThreadsExtendAlign;
@@ -270,6 +358,60 @@ public final class SearchParams {
 		return minQuerySliceLength;
 	}
 
+	/**
+	 * @return the engine used to build the areas from the sub-sequences found at the index:
+	 *         {@link #MERGE_SEEDING} or {@link #DIAGONAL_SORT_SEEDING}.
+	 */
+	public int getSeedingEngine() {
+		return seedingEngine;
+	}
+
+	/**
+	 * @return maximum query distance between two not overlapped hits at the same diagonal to use
+	 *         them, zero if all hits are used.
+	 */
+	public int getTwoHitWindow() {
+		return twoHitWindow;
+	}
+
+	/**
+	 * @return <code>true</code> if the alignment begins while the other sub-databanks are
+	 *         searched at their indexes.
+	 */
+	public boolean isPipelinedAlignment() {
+		return pipelinedAlignment != 0;
+	}
+
+	/**
+	 * @return score of the first position of a gap in the alignment.
+	 */
+	public int getGapOpenScore() {
+		return gapOpenScore;
+	}
+
+	/**
+	 * @return score of each further position of a gap in the alignment.
+	 */
+	public int getGapExtendScore() {
+		return gapExtendScore;
+	}
+
+	/**
+	 * @return <code>true</code> if the gaps have affine costs, it is, opening a gap costs more than
+	 *         extending it.
+	 */
+	public boolean isAffineGap() {
+		return gapOpenScore != gapExtendScore;
+	}
+
+	/**
+	 * @return the kernel used to align the extended areas: {@link #BANDED_ALIGNMENT} or
+	 *         {@link #STRIPED_ALIGNMENT}.
+	 */
+	public int getAlignmentKernel() {
+		return alignmentKernel;
+	}
+
 	/**
 	 * Get a {@link Map} with all parameters and their values.
 	 * 
@@ -0,0 +1,130 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.search;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a search: how many of its index search and alignment tasks are finished, and if it
+ * was cancelled.
+ * <p>
+ * The cancellation is checked by the {@link IndexSearcher} and {@link SequenceAligner} loops,
+ * which stop throwing a {@link CancellationException}. The threads are not interrupted, because
+ * an interrupted read closes the data bank file channel which is shared by all searches.
+ * <p>
+ * A progress created with a parent is of a part of the search, which can be cancelled alone. It
+ * is cancelled too when the parent is, and its tasks are counted at the parent.
+ *
+ * @author albrecht
+ */
+public class SearchProgress {
+
+	private final SearchProgress parent;
+	private volatile boolean cancelled = false;
+
+	private final AtomicInteger indexSearches = new AtomicInteger(0);
+	private final AtomicInteger indexSearchesDone = new AtomicInteger(0);
+	private final AtomicInteger alignments = new AtomicInteger(0);
+	private final AtomicInteger alignmentsDone = new AtomicInteger(0);
+
+	public SearchProgress() {
+		this(null);
+	}
+
+	/**
+	 * @param parent
+	 *            progress of the whole search.
+	 */
+	SearchProgress(SearchProgress parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Requests the tasks of the search to stop.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled || (parent != null && parent.isCancelled());
+	}
+
+	/**
+	 * @throws CancellationException
+	 *             if the search was cancelled.
+	 */
+	public void checkCancelled() throws CancellationException {
+		if (isCancelled()) {
+			throw new CancellationException("Search cancelled.");
+		}
+	}
+
+	void addIndexSearches(int quantity) {
+		indexSearches.addAndGet(quantity);
+		if (parent != null) {
+			parent.addIndexSearches(quantity);
+		}
+	}
+
+	void indexSearchDone() {
+		indexSearchesDone.incrementAndGet();
+		if (parent != null) {
+			parent.indexSearchDone();
+		}
+	}
+
+	void addAlignments(int quantity) {
+		alignments.addAndGet(quantity);
+		if (parent != null) {
+			parent.addAlignments(quantity);
+		}
+	}
+
+	void alignmentDone() {
+		alignmentsDone.incrementAndGet();
+		if (parent != null) {
+			parent.alignmentDone();
+		}
+	}
+
+	/**
+	 * @return quantity of index search tasks created by the search.
+	 */
+	public int getIndexSearches() {
+		return indexSearches.get();
+	}
+
+	/**
+	 * @return quantity of index search tasks finished.
+	 */
+	public int getIndexSearchesDone() {
+		return indexSearchesDone.get();
+	}
+
+	/**
+	 * @return quantity of sequences to be aligned, known after the index search.
+	 */
+	public int getAlignments() {
+		return alignments.get();
+	}
+
+	/**
+	 * @return quantity of sequences aligned.
+	 */
+	public int getAlignmentsDone() {
+		return alignmentsDone.get();
+	}
+
+	@Override
+	public String toString() {
+		return "index search " + getIndexSearchesDone() + "/" + getIndexSearches() + " alignment "
+				+ getAlignmentsDone() + "/" + getAlignments() + (isCancelled() ? " cancelled" : "");
+	}
+}
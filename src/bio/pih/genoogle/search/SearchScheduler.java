@@ -0,0 +1,366 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.search;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Threads shared by all searches of a {@link SearchManager}: one pool for the index searches and
+ * one pool for the extension and alignment of the retrieved areas. The quantity of threads does
+ * not grow with the simultaneous searches, their tasks wait at the pools queues.
+ * <p>
+ * The requests, which wait for their index searches and alignments, run at the requests executor.
+ * How many requests run at the same time is limited by a semaphore and not by the threads of this
+ * executor, so when the Java virtual machine has virtual threads, each request can run in its own
+ * virtual thread and thousands of requests can wait for the admission without using a platform
+ * thread each. Without virtual threads, the requests run in a pool with one thread for each
+ * simultaneous request.
+ * <p>
+ * The tasks submitted to these pools must not wait for other tasks of the same pool. A search can
+ * limit how many of its tasks run at the same time, then the thread which submits the tasks waits
+ * while the search has this quantity of running tasks.
+ * 
+ * @author albrecht
+ */
+public class SearchScheduler {
+
+	private static Logger logger = Logger.getLogger(SearchScheduler.class.getName());
+
+	private final int maxSimultaneousRequests;
+	private final Semaphore admission;
+	private final boolean usingVirtualThreads;
+	private final ExecutorService requestsThreads;
+	private final ExecutorService requestsExecutor;
+
+	private final ThreadPoolExecutor indexSearchExecutor;
+	private final ThreadPoolExecutor alignmentExecutor;
+
+	/**
+	 * @param maxSimultaneousRequests
+	 *            quantity of requests which run at the same time.
+	 * @param virtualThreads
+	 *            if the requests should run in virtual threads, when the Java virtual machine has
+	 *            them.
+	 * @param indexSearchThreads
+	 *            quantity of threads which search the query sub-sequences at the indexes.
+	 * @param alignmentThreads
+	 *            quantity of threads which extend and align the retrieved areas.
+	 */
+	public SearchScheduler(int maxSimultaneousRequests, boolean virtualThreads, int indexSearchThreads,
+			int alignmentThreads) {
+		this.maxSimultaneousRequests = Math.max(1, maxSimultaneousRequests);
+		this.admission = new Semaphore(this.maxSimultaneousRequests, true);
+
+		ExecutorService virtualThreadsExecutor = null;
+		if (virtualThreads) {
+			virtualThreadsExecutor = newVirtualThreadPerTaskExecutor();
+			if (virtualThreadsExecutor == null) {
+				logger.warn("Virtual threads are not available in this Java virtual machine, the requests will run in "
+						+ this.maxSimultaneousRequests + " threads.");
+			}
+		}
+		this.usingVirtualThreads = virtualThreadsExecutor != null;
+		if (usingVirtualThreads) {
+			this.requestsThreads = virtualThreadsExecutor;
+		} else {
+			this.requestsThreads = newPool("Search request", this.maxSimultaneousRequests);
+		}
+		this.requestsExecutor = new AdmissionExecutor(requestsThreads, admission);
+
+		this.indexSearchExecutor = newPool("Index searcher", indexSearchThreads);
+		this.alignmentExecutor = newPool("Aligner", alignmentThreads);
+	}
+
+	/**
+	 * The virtual threads are created by reflection to keep the compatibility with the Java
+	 * versions without them.
+	 * 
+	 * @return executor which runs each task in a new virtual thread or <code>null</code> if they
+	 *         are not available.
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (Exception e) {
+			// Virtual threads are a preview feature in some Java versions.
+			logger.warn("It was not possible to create the virtual threads executor: " + e);
+			return null;
+		}
+	}
+
+	private static ThreadPoolExecutor newPool(final String name, int threads) {
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * @return executor of the requests, each task waits the admission before running.
+	 */
+	public ExecutorService getRequestsExecutor() {
+		return requestsExecutor;
+	}
+
+	/**
+	 * @return executor of the index searches.
+	 */
+	public ExecutorService getIndexSearchExecutor() {
+		return indexSearchExecutor;
+	}
+
+	/**
+	 * @return executor of the extension and alignment of the retrieved areas.
+	 */
+	public ExecutorService getAlignmentExecutor() {
+		return alignmentExecutor;
+	}
+
+	/**
+	 * @param maxRunningTasks
+	 *            maximum quantity of tasks submitted by the returned executor which are running or
+	 *            waiting at the queue.
+	 * @return executor of the index searches of one search.
+	 */
+	public ExecutorService getIndexSearchExecutor(int maxRunningTasks) {
+		return new LimitedExecutor(indexSearchExecutor, maxRunningTasks);
+	}
+
+	/**
+	 * @param maxRunningTasks
+	 *            maximum quantity of tasks submitted by the returned executor which are running or
+	 *            waiting at the queue.
+	 * @return executor of the extension and alignment of the retrieved areas of one search.
+	 */
+	public ExecutorService getAlignmentExecutor(int maxRunningTasks) {
+		return new LimitedExecutor(alignmentExecutor, maxRunningTasks);
+	}
+
+	/**
+	 * @return <code>true</code> if each request runs in its own virtual thread.
+	 */
+	public boolean isUsingVirtualThreads() {
+		return usingVirtualThreads;
+	}
+
+	public int getMaxSimultaneousRequests() {
+		return maxSimultaneousRequests;
+	}
+
+	/**
+	 * @return quantity of requests waiting to run.
+	 */
+	public int getWaitingRequests() {
+		if (usingVirtualThreads) {
+			return admission.getQueueLength();
+		}
+		return ((ThreadPoolExecutor) requestsThreads).getQueue().size();
+	}
+
+	/**
+	 * @return quantity of requests running.
+	 */
+	public int getRunningRequests() {
+		return maxSimultaneousRequests - admission.availablePermits();
+	}
+
+	public int getIndexSearchThreads() {
+		return indexSearchExecutor.getMaximumPoolSize();
+	}
+
+	public int getAlignmentThreads() {
+		return alignmentExecutor.getMaximumPoolSize();
+	}
+
+	/**
+	 * @return quantity of index search tasks waiting for a thread.
+	 */
+	public int getIndexSearchQueueDepth() {
+		return indexSearchExecutor.getQueue().size();
+	}
+
+	/**
+	 * @return quantity of alignment tasks waiting for a thread.
+	 */
+	public int getAlignmentQueueDepth() {
+		return alignmentExecutor.getQueue().size();
+	}
+
+	/**
+	 * Stops the threads after the submitted tasks finish.
+	 */
+	public void shutdown() {
+		requestsThreads.shutdown();
+		indexSearchExecutor.shutdown();
+		alignmentExecutor.shutdown();
+	}
+
+	/**
+	 * @return <code>true</code> if the requests finished in the given time.
+	 */
+	public boolean awaitRequestsTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return requestsThreads.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Runs the tasks in the given threads, each task waits in its thread for a permit of the
+	 * admission semaphore before running. The submitting thread never waits.
+	 */
+	private static class AdmissionExecutor extends AbstractExecutorService {
+		private final ExecutorService threads;
+		private final Semaphore admission;
+
+		public AdmissionExecutor(ExecutorService threads, Semaphore admission) {
+			this.threads = threads;
+			this.admission = admission;
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			threads.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						admission.acquire();
+					} catch (InterruptedException e) {
+						// Interrupted by the shutdown while waiting, the task will not run.
+						if (command instanceof Future<?>) {
+							((Future<?>) command).cancel(false);
+						}
+						Thread.currentThread().interrupt();
+						return;
+					}
+					try {
+						command.run();
+					} finally {
+						admission.release();
+					}
+				}
+			});
+		}
+
+		@Override
+		public void shutdown() {
+			threads.shutdown();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return threads.shutdownNow();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return threads.isShutdown();
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return threads.isTerminated();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			return threads.awaitTermination(timeout, unit);
+		}
+	}
+
+	/**
+	 * Submits the tasks to a shared pool, limiting how many of them are at the pool. Shutting it
+	 * down does not stop the shared pool.
+	 */
+	private static class LimitedExecutor extends AbstractExecutorService {
+		private final ExecutorService pool;
+		private final Semaphore running;
+		private volatile boolean shutdown = false;
+
+		public LimitedExecutor(ExecutorService pool, int maxRunningTasks) {
+			this.pool = pool;
+			this.running = new Semaphore(Math.max(1, maxRunningTasks));
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			if (shutdown) {
+				throw new RejectedExecutionException("Executor was shut down.");
+			}
+			try {
+				running.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(e);
+			}
+			try {
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							command.run();
+						} finally {
+							running.release();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				running.release();
+				throw e;
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			shutdown = true;
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			shutdown = true;
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return shutdown;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return shutdown;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return shutdown;
+		}
+	}
+}
@@ -22,14 +22,14 @@ public class SearcherFactory {
 	/**
 	 * Get the searcher for the appropriate data bank.
 	 */
-	static public AbstractSearcher getSearcher(long id, SearchParams sp, AbstractSequenceDataBank databank) {
+	static public AbstractSearcher getSearcher(long id, SearchParams sp, AbstractSequenceDataBank databank, SearchScheduler scheduler) {
 
 		if (databank instanceof AbstractDatabankCollection) {
-			return new CollectionSearcher(id, sp, (AbstractDatabankCollection<AbstractSequenceDataBank>) databank);
+			return new CollectionSearcher(id, sp, (AbstractDatabankCollection<AbstractSequenceDataBank>) databank, scheduler);
 		}
 
 		if (databank instanceof RemoteSimilaritySequenceDataBank) {
-			return new RemoteSimilaritySearcher(id, sp, (RemoteSimilaritySequenceDataBank) databank);
+			return new RemoteSimilaritySearcher(id, sp, (RemoteSimilaritySequenceDataBank) databank, scheduler);
 		}
 		
 		throw new UnsupportedOperationException("Factory for " + databank.getClass().getName()
@@ -12,7 +12,10 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.concurrent.CountDownLatch;
 
+import bio.pih.genoogle.alignment.AffineGapSmithWaterman;
 import bio.pih.genoogle.alignment.DividedSubstitutionMatrixSmithWaterman;
+import bio.pih.genoogle.alignment.GenoogleSequenceAlignment;
+import bio.pih.genoogle.alignment.StripedSmithWaterman;
 import bio.pih.genoogle.alignment.SubstitutionMatrix;
 import bio.pih.genoogle.encoder.SequenceEncoder;
 import bio.pih.genoogle.io.AbstractSequenceDataBank;
@@ -31,6 +34,12 @@ import com.google.common.collect.Lists;
  * @author albrecht
  */
 public class SequenceAligner implements Runnable {
+
+	/**
+	 * Length of the pieces of the long segments aligned with linear gap costs.
+	 */
+	private static final int DIVIDED_ALIGNMENT_LENGTH = 2000;
+
 	private final CountDownLatch countDown;
 	private final RetrievedSequenceAreas retrievedAreas;
 	private final SearchResults sr;
@@ -41,6 +50,7 @@ public class SequenceAligner implements Runnable {
 	private final AbstractSequenceDataBank databank;
 	private final SubstitutionMatrix substitutionTable;
 	private final IndexSearcher[] indexes;
+	private SearchProgress progress = new SearchProgress();
 
 	/**
 	 * @param countDown
@@ -67,15 +77,26 @@ public class SequenceAligner implements Runnable {
 		this.encoderDatabankConverted = encoderDatabankConverted;
 	}
 
+	/**
+	 * @param progress
+	 *            progress of the search, informed when this aligner finishes and checked for its
+	 *            cancellation.
+	 */
+	void setProgress(SearchProgress progress) {
+		this.progress = progress;
+	}
+
 	@Override
 	public void run() {
 		try {
+			progress.checkCancelled();
 			extendAndAlignHSPs(this.retrievedAreas, this.storedSequence);
 		} catch (Exception e) {
 			sr.addFail(e);
 		} catch (AssertionError ae) {
 			ae.printStackTrace();
 		} finally {
+			progress.alignmentDone();
 			countDown.countDown();
 		}
 	}
@@ -84,7 +105,6 @@ public class SequenceAligner implements Runnable {
 		int[] encodedDatabankSequence = Utils.getEncodedSequenceAsArray(storedSequence);
 		int targetLength = SequenceEncoder.getSequenceLength(encodedDatabankSequence);		
 		int offset = (indexes.length / 2);
-		String databankSequence = encoderDatabankConverted.decodeIntegerArrayToString(encodedDatabankSequence);
 		Hit hit = new Hit(storedSequence.getName(), storedSequence.getGi(), storedSequence.getDescription(), storedSequence.getAccession(), targetLength, databank.getAbsolutParent().getName());
 		
 		List<RetrievedArea>[] areas = retrievedAreas.getAreas();
@@ -96,7 +116,7 @@ public class SequenceAligner implements Runnable {
 				int[] encodedQuery = encoderDatabankConverted.encodeSymbolListToIntegerArray(searcher.getQuery());
 				List<ExtendSequences> extendedSequences = extendAreas(encodedDatabankSequence, targetLength, queryLength, encodedQuery, areas[i], searcher);
 				extendedSequences = mergeExtendedAreas(extendedSequences);
-				alignHSPs(hit, query, queryLength, targetLength, extendedSequences, searcher, databankSequence);
+				alignHSPs(hit, encodedQuery, queryLength, encodedDatabankSequence, targetLength, extendedSequences, searcher);
 			}
 		}
 
@@ -109,7 +129,7 @@ public class SequenceAligner implements Runnable {
 				int[] reverseEncodedQuery = encoderDatabankConverted.encodeSymbolListToIntegerArray(query);
 				List<ExtendSequences> rcExtendedSequences = extendAreas(encodedDatabankSequence, targetLength, queryLength, reverseEncodedQuery, reverseComplementAreas[i], searcher);
 				rcExtendedSequences = mergeExtendedAreas(rcExtendedSequences);
-				alignHSPs(hit, query, queryLength, targetLength, rcExtendedSequences, searcher, databankSequence);
+				alignHSPs(hit, reverseEncodedQuery, queryLength, encodedDatabankSequence, targetLength, rcExtendedSequences, searcher);
 			}
 		}		
 		sr.addHit(hit);
@@ -118,6 +138,7 @@ public class SequenceAligner implements Runnable {
 	private List<ExtendSequences> extendAreas(int[] encodedSequence, int targetLength, int queryLength, int[] encodedQuery, List<RetrievedArea> areas, IndexSearcher searcher) {
 		List<ExtendSequences> extendedSequencesList = Lists.newLinkedList();
 		for (int i = 0; i < areas.size(); i++) {
+			progress.checkCancelled();
 			RetrievedArea retrievedArea = areas.get(i);
 			int sequenceAreaBegin = retrievedArea.getSequenceAreaBegin();
 			int sequenceAreaEnd = retrievedArea.getSequenceAreaEnd();
@@ -141,12 +162,15 @@ public class SequenceAligner implements Runnable {
 		return extendedSequencesList;
 	}
 
-	private void alignHSPs(Hit hit, SymbolList query, int queryLength, int targetLength, List<ExtendSequences> extendedSequencesList, IndexSearcher searcher, String reducedDatabankSequence) {
-
-		String queryString = query.seqString();
+	/**
+	 * Aligns the extended areas directly on the encoded query and data bank sequence. Only the
+	 * aligned sequences of the HSPs are built as strings.
+	 */
+	private void alignHSPs(Hit hit, int[] encodedQuery, int queryLength, int[] encodedDatabankSequence, int targetLength, List<ExtendSequences> extendedSequencesList, IndexSearcher searcher) {
+		SearchParams searchParams = searcher.getSearchParams();
 
 		for (ExtendSequences extensionResult : extendedSequencesList) {
-			DividedSubstitutionMatrixSmithWaterman smithWaterman = new DividedSubstitutionMatrixSmithWaterman(substitutionTable, -5, -5, 2000);
+			progress.checkCancelled();
 
 			int beginQuerySegment;
 			int endnQuerySegment;
@@ -158,18 +182,64 @@ public class SequenceAligner implements Runnable {
 			beginTargetSegment = extensionResult.getBeginTargetSegment();
 			endTargetSegment = extensionResult.getEndTargetSegment();
 
-			String targetSubSequence = reducedDatabankSequence.substring(beginTargetSegment, endTargetSegment);
-			String querySubSequence = queryString.substring(beginQuerySegment, endnQuerySegment);
-
-			smithWaterman.pairwiseAlignment(querySubSequence, targetSubSequence);
+			// Only the score is computed first, the alignment is built if the HSP is kept.
+			GenoogleSequenceAlignment smithWaterman;
+			int score;
+			AffineGapSmithWaterman bandedSmithWaterman = null;
+			StripedSmithWaterman stripedSmithWaterman = null;
+			if (isDividedAlignment(searchParams, endnQuerySegment - beginQuerySegment, endTargetSegment - beginTargetSegment)) {
+				DividedSubstitutionMatrixSmithWaterman dividedSmithWaterman = new DividedSubstitutionMatrixSmithWaterman(substitutionTable, searchParams.getGapOpenScore(), searchParams.getGapExtendScore(), DIVIDED_ALIGNMENT_LENGTH);
+				String querySubSequence = encoderDatabankConverted.decodeIntegerArrayToString(encodedQuery, beginQuerySegment, endnQuerySegment - 1);
+				String targetSubSequence = encoderDatabankConverted.decodeIntegerArrayToString(encodedDatabankSequence, beginTargetSegment, endTargetSegment - 1);
+				score = dividedSmithWaterman.pairwiseAlignment(querySubSequence, targetSubSequence);
+				smithWaterman = dividedSmithWaterman;
+			} else if (isStripedAlignment(searchParams)) {
+				stripedSmithWaterman = new StripedSmithWaterman(substitutionTable, encoderDatabankConverted, searchParams.getGapOpenScore(), searchParams.getGapExtendScore());
+				score = stripedSmithWaterman.pairwiseScore(encodedQuery, beginQuerySegment, endnQuerySegment, encodedDatabankSequence, beginTargetSegment, endTargetSegment);
+				smithWaterman = stripedSmithWaterman;
+			} else {
+				bandedSmithWaterman = new AffineGapSmithWaterman(substitutionTable, encoderDatabankConverted, searchParams.getGapOpenScore(), searchParams.getGapExtendScore());
+				score = bandedSmithWaterman.pairwiseScore(encodedQuery, beginQuerySegment, endnQuerySegment, encodedDatabankSequence, beginTargetSegment, endTargetSegment);
+				smithWaterman = bandedSmithWaterman;
+			}
 
-			double normalizedScore = searcher.getStatistics().nominalToNormalizedScore(smithWaterman.getScore());
+			double normalizedScore = searcher.getStatistics().nominalToNormalizedScore(score);
 			double evalue = searcher.getStatistics().calculateEvalue(normalizedScore);
+			if (evalue >= AbstractSearcher.MAX_HSP_EVALUE) {
+				continue;
+			}
+
+			// The traceback reuses the score and the end of the alignment.
+			if (bandedSmithWaterman != null) {
+				bandedSmithWaterman.pairwiseTraceback();
+			} else if (stripedSmithWaterman != null) {
+				stripedSmithWaterman.pairwiseTraceback();
+			}
 			HSP hsp = searcher.createHSP(extensionResult, smithWaterman, normalizedScore, evalue, queryLength, targetLength);
 			hit.addHSP(hsp);
 		}
 	}
 
+	/**
+	 * Long segments with linear gap costs are aligned in pieces by
+	 * {@link DividedSubstitutionMatrixSmithWaterman}, keeping their alignments as they were before
+	 * the banded aligners used linear memory. The other segments are aligned by
+	 * {@link AffineGapSmithWaterman}, which gives the linear gap costs alignment when the gap
+	 * open and extend scores are equal.
+	 */
+	private boolean isDividedAlignment(SearchParams searchParams, int querySegmentLength, int targetSegmentLength) {
+		return !searchParams.isAffineGap() && querySegmentLength > DIVIDED_ALIGNMENT_LENGTH && targetSegmentLength > DIVIDED_ALIGNMENT_LENGTH;
+	}
+
+	/**
+	 * The whole matrix of the segments which are not divided is aligned by
+	 * {@link StripedSmithWaterman} when it is the selected kernel and the gap costs are linear.
+	 * With affine gap costs the segments are aligned by {@link AffineGapSmithWaterman}.
+	 */
+	private boolean isStripedAlignment(SearchParams searchParams) {
+		return searchParams.getAlignmentKernel() == SearchParams.STRIPED_ALIGNMENT && !searchParams.isAffineGap();
+	}
+
 	/**
 	 * Check if the extended areas has overlapped positions and merge them.
 	 * 
@@ -0,0 +1,103 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Retrieved areas of the data bank sequences, shared by the searchers of the query slices of a
+ * strand or read frame.
+ * <p>
+ * Only the sequences with retrieved areas are stored, so the memory used by a search depends on
+ * its hits and not on the data bank size. The areas of the slices are merged under locks owned
+ * by this store, chosen by the sequence id, so the searchers of other searches do not wait for
+ * them.
+ *
+ * @author albrecht
+ */
+public class SequencesRetrievedAreas {
+
+	private static final int MERGE_LOCKS = 64;
+
+	private final ConcurrentMap<Integer, List<RetrievedArea>> areas = new ConcurrentHashMap<Integer, List<RetrievedArea>>();
+	private final Object[] mergeLocks = new Object[MERGE_LOCKS];
+
+	public SequencesRetrievedAreas() {
+		for (int i = 0; i < MERGE_LOCKS; i++) {
+			mergeLocks[i] = new Object();
+		}
+	}
+
+	/**
+	 * @return the retrieved areas of the sequence or <code>null</code> if it has none.
+	 */
+	public List<RetrievedArea> get(int sequenceId) {
+		return areas.get(sequenceId);
+	}
+
+	/**
+	 * Merges the areas found by a query slice with the areas of the sequence found by the other
+	 * slices.
+	 * 
+	 * @param sliceAreas
+	 *            areas in any order, this list is sorted.
+	 */
+	public void merge(int sequenceId, List<RetrievedArea> sliceAreas, int maxSubSequenceDistance) {
+		synchronized (mergeLocks[sequenceId & (MERGE_LOCKS - 1)]) {
+			List<RetrievedArea> sequenceAreas = areas.get(sequenceId);
+			if (sequenceAreas == null || sequenceAreas.isEmpty()) {
+				Collections.sort(sliceAreas, RetrievedArea.QUERY_BEGIN_COMPARATOR);
+				areas.put(sequenceId, sliceAreas);
+			} else {
+				areas.put(sequenceId, RetrievedArea.merge(sequenceAreas, sliceAreas, maxSubSequenceDistance));
+			}
+		}
+	}
+
+	/**
+	 * @return quantity of sequences with retrieved areas.
+	 */
+	public int size() {
+		return areas.size();
+	}
+
+	/**
+	 * @return the ids, sorted and without repetitions, of the sequences with retrieved areas in
+	 *         any of the given stores.
+	 */
+	public static int[] getSequenceIds(SequencesRetrievedAreas... stores) {
+		int total = 0;
+		for (SequencesRetrievedAreas store : stores) {
+			total += store.size();
+		}
+
+		int[] ids = new int[total];
+		int pos = 0;
+		for (SequencesRetrievedAreas store : stores) {
+			for (Integer sequenceId : store.areas.keySet()) {
+				if (pos == ids.length) {
+					ids = Arrays.copyOf(ids, ids.length * 2 + 1);
+				}
+				ids[pos++] = sequenceId;
+			}
+		}
+		Arrays.sort(ids, 0, pos);
+
+		int unique = 0;
+		for (int i = 0; i < pos; i++) {
+			if (unique == 0 || ids[unique - 1] != ids[i]) {
+				ids[unique++] = ids[i];
+			}
+		}
+		return Arrays.copyOf(ids, unique);
+	}
+}
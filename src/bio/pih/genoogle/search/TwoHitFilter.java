@@ -0,0 +1,108 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.search;
+
+import java.util.Arrays;
+
+/**
+ * Two hits filter of the sub-sequences found at the index.
+ * <p>
+ * A sub-sequence is only used if there is another sub-sequence, not overlapped, at the same
+ * diagonal of the same sequence and at most <i>window</i> positions before it in the query. It
+ * keeps the last hit of each diagonal in an open addressing table indexed by the sequence id and
+ * diagonal.
+ * 
+ * @author albrecht
+ */
+final class TwoHitFilter {
+
+	/**
+	 * Returned when the sub-sequence does not have a previous hit in the window.
+	 */
+	static final int NO_HIT = -1;
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private final int window;
+	private final int subSequenceLength;
+
+	private long[] diagonals = new long[1024];
+	private int[] lastHits = new int[1024];
+	private int size = 0;
+
+	/**
+	 * @param window
+	 *            maximum distance in the query between the two hits.
+	 * @param subSequenceLength
+	 *            length of the sub-sequences, which is the minimum distance between the two hits.
+	 */
+	TwoHitFilter(int window, int subSequenceLength) {
+		this.window = window;
+		this.subSequenceLength = subSequenceLength;
+		Arrays.fill(diagonals, EMPTY);
+	}
+
+	/**
+	 * Informs a hit, the query positions must be informed in increasing order.
+	 * 
+	 * @return the query position of the previous hit at the same diagonal if it is inside the
+	 *         window or {@link #NO_HIT}.
+	 */
+	int hit(int sequenceId, int diagonal, int queryPos) {
+		long key = ((long) sequenceId << 32) | (diagonal & 0xFFFFFFFFL);
+		int mask = diagonals.length - 1;
+		int slot = hash(key) & mask;
+		while (diagonals[slot] != EMPTY) {
+			if (diagonals[slot] == key) {
+				int lastHit = lastHits[slot];
+				int distance = queryPos - lastHit;
+				if (distance < subSequenceLength) {
+					// Overlapped with the last hit.
+					return NO_HIT;
+				}
+				lastHits[slot] = queryPos;
+				return distance <= window ? lastHit : NO_HIT;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if ((size + 1) * 2 > diagonals.length) {
+			rehash();
+			return hit(sequenceId, diagonal, queryPos);
+		}
+		diagonals[slot] = key;
+		lastHits[slot] = queryPos;
+		size++;
+		return NO_HIT;
+	}
+
+	private void rehash() {
+		long[] oldDiagonals = diagonals;
+		int[] oldLastHits = lastHits;
+		diagonals = new long[oldDiagonals.length * 2];
+		Arrays.fill(diagonals, EMPTY);
+		lastHits = new int[oldLastHits.length * 2];
+
+		int mask = diagonals.length - 1;
+		for (int i = 0; i < oldDiagonals.length; i++) {
+			if (oldDiagonals[i] != EMPTY) {
+				int slot = hash(oldDiagonals[i]) & mask;
+				while (diagonals[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				diagonals[slot] = oldDiagonals[i];
+				lastHits[slot] = oldLastHits[i];
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
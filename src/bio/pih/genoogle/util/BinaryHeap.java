@@ -93,6 +93,10 @@ public class BinaryHeap<T> {
 	public boolean isEmpty() {
 		return freePos == 0;
 	}
+
+	public int size() {
+		return freePos;
+	}
 	
 	public static void xx(String[] args) {
 		Comparator<Integer> c = new Comparator<Integer>() {
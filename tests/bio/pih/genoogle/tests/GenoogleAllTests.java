@@ -12,6 +12,7 @@ import junit.framework.TestSuite;
 import bio.pih.genoogle.tests.encoder.SequenceEncoderAllTests;
 import bio.pih.genoogle.tests.index.IndexAllTests;
 import bio.pih.genoogle.tests.io.reader.ReaderAllTests;
+import bio.pih.genoogle.tests.search.SearchAllTests;
 import bio.pih.genoogle.tests.seq.SequencesAllTests;
 import bio.pih.genoogle.tests.util.UtilAllTests;
 
@@ -31,6 +32,7 @@ public class GenoogleAllTests {
 		suite.addTest(SequenceEncoderAllTests.suite());
 		suite.addTest(IndexAllTests.suite());
 		suite.addTest(ReaderAllTests.suite());
+		suite.addTest(SearchAllTests.suite());
 		//suite.addTestSuite(ExtendAlignmentTest.class);
 		suite.addTestSuite(TestCircularArrayList.class);
 		
@@ -0,0 +1,177 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.alignment;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.alignment.AffineGapSmithWaterman;
+import bio.pih.genoogle.alignment.SubstitutionMatrix;
+import bio.pih.genoogle.alignment.SubstitutionMatrixSmithWaterman;
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.encoder.SequenceEncoderFactory;
+import bio.pih.genoogle.seq.DNAAlphabet;
+import bio.pih.genoogle.seq.IllegalSymbolException;
+
+/**
+ * Tests the banded alignment with affine gap costs of encoded sequences against the banded
+ * alignment with linear gap costs and against a not optimized banded Gotoh alignment.
+ *
+ * @author albrecht
+ */
+public class AffineGapSmithWatermanTest extends TestCase {
+
+	private static final int BAND = SubstitutionMatrixSmithWaterman.BAND;
+	private static final int UNREACHABLE = Integer.MIN_VALUE / 2;
+
+	private final SubstitutionMatrix matrix = SubstitutionMatrix.DUMMY;
+	private final SequenceEncoder encoder = SequenceEncoderFactory.getEncoder(DNAAlphabet.SINGLETON, 11);
+
+	public void testSameSequences() throws IllegalSymbolException {
+		String query = "ACTGGGCCCTAGTCAGGTACCA";
+		int[] encodedQuery = RandomSequences.encode(encoder, query);
+		AffineGapSmithWaterman sw = new AffineGapSmithWaterman(matrix, encoder, -5, -2);
+		int score = sw.pairwiseAlignment(encodedQuery, 0, query.length(), encodedQuery, 0, query.length());
+
+		assertEquals(query.length() * matrix.getValue('A', 'A'), score);
+		assertEquals(query, sw.getQueryAligned());
+		assertEquals(query, sw.getTargetAligned());
+		assertEquals(query, sw.getPath());
+		assertEquals(query.length(), sw.getIdentitySize());
+		assertEquals(1, sw.getQueryStart());
+		assertEquals(query.length(), sw.getQueryEnd());
+		assertEquals(1, sw.getTargetStart());
+		assertEquals(query.length(), sw.getTargetEnd());
+	}
+
+	public void testLinearGapsEquivalence() throws IllegalSymbolException {
+		Random random = new Random(5);
+		for (int gap = -1; gap >= -5; gap -= 2) {
+			SubstitutionMatrixSmithWaterman linear = new SubstitutionMatrixSmithWaterman(matrix, gap, gap);
+			AffineGapSmithWaterman affine = new AffineGapSmithWaterman(matrix, encoder, gap, gap);
+			for (int t = 0; t < 500; t++) {
+				String query = RandomSequences.randomSequence(random, random.nextInt(100));
+				String target = RandomSequences.mutate(random, query);
+				int queryBegin = random.nextInt(30);
+				int targetBegin = random.nextInt(30);
+				int[] encodedQuery = encodeSegment(random, query, queryBegin);
+				int[] encodedTarget = encodeSegment(random, target, targetBegin);
+
+				int score = linear.pairwiseAlignment(query, target);
+				assertEquals(score, affine.pairwiseAlignment(encodedQuery, queryBegin, queryBegin + query.length(), encodedTarget, targetBegin, targetBegin + target.length()));
+				assertEquals(linear.getQueryAligned(), affine.getQueryAligned());
+				assertEquals(linear.getTargetAligned(), affine.getTargetAligned());
+				assertEquals(linear.getPath(), affine.getPath());
+				assertEquals(linear.getIdentitySize(), affine.getIdentitySize());
+				assertEquals(linear.getQueryStart(), affine.getQueryStart());
+				assertEquals(linear.getQueryEnd(), affine.getQueryEnd());
+				assertEquals(linear.getTargetStart(), affine.getTargetStart());
+				assertEquals(linear.getTargetEnd(), affine.getTargetEnd());
+			}
+		}
+	}
+
+	public void testAffineGaps() throws IllegalSymbolException {
+		Random random = new Random(13);
+		int[][] gaps = { { -5, -2 }, { -8, -1 }, { -3, -3 }, { -4, -1 } };
+		for (int[] gap : gaps) {
+			AffineGapSmithWaterman affine = new AffineGapSmithWaterman(matrix, encoder, gap[0], gap[1]);
+			for (int t = 0; t < 500; t++) {
+				String query = RandomSequences.randomSequence(random, random.nextInt(100));
+				String target = RandomSequences.mutate(random, query);
+				int queryBegin = random.nextInt(30);
+				int targetBegin = random.nextInt(30);
+				int[] encodedQuery = encodeSegment(random, query, queryBegin);
+				int[] encodedTarget = encodeSegment(random, target, targetBegin);
+
+				int[] expected = bandedGotoh(query, target, gap[0], gap[1]);
+				assertEquals(expected[0], affine.pairwiseScore(encodedQuery, queryBegin, queryBegin + query.length(), encodedTarget, targetBegin, targetBegin + target.length()));
+				assertEquals(expected[1], affine.getQueryEnd());
+				assertEquals(expected[2], affine.getTargetEnd());
+
+				assertEquals(expected[0], affine.pairwiseAlignment(encodedQuery, queryBegin, queryBegin + query.length(), encodedTarget, targetBegin, targetBegin + target.length()));
+				assertEquals(expected[1], affine.getQueryEnd());
+				assertEquals(expected[2], affine.getTargetEnd());
+				assertEquals(expected[0], RandomSequences.alignedScore(matrix, affine.getQueryAligned(), affine.getTargetAligned(), gap[0], gap[1]));
+				if (expected[0] > 0) {
+					assertEquals(query.substring(affine.getQueryStart() - 1, affine.getQueryEnd()), affine.getQueryAligned().replace("-", ""));
+					assertEquals(target.substring(affine.getTargetStart() - 1, affine.getTargetEnd()), affine.getTargetAligned().replace("-", ""));
+				}
+			}
+		}
+	}
+
+	public void testTracebackAfterScore() throws IllegalSymbolException {
+		Random random = new Random(17);
+		AffineGapSmithWaterman scored = new AffineGapSmithWaterman(matrix, encoder, -5, -2);
+		AffineGapSmithWaterman aligned = new AffineGapSmithWaterman(matrix, encoder, -5, -2);
+		for (int t = 0; t < 500; t++) {
+			String query = RandomSequences.randomSequence(random, random.nextInt(100));
+			String target = RandomSequences.mutate(random, query);
+			int queryBegin = random.nextInt(30);
+			int targetBegin = random.nextInt(30);
+			int[] encodedQuery = encodeSegment(random, query, queryBegin);
+			int[] encodedTarget = encodeSegment(random, target, targetBegin);
+			int queryEnd = queryBegin + query.length();
+			int targetEnd = targetBegin + target.length();
+
+			int score = scored.pairwiseScore(encodedQuery, queryBegin, queryEnd, encodedTarget, targetBegin, targetEnd);
+			// Other alignment between the score and the traceback.
+			aligned.pairwiseAlignment(encodedTarget, 0, targetEnd, encodedQuery, 0, queryEnd);
+			assertEquals(score, scored.pairwiseTraceback());
+			assertEquals(score, aligned.pairwiseAlignment(encodedQuery, queryBegin, queryEnd, encodedTarget, targetBegin, targetEnd));
+			assertEquals(aligned.getQueryAligned(), scored.getQueryAligned());
+			assertEquals(aligned.getTargetAligned(), scored.getTargetAligned());
+			assertEquals(aligned.getPath(), scored.getPath());
+			assertEquals(aligned.getIdentitySize(), scored.getIdentitySize());
+			assertEquals(aligned.getQueryStart(), scored.getQueryStart());
+			assertEquals(aligned.getQueryEnd(), scored.getQueryEnd());
+			assertEquals(aligned.getTargetStart(), scored.getTargetStart());
+			assertEquals(aligned.getTargetEnd(), scored.getTargetEnd());
+		}
+	}
+
+	/**
+	 * @return the encoded sequence, after <code>begin</code> random symbols and before others.
+	 */
+	private int[] encodeSegment(Random random, String sequence, int begin) throws IllegalSymbolException {
+		return RandomSequences.encode(encoder, RandomSequences.randomSequence(random, begin) + sequence + RandomSequences.randomSequence(random, random.nextInt(30)));
+	}
+
+	/**
+	 * Computes the whole matrices, with the cells out of the band as if the alignment stops there.
+	 *
+	 * @return the score, query end and target end of the best alignment, the first one of the
+	 *         rows order.
+	 */
+	private int[] bandedGotoh(String query, String target, int gapOpen, int gapExtend) {
+		int[][] h = new int[query.length() + 1][target.length() + 1];
+		int[][] left = new int[query.length() + 1][target.length() + 1];
+		int[][] up = new int[query.length() + 1][target.length() + 1];
+		for (int i = 0; i <= query.length(); i++) {
+			for (int j = 0; j <= target.length(); j++) {
+				left[i][j] = UNREACHABLE;
+				up[i][j] = UNREACHABLE;
+			}
+		}
+
+		int[] best = { 0, 0, 0 };
+		for (int i = 1; i <= query.length(); i++) {
+			for (int j = Math.max(1, i - BAND); j <= Math.min(target.length(), i + BAND); j++) {
+				left[i][j] = Math.max(h[i][j - 1] + gapOpen, left[i][j - 1] + gapExtend);
+				up[i][j] = Math.max(h[i - 1][j] + gapOpen, up[i - 1][j] + gapExtend);
+				int diagonal = h[i - 1][j - 1] + matrix.getValue(query.charAt(i - 1), target.charAt(j - 1));
+				h[i][j] = Math.max(Math.max(0, diagonal), Math.max(left[i][j], up[i][j]));
+				if (h[i][j] > best[0]) {
+					best = new int[] { h[i][j], i, j };
+				}
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.alignment;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+import bio.pih.genoogle.alignment.SubstitutionMatrix;
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.seq.IllegalSymbolException;
+import bio.pih.genoogle.seq.LightweightSymbolList;
+
+/**
+ * Random DNA sequences and mutated copies of them, used by the tests of the alignments and of
+ * the searches.
+ *
+ * @author albrecht
+ */
+public final class RandomSequences {
+
+	private static final String DNA = "ACGT";
+
+	private RandomSequences() {
+	}
+
+	/**
+	 * @return a sequence of random symbols.
+	 */
+	public static String randomSequence(Random random, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(DNA.charAt(random.nextInt(DNA.length())));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the sequence with substitutions and with insertions and deletions of up to 3
+	 *         symbols.
+	 */
+	public static String mutate(Random random, String sequence) {
+		StringBuilder sb = new StringBuilder();
+		int i = 0;
+		while (i < sequence.length()) {
+			int r = random.nextInt(20);
+			if (r == 0) {
+				sb.append(DNA.charAt(random.nextInt(DNA.length())));
+				i++;
+			} else if (r == 1) {
+				sb.append(randomSequence(random, 1 + random.nextInt(3)));
+			} else if (r == 2) {
+				i += 1 + random.nextInt(3);
+			} else {
+				sb.append(sequence.charAt(i));
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the sequence encoded by the encoder.
+	 */
+	public static int[] encode(SequenceEncoder encoder, String sequence) throws IllegalSymbolException {
+		return encoder.encodeSymbolListToIntegerArray(LightweightSymbolList.createDNA(sequence));
+	}
+
+	/**
+	 * @return the score of the aligned sequences, where a gap of length n scores
+	 *         <code>gapOpen + (n - 1) * gapExtend</code>.
+	 */
+	public static int alignedScore(SubstitutionMatrix matrix, String queryAligned, String targetAligned, int gapOpen, int gapExtend) {
+		Assert.assertEquals(queryAligned.length(), targetAligned.length());
+		int score = 0;
+		for (int i = 0; i < queryAligned.length(); i++) {
+			char q = queryAligned.charAt(i);
+			char t = targetAligned.charAt(i);
+			if (q == '-') {
+				score += i > 0 && queryAligned.charAt(i - 1) == '-' ? gapExtend : gapOpen;
+			} else if (t == '-') {
+				score += i > 0 && targetAligned.charAt(i - 1) == '-' ? gapExtend : gapOpen;
+			} else {
+				score += matrix.getValue(q, t);
+			}
+		}
+		return score;
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.alignment;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.alignment.StripedSmithWaterman;
+import bio.pih.genoogle.alignment.SubstitutionMatrix;
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.encoder.SequenceEncoderFactory;
+import bio.pih.genoogle.seq.DNAAlphabet;
+import bio.pih.genoogle.seq.IllegalSymbolException;
+
+/**
+ * Tests the striped alignment of the whole matrix of encoded sequences against a not optimized
+ * full matrix Smith-Waterman alignment.
+ *
+ * @author albrecht
+ */
+public class StripedSmithWatermanTest extends TestCase {
+
+	private static final int GAP = -2;
+
+	private final SubstitutionMatrix matrix = SubstitutionMatrix.DUMMY;
+	private final SequenceEncoder encoder = SequenceEncoderFactory.getEncoder(DNAAlphabet.SINGLETON, 11);
+
+	public void testSameSequences() throws IllegalSymbolException {
+		String query = "ACTGGGCCCTAGTCAGGTACCA";
+		int[] encodedQuery = RandomSequences.encode(encoder, query);
+		StripedSmithWaterman sw = new StripedSmithWaterman(matrix, encoder, GAP, GAP);
+		sw.pairwiseAlignment(encodedQuery, 0, query.length(), encodedQuery, 0, query.length());
+
+		assertEquals(query, sw.getQueryAligned());
+		assertEquals(query, sw.getTargetAligned());
+		assertEquals(query, sw.getPath());
+		assertEquals(query.length(), sw.getIdentitySize());
+		assertEquals(1, sw.getQueryStart());
+		assertEquals(query.length(), sw.getQueryEnd());
+		assertEquals(1, sw.getTargetStart());
+		assertEquals(query.length(), sw.getTargetEnd());
+	}
+
+	public void testRandomSequences() throws IllegalSymbolException {
+		Random random = new Random(11);
+		StripedSmithWaterman sw = new StripedSmithWaterman(matrix, encoder, GAP, GAP);
+		for (int t = 0; t < 500; t++) {
+			String query = RandomSequences.randomSequence(random, random.nextInt(80));
+			String subject = RandomSequences.mutate(random, query) + RandomSequences.randomSequence(random, random.nextInt(10));
+			// The segments are after other symbols of the encoded sequences.
+			int queryBegin = random.nextInt(30);
+			int subjectBegin = random.nextInt(30);
+			int[] encodedQuery = RandomSequences.encode(encoder, RandomSequences.randomSequence(random, queryBegin) + query);
+			int[] encodedSubject = RandomSequences.encode(encoder, RandomSequences.randomSequence(random, subjectBegin) + subject + RandomSequences.randomSequence(random, random.nextInt(30)));
+			int queryEnd = queryBegin + query.length();
+			int subjectEnd = subjectBegin + subject.length();
+
+			int[] expected = fullMatrixAlignment(query, subject);
+			assertEquals(expected[0], sw.pairwiseScore(encodedQuery, queryBegin, queryEnd, encodedSubject, subjectBegin, subjectEnd));
+			assertEquals(expected[1], sw.getQueryEnd());
+			assertEquals(expected[2], sw.getTargetEnd());
+
+			assertEquals(expected[0], sw.pairwiseAlignment(encodedQuery, queryBegin, queryEnd, encodedSubject, subjectBegin, subjectEnd));
+			assertEquals(expected[0], RandomSequences.alignedScore(matrix, sw.getQueryAligned(), sw.getTargetAligned(), GAP, GAP));
+			if (expected[0] > 0) {
+				assertEquals(query.substring(sw.getQueryStart() - 1, sw.getQueryEnd()), sw.getQueryAligned().replace("-", ""));
+				assertEquals(subject.substring(sw.getTargetStart() - 1, sw.getTargetEnd()), sw.getTargetAligned().replace("-", ""));
+			}
+		}
+	}
+
+	public void testTracebackAfterScore() throws IllegalSymbolException {
+		Random random = new Random(17);
+		StripedSmithWaterman scored = new StripedSmithWaterman(matrix, encoder, GAP, GAP);
+		StripedSmithWaterman aligned = new StripedSmithWaterman(matrix, encoder, GAP, GAP);
+		for (int t = 0; t < 500; t++) {
+			String query = RandomSequences.randomSequence(random, random.nextInt(80));
+			String subject = RandomSequences.mutate(random, query) + RandomSequences.randomSequence(random, random.nextInt(10));
+			int queryBegin = random.nextInt(30);
+			int subjectBegin = random.nextInt(30);
+			int[] encodedQuery = RandomSequences.encode(encoder, RandomSequences.randomSequence(random, queryBegin) + query);
+			int[] encodedSubject = RandomSequences.encode(encoder, RandomSequences.randomSequence(random, subjectBegin) + subject + RandomSequences.randomSequence(random, random.nextInt(30)));
+			int queryEnd = queryBegin + query.length();
+			int subjectEnd = subjectBegin + subject.length();
+
+			int score = scored.pairwiseScore(encodedQuery, queryBegin, queryEnd, encodedSubject, subjectBegin, subjectEnd);
+			// Other alignment between the score and the traceback.
+			aligned.pairwiseAlignment(encodedSubject, 0, subjectEnd, encodedQuery, 0, queryEnd);
+			assertEquals(score, scored.pairwiseTraceback());
+			assertEquals(score, aligned.pairwiseAlignment(encodedQuery, queryBegin, queryEnd, encodedSubject, subjectBegin, subjectEnd));
+			assertEquals(aligned.getQueryAligned(), scored.getQueryAligned());
+			assertEquals(aligned.getTargetAligned(), scored.getTargetAligned());
+			assertEquals(aligned.getPath(), scored.getPath());
+			assertEquals(aligned.getIdentitySize(), scored.getIdentitySize());
+			assertEquals(aligned.getQueryStart(), scored.getQueryStart());
+			assertEquals(aligned.getQueryEnd(), scored.getQueryEnd());
+			assertEquals(aligned.getTargetStart(), scored.getTargetStart());
+			assertEquals(aligned.getTargetEnd(), scored.getTargetEnd());
+		}
+	}
+
+	/**
+	 * @return the score, query end and subject end of the best alignment, the first one of the
+	 *         subject positions and then of the query positions.
+	 */
+	private int[] fullMatrixAlignment(String query, String subject) {
+		int[][] h = new int[query.length() + 1][subject.length() + 1];
+		int[] best = new int[3];
+		for (int j = 1; j <= subject.length(); j++) {
+			for (int i = 1; i <= query.length(); i++) {
+				h[i][j] = Math.max(0, h[i - 1][j - 1] + matrix.getValue(query.charAt(i - 1), subject.charAt(j - 1)));
+				h[i][j] = Math.max(h[i][j], Math.max(h[i - 1][j] + GAP, h[i][j - 1] + GAP));
+				if (h[i][j] > best[0]) {
+					best[0] = h[i][j];
+					best[1] = i;
+					best[2] = j;
+				}
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.alignment;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.alignment.SubstitutionMatrix;
+import bio.pih.genoogle.alignment.SubstitutionMatrixSmithWaterman;
+
+/**
+ * Tests the banded alignment with linear gap costs, which keeps only the band of two rows,
+ * against the banded alignment which computes the whole matrix.
+ *
+ * @author albrecht
+ */
+public class SubstitutionMatrixSmithWatermanTest extends TestCase {
+
+	private static final int BAND = SubstitutionMatrixSmithWaterman.BAND;
+
+	private final SubstitutionMatrix matrix = SubstitutionMatrix.DUMMY;
+
+	public void testSameSequences() {
+		String query = "ACTGGGCCCTAGTCAGGTACCA";
+		SubstitutionMatrixSmithWaterman sw = new SubstitutionMatrixSmithWaterman(matrix, -1, -1);
+		int score = sw.pairwiseAlignment(query, query);
+
+		assertEquals(query.length() * matrix.getValue('A', 'A'), score);
+		assertEquals(query, sw.getQueryAligned());
+		assertEquals(query, sw.getTargetAligned());
+		assertEquals(query, sw.getPath());
+		assertEquals(query.length(), sw.getIdentitySize());
+		assertEquals(1, sw.getQueryStart());
+		assertEquals(query.length(), sw.getQueryEnd());
+		assertEquals(1, sw.getTargetStart());
+		assertEquals(query.length(), sw.getTargetEnd());
+	}
+
+	public void testFullMatrixEquivalence() {
+		Random random = new Random(7);
+		int[][] gaps = { { -1, -1 }, { -3, -3 }, { -2, -4 }, { -4, -1 } };
+		for (int[] gap : gaps) {
+			SubstitutionMatrixSmithWaterman sw = new SubstitutionMatrixSmithWaterman(matrix, gap[0], gap[1]);
+			for (int t = 0; t < 500; t++) {
+				String query = RandomSequences.randomSequence(random, random.nextInt(100));
+				String target = t % 10 == 0 ? RandomSequences.randomSequence(random, random.nextInt(100)) : RandomSequences.mutate(random, query);
+				assertFullMatrixAlignment(sw, query, target, gap[0], gap[1]);
+			}
+		}
+	}
+
+	public void testLongSequences() {
+		Random random = new Random(3);
+		SubstitutionMatrixSmithWaterman sw = new SubstitutionMatrixSmithWaterman(matrix, -2, -2);
+		for (int t = 0; t < 5; t++) {
+			// Longer than the initial traceback buffer.
+			String query = RandomSequences.randomSequence(random, 1000 + random.nextInt(2000));
+			assertFullMatrixAlignment(sw, query, RandomSequences.mutate(random, query), -2, -2);
+		}
+	}
+
+	private void assertFullMatrixAlignment(SubstitutionMatrixSmithWaterman sw, String query, String target, int delete, int insert) {
+		int[] expected = new int[6];
+		String[] expectedAligned = fullMatrixAlignment(query, target, delete, insert, expected);
+
+		assertEquals(expected[0], sw.pairwiseScore(query, target));
+		assertEquals(expected[1], sw.getQueryEnd());
+		assertEquals(expected[2], sw.getTargetEnd());
+
+		assertEquals(expected[0], sw.pairwiseAlignment(query, target));
+		assertEquals(expected[0], sw.getScore());
+		assertEquals(expected[1], sw.getQueryEnd());
+		assertEquals(expected[2], sw.getTargetEnd());
+		assertEquals(expected[3], sw.getQueryStart());
+		assertEquals(expected[4], sw.getTargetStart());
+		assertEquals(expected[5], sw.getIdentitySize());
+		assertEquals(expectedAligned[0], sw.getQueryAligned());
+		assertEquals(expectedAligned[1], sw.getTargetAligned());
+		assertEquals(expectedAligned[2], sw.getPath());
+	}
+
+	/**
+	 * Banded alignment computing the whole matrix, with the cells out of the band with score zero,
+	 * and the traceback from the scores of the matrix, as it was before the alignment kept only
+	 * the band.
+	 *
+	 * @param positions
+	 *            where the score, query end, target end, query start, target start and identity
+	 *            size of the alignment are written.
+	 * @return the query aligned, the target aligned and the path.
+	 */
+	private String[] fullMatrixAlignment(String query, String target, int delete, int insert, int[] positions) {
+		int[][] h = new int[query.length() + 1][target.length() + 1];
+		int maxI = 0;
+		int maxJ = 0;
+		for (int i = 1; i <= query.length(); i++) {
+			for (int j = Math.max(1, i - BAND); j <= Math.min(target.length(), i + BAND); j++) {
+				int diagonal = h[i - 1][j - 1] + matrix.getValue(query.charAt(i - 1), target.charAt(j - 1));
+				h[i][j] = Math.max(Math.max(0, diagonal), Math.max(h[i][j - 1] + insert, h[i - 1][j] + delete));
+				if (h[i][j] > h[maxI][maxJ]) {
+					maxI = i;
+					maxJ = j;
+				}
+			}
+		}
+
+		StringBuilder pathBuilder = new StringBuilder();
+		StringBuilder queryBuilder = new StringBuilder();
+		StringBuilder targetBuilder = new StringBuilder();
+		int identitySize = 0;
+		int i = maxI;
+		int j = maxJ;
+		while (i > 0 && j > 0 && h[i][j] != 0) {
+			char queryChar = query.charAt(i - 1);
+			char targetChar = target.charAt(j - 1);
+			if (h[i][j] == h[i - 1][j - 1] + matrix.getValue(queryChar, targetChar)) {
+				if (queryChar == targetChar) {
+					pathBuilder.append(queryChar);
+					identitySize++;
+				} else if (matrix.getValue(queryChar, targetChar) >= 0) {
+					pathBuilder.append('+');
+				} else {
+					pathBuilder.append(' ');
+				}
+				queryBuilder.append(queryChar);
+				targetBuilder.append(targetChar);
+				i--;
+				j--;
+			} else if (h[i][j] == h[i][j - 1] + insert) {
+				queryBuilder.append('-');
+				targetBuilder.append(targetChar);
+				pathBuilder.append(' ');
+				j--;
+			} else {
+				queryBuilder.append(queryChar);
+				targetBuilder.append('-');
+				pathBuilder.append(' ');
+				i--;
+			}
+		}
+
+		positions[0] = h[maxI][maxJ];
+		positions[1] = maxI;
+		positions[2] = maxJ;
+		positions[3] = i + 1;
+		positions[4] = j + 1;
+		positions[5] = identitySize;
+		return new String[] { queryBuilder.reverse().toString(), targetBuilder.reverse().toString(), pathBuilder.reverse().toString() };
+	}
+}
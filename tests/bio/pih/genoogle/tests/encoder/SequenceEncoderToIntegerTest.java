@@ -188,6 +188,32 @@ public class SequenceEncoderToIntegerTest extends TestCase {
 		assertEquals(createDNA.getLength(), encodeSequenceToInteger[SequenceEncoder.getPositionLength()]);
 		assertEquals(createDNA.seqString(), encoder.decodeIntegerArrayToString(encodeSequenceToInteger));
 	}
+
+	@Test
+	public void testDecodeDNASequenceRange() throws IllegalSymbolException {
+		SequenceEncoder encoder = SequenceEncoderFactory.getEncoder(DNAAlphabet.SINGLETON, 8);
+
+		String sequence = "AAACACTA" + "GCTACGTC" + "GAATAGCA" + "ACTGAGAT" + "GCATGAGC" + "ACAACTG";
+		int[] encodeSequenceToInteger = encoder.encodeSymbolListToIntegerArray(LightweightSymbolList.createDNA(sequence));
+
+		// Begin and end inside the same word.
+		assertEquals("ACAC", encoder.decodeIntegerArrayToString(encodeSequenceToInteger, 2, 5));
+		assertEquals("A", encoder.decodeIntegerArrayToString(encodeSequenceToInteger, 7, 7));
+		// Spanning the word boundaries.
+		assertEquals("TAGC", encoder.decodeIntegerArrayToString(encodeSequenceToInteger, 6, 9));
+		assertEquals("CGTCGAATAGCAACTG", encoder.decodeIntegerArrayToString(encodeSequenceToInteger, 12, 27));
+		// Ending exactly at the last position of a word.
+		assertEquals("TACGTC", encoder.decodeIntegerArrayToString(encodeSequenceToInteger, 10, 15));
+		assertEquals("GCTACGTC", encoder.decodeIntegerArrayToString(encodeSequenceToInteger, 8, 15));
+		// The last word is not full.
+		assertEquals("ACAACTG", encoder.decodeIntegerArrayToString(encodeSequenceToInteger, 40, 46));
+
+		for (int begin = 0; begin < sequence.length(); begin++) {
+			for (int end = begin; end < sequence.length(); end++) {
+				assertEquals(sequence.substring(begin, end + 1), encoder.decodeIntegerArrayToString(encodeSequenceToInteger, begin, end));
+			}
+		}
+	}
 	
 	@Test
 	public void testEncodeRNASubSymbolList() throws ValueOutOfBoundsException, IllegalSymbolException {
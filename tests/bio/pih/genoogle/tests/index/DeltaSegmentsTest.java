@@ -0,0 +1,213 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.index;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.encoder.SequenceEncoderFactory;
+import bio.pih.genoogle.index.MemoryInvertedIndex;
+import bio.pih.genoogle.index.PostingsCursor;
+import bio.pih.genoogle.index.SubSequenceIndexInfo;
+import bio.pih.genoogle.io.IndexedSequenceDataBank;
+import bio.pih.genoogle.seq.DNAAlphabet;
+import bio.pih.genoogle.seq.LightweightSymbolList;
+
+/**
+ * Tests for the delta segments of the {@link IndexedSequenceDataBank}
+ *
+ * @author albrecht
+ */
+public class DeltaSegmentsTest extends TestCase {
+
+	private static final int SUB_SEQUENCE_LENGTH = 8;
+	private static final SequenceEncoder ENCODER = SequenceEncoderFactory.getEncoder(DNAAlphabet.SINGLETON, SUB_SEQUENCE_LENGTH);
+
+	private static final String[] BASE_SEQUENCES = {
+			"CATGACTGGCATCAGTGCATGCATGCAGTCAGTATATATGACGC",
+			"ACTGGTCAACTGGTCAACTGGTCAACTGGTCAACTGGTCAACTGGTCAACTGGTCAACTGGTCA" };
+
+	private static final String[] APPENDED_SEQUENCES = {
+			"ATCTGAGTCATGCGATCAGTGTTGGTCATGTCAGGTCAGTACTACGTAGCATGCATGCATACGATCGACTATATTGCATGAC",
+			"GGGGCCCCCATGACTGAAAACCCC" };
+
+	private File baseFasta;
+	private File appendedFasta;
+	private File allFasta;
+	private IndexedSequenceDataBank dataBank;
+	private IndexedSequenceDataBank expectedDataBank;
+
+	@Override
+	protected void setUp() throws Exception {
+		baseFasta = writeFasta(BASE_SEQUENCES, 0);
+		appendedFasta = writeFasta(APPENDED_SEQUENCES, BASE_SEQUENCES.length);
+		allFasta = File.createTempFile(this.getName(), ".fasta");
+		FileWriter writer = new FileWriter(allFasta);
+		writer.write(fasta(BASE_SEQUENCES, 0));
+		writer.write(fasta(APPENDED_SEQUENCES, BASE_SEQUENCES.length));
+		writer.close();
+
+		dataBank = newDataBank(baseFasta);
+		dataBank.encodeSequences(false);
+		expectedDataBank = newDataBank(allFasta);
+		expectedDataBank.encodeSequences(false);
+		expectedDataBank.load();
+	}
+
+	@Override
+	protected void tearDown() {
+		dataBank.delete();
+		expectedDataBank.delete();
+		baseFasta.delete();
+		appendedFasta.delete();
+		allFasta.delete();
+	}
+
+	private IndexedSequenceDataBank newDataBank(File fasta) {
+		return new IndexedSequenceDataBank("TestDB", DNAAlphabet.SINGLETON, SUB_SEQUENCE_LENGTH, ENCODER, null, fasta, null);
+	}
+
+	private static String fasta(String[] sequences, int firstId) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < sequences.length; i++) {
+			sb.append(">gi|" + (firstId + i) + "|gb|AC" + (firstId + i) + "| Sequence " + (firstId + i) + "\n");
+			sb.append(sequences[i]);
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	private File writeFasta(String[] sequences, int firstId) throws IOException {
+		File file = File.createTempFile(this.getName(), ".fasta");
+		FileWriter writer = new FileWriter(file);
+		writer.write(fasta(sequences, firstId));
+		writer.close();
+		return file;
+	}
+
+	private void checkSameBuckets(IndexedSequenceDataBank actual) throws Exception {
+		PostingsCursor expectedCursor = expectedDataBank.newIndexCursor();
+		PostingsCursor cursor = actual.newIndexCursor();
+		for (int i = 0; i < expectedDataBank.getIndex().getIndexSize(); i++) {
+			int length = expectedCursor.seek(i);
+			assertEquals(length, cursor.seek(i));
+			for (int j = 0; j < length; j++) {
+				assertTrue(cursor.hasNext());
+				assertEquals(expectedCursor.next(), cursor.next());
+			}
+			assertFalse(cursor.hasNext());
+		}
+		assertEquals(expectedDataBank.getNumberOfSequences(), actual.getNumberOfSequences());
+		assertEquals(expectedDataBank.getDataBaseSize(), actual.getDataBaseSize());
+		assertEquals("Sequence 3", actual.getSequenceFromId(3).getDescription().trim());
+	}
+
+	public void testAppendAndMerge() throws Exception {
+		dataBank.load();
+		assertEquals(0, dataBank.getDeltaSegmentsCount());
+		dataBank.appendFastaFile(appendedFasta, false);
+		assertEquals(1, dataBank.getDeltaSegmentsCount());
+
+		checkSameBuckets(dataBank);
+		long[] matching = dataBank.getMatchingSubSequence(ENCODER.encodeSubSequenceToInteger(LightweightSymbolList.createDNA("CATGACTG")));
+		assertEquals(SubSequenceIndexInfo.newIndexInfo(0, 0), matching[0]);
+		assertEquals(3, SubSequenceIndexInfo.getSequenceId(matching[matching.length - 1]));
+
+		IndexedSequenceDataBank reloaded = newDataBank(baseFasta);
+		reloaded.load();
+		checkSameBuckets(reloaded);
+
+		dataBank.mergeDeltaSegmentsInBackground().get();
+		assertEquals(0, dataBank.getDeltaSegmentsCount());
+		checkSameBuckets(dataBank);
+
+		reloaded = newDataBank(baseFasta);
+		reloaded.load();
+		checkSameBuckets(reloaded);
+	}
+
+	public void testAppendNotLoaded() throws Exception {
+		dataBank.appendFastaFile(appendedFasta, false);
+		assertEquals(1, dataBank.getDeltaSegmentsCount());
+		dataBank.mergeDeltaSegments();
+		assertEquals(0, dataBank.getDeltaSegmentsCount());
+
+		IndexedSequenceDataBank reloaded = newDataBank(baseFasta);
+		reloaded.load();
+		checkSameBuckets(reloaded);
+	}
+
+	public void testDeleteSegmentKeepsDataBankOffsets() throws Exception {
+		dataBank.load();
+		dataBank.appendFastaFile(appendedFasta, false);
+		File offsetsFile = dataBank.getIndex().getMemoryInvertedOffsetIndexFile();
+		assertTrue(offsetsFile.createNewFile());
+		try {
+			MemoryInvertedIndex segment = new MemoryInvertedIndex(dataBank, ENCODER, dataBank.getDeltaIndexFile(1));
+			segment.delete();
+			assertFalse(dataBank.getDeltaIndexFile(1).exists());
+			assertTrue(offsetsFile.exists());
+		} finally {
+			offsetsFile.delete();
+		}
+	}
+
+	public void testInterruptedAppend() throws Exception {
+		File storedDataBankInfoFile = new File(baseFasta.getPath() + ".ssdb");
+		byte[] committed = Files.readAllBytes(storedDataBankInfoFile.toPath());
+		dataBank.load();
+		dataBank.appendFastaFile(appendedFasta, false);
+		// As if the append was interrupted after writing the delta segment.
+		Files.write(storedDataBankInfoFile.toPath(), committed);
+
+		IndexedSequenceDataBank reloaded = newDataBank(baseFasta);
+		reloaded.load();
+		assertEquals(0, reloaded.getDeltaSegmentsCount());
+		assertEquals(BASE_SEQUENCES.length, reloaded.getNumberOfSequences());
+
+		reloaded.appendFastaFile(appendedFasta, false);
+		checkSameBuckets(reloaded);
+	}
+
+	public void testInterruptedMergeBeforeReplace() throws Exception {
+		dataBank.appendFastaFile(appendedFasta, false);
+		File indexFile = dataBank.getIndex().getMemoryInvertedIndexFile();
+		File mergedIndexFile = new File(indexFile.getPath() + ".merge");
+		File movedDeltaFile = new File(dataBank.getDeltaIndexFile(1).getPath() + ".merged");
+		// As if the merge was interrupted after moving the delta segment aside.
+		Files.copy(indexFile.toPath(), mergedIndexFile.toPath());
+		Files.move(dataBank.getDeltaIndexFile(1).toPath(), movedDeltaFile.toPath());
+
+		IndexedSequenceDataBank reloaded = newDataBank(baseFasta);
+		reloaded.load();
+		assertEquals(1, reloaded.getDeltaSegmentsCount());
+		assertFalse(mergedIndexFile.exists());
+		assertFalse(movedDeltaFile.exists());
+		checkSameBuckets(reloaded);
+	}
+
+	public void testInterruptedMergeAfterReplace() throws Exception {
+		dataBank.appendFastaFile(appendedFasta, false);
+		File movedDeltaFile = new File(dataBank.getDeltaIndexFile(1).getPath() + ".merged");
+		byte[] delta = Files.readAllBytes(dataBank.getDeltaIndexFile(1).toPath());
+		dataBank.mergeDeltaSegments();
+		assertFalse(movedDeltaFile.exists());
+		// As if the merge was interrupted before deleting the delta segment moved aside.
+		Files.write(movedDeltaFile.toPath(), delta);
+
+		IndexedSequenceDataBank reloaded = newDataBank(baseFasta);
+		reloaded.load();
+		assertEquals(0, reloaded.getDeltaSegmentsCount());
+		assertFalse(movedDeltaFile.exists());
+		checkSameBuckets(reloaded);
+	}
+}
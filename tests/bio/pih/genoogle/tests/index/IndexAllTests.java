@@ -27,6 +27,10 @@ public class IndexAllTests extends TestSuite {
 		suite.addTestSuite(SubSequencesArrayIndexTest_8.class);
 		suite.addTestSuite(SubSequencesArrayIndexTest_11.class);
 		suite.addTestSuite(SubSequencesArrayIndexTest_11Masked.class);
+		suite.addTestSuite(InvertedIndexTypesTest.class);
+		suite.addTestSuite(InvertedIndexConverterTest.class);
+		suite.addTestSuite(DeltaSegmentsTest.class);
+		suite.addTestSuite(InvertedIndexCacheTest.class);
 
 		return suite;
 	}
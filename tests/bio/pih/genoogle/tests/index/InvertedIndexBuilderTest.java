@@ -9,12 +9,15 @@ package bio.pih.genoogle.tests.index;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
 import bio.pih.genoogle.encoder.SequenceEncoder;
 import bio.pih.genoogle.encoder.SequenceEncoderFactory;
 import bio.pih.genoogle.index.IndexConstructionException;
+import bio.pih.genoogle.index.MemoryInvertedIndex;
 import bio.pih.genoogle.index.builder.InvertedIndexBuilder;
 import bio.pih.genoogle.io.IndexedSequenceDataBank;
 import bio.pih.genoogle.seq.DNAAlphabet;
@@ -96,5 +99,40 @@ public class InvertedIndexBuilderTest extends TestCase {
 		index.finishConstruction();
 	}
 
-	// TODO too small sort size.
+	private IndexedSequenceDataBank buildIndex(int sortMemory, int sortThreads, int minimumSortedRuns) throws Exception {
+		IndexedSequenceDataBank sequenceDataBank = createSequenceDatabankMock(ENCODER);
+		InvertedIndexBuilder index = new InvertedIndexBuilder(sequenceDataBank);
+		index.setSortThreads(sortThreads);
+		if (sortMemory > 0) {
+			index.setTotalSortMemory(sortMemory);
+		}
+		index.constructIndex();
+
+		Random random = new Random(11);
+		for (int i = 0; i < 30; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < 500; j++) {
+				sb.append("ACGT".charAt(random.nextInt(i % 5 == 0 ? 2 : 4)));
+			}
+			index.addSequence(i, ENCODER.encodeSymbolListToIntegerArray(LightweightSymbolList.createDNA(sb.toString())));
+		}
+
+		index.finishConstruction();
+		assertTrue(index.getSortedRuns() >= minimumSortedRuns);
+		sequenceDataBank.getIndex().loadFromFile();
+		return sequenceDataBank;
+	}
+
+	public void testSmallSortMemoryManyThreads() throws Exception {
+		MemoryInvertedIndex expected = buildIndex(-1, 1, 1).getIndex();
+		MemoryInvertedIndex index = buildIndex(320, 3, 2).getIndex();
+
+		for (int i = 0; i < expected.getIndexSize(); i++) {
+			long[] bucket = expected.getMatchingSubSequence(i);
+			assertTrue(Arrays.equals(bucket, index.getMatchingSubSequence(i)));
+			for (int j = 1; j < bucket.length; j++) {
+				assertTrue(bucket[j - 1] < bucket[j]);
+			}
+		}
+	}
 }
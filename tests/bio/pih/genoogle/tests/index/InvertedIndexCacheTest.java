@@ -0,0 +1,108 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.index;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.encoder.SequenceEncoderFactory;
+import bio.pih.genoogle.index.SubSequenceIndexInfo;
+import bio.pih.genoogle.io.IndexedSequenceDataBank;
+import bio.pih.genoogle.io.InvertedIndexCache;
+import bio.pih.genoogle.seq.DNAAlphabet;
+import bio.pih.genoogle.seq.LightweightSymbolList;
+
+/**
+ * Tests for the {@link InvertedIndexCache}
+ *
+ * @author albrecht
+ */
+public class InvertedIndexCacheTest extends TestCase {
+
+	private static final int SUB_SEQUENCE_LENGTH = 8;
+	private static final SequenceEncoder ENCODER = SequenceEncoderFactory.getEncoder(DNAAlphabet.SINGLETON, SUB_SEQUENCE_LENGTH);
+
+	private File fastaFile;
+	private IndexedSequenceDataBank dataBank1;
+	private IndexedSequenceDataBank dataBank2;
+
+	@Override
+	protected void setUp() throws Exception {
+		fastaFile = File.createTempFile(this.getName(), ".fasta");
+		FileWriter writer = new FileWriter(fastaFile);
+		writer.write(">gi|1|gb|AC1| Sequence 1\nCATGACTGGCATCAGTGCATGCATGCAGTCAGTATATATGACGC\n");
+		writer.close();
+
+		dataBank1 = newDataBank("TestDB1");
+		dataBank1.encodeSequences(false);
+		dataBank2 = newDataBank("TestDB2");
+	}
+
+	private IndexedSequenceDataBank newDataBank(String name) {
+		return new IndexedSequenceDataBank(name, DNAAlphabet.SINGLETON, SUB_SEQUENCE_LENGTH, ENCODER, null, fastaFile, null);
+	}
+
+	@Override
+	protected void tearDown() {
+		dataBank1.delete();
+		fastaFile.delete();
+	}
+
+	private void checkIndex(IndexedSequenceDataBank dataBank) throws Exception {
+		int encoded = ENCODER.encodeSubSequenceToInteger(LightweightSymbolList.createDNA("CATGACTG"));
+		assertEquals(SubSequenceIndexInfo.newIndexInfo(0, 0), dataBank.getIndex().getMatchingSubSequence(encoded)[0]);
+	}
+
+	public void testLoadOnDemand() throws Exception {
+		InvertedIndexCache cache = new InvertedIndexCache(Long.MAX_VALUE);
+		dataBank1.setIndexCache(cache);
+		assertTrue(dataBank1.load());
+		assertFalse(dataBank1.getIndex().isLoaded());
+
+		dataBank1.acquireIndex();
+		assertTrue(dataBank1.getIndex().isLoaded());
+		assertTrue(cache.getUsedMemory() > 0);
+		checkIndex(dataBank1);
+		dataBank1.releaseIndex();
+		assertTrue(cache.isLoaded(dataBank1));
+
+		dataBank1.close();
+		assertFalse(cache.isLoaded(dataBank1));
+		assertEquals(0, cache.getUsedMemory());
+	}
+
+	public void testEviction() throws Exception {
+		InvertedIndexCache cache = new InvertedIndexCache(1);
+		dataBank1.setIndexCache(cache);
+		dataBank2.setIndexCache(cache);
+		dataBank1.load();
+		dataBank2.load();
+
+		// Pinned indexes are kept even above the budget.
+		dataBank1.acquireIndex();
+		dataBank2.acquireIndex();
+		assertTrue(cache.isLoaded(dataBank1));
+		assertTrue(cache.isLoaded(dataBank2));
+		checkIndex(dataBank1);
+
+		dataBank1.releaseIndex();
+		assertFalse(cache.isLoaded(dataBank1));
+		assertTrue(cache.isLoaded(dataBank2));
+		checkIndex(dataBank2);
+
+		dataBank2.releaseIndex();
+		assertFalse(cache.isLoaded(dataBank2));
+		assertEquals(0, cache.getUsedMemory());
+
+		dataBank1.acquireIndex();
+		checkIndex(dataBank1);
+		dataBank1.releaseIndex();
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.index;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.index.IndexFileOffset;
+import bio.pih.genoogle.index.InvertedIndexFile;
+import bio.pih.genoogle.index.SubSequenceIndexInfo;
+import bio.pih.genoogle.index.builder.InvertedIndexConverter;
+import bio.pih.genoogle.io.proto.Io.InvertedIndexBuck;
+
+/**
+ * Tests for the {@link InvertedIndexConverter}
+ *
+ * @author albrecht
+ */
+public class InvertedIndexConverterTest extends TestCase {
+
+	private static final int INDEX_SIZE = 16;
+
+	private File indexFile;
+	private File offsetIndexFile;
+
+	@Override
+	protected void setUp() throws Exception {
+		indexFile = File.createTempFile(this.getName(), ".midx");
+		offsetIndexFile = File.createTempFile(this.getName(), ".oidx");
+	}
+
+	@Override
+	protected void tearDown() {
+		indexFile.delete();
+		offsetIndexFile.delete();
+	}
+
+	private void writeVersion1(long[][] buckets) throws IOException {
+		FileOutputStream indexStream = new FileOutputStream(indexFile);
+		DataOutputStream offsetIndexStream = new DataOutputStream(new FileOutputStream(offsetIndexFile));
+		long offset = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			if (buckets[i] == null) {
+				continue;
+			}
+			InvertedIndexBuck.Builder builder = InvertedIndexBuck.newBuilder();
+			for (long entry : buckets[i]) {
+				builder.addBuck(entry);
+			}
+			byte[] data = builder.build().toByteArray();
+			indexStream.write(data);
+			IndexFileOffset.writeTo(i, offset, data.length, offsetIndexStream);
+			offset += data.length;
+		}
+		indexStream.close();
+		offsetIndexStream.close();
+	}
+
+	public void testConvert() throws IOException {
+		long[][] buckets = new long[INDEX_SIZE][];
+		buckets[0] = new long[] { SubSequenceIndexInfo.newIndexInfo(1, 0) };
+		buckets[3] = new long[] { SubSequenceIndexInfo.newIndexInfo(1, 8), SubSequenceIndexInfo.newIndexInfo(2, 16),
+				SubSequenceIndexInfo.newIndexInfo(Integer.MAX_VALUE, Integer.MAX_VALUE) };
+		buckets[15] = new long[] { SubSequenceIndexInfo.newIndexInfo(7, 1024) };
+		writeVersion1(buckets);
+
+		assertEquals(1, InvertedIndexFile.getVersion(indexFile));
+		InvertedIndexConverter.convert(indexFile, offsetIndexFile, INDEX_SIZE);
+		assertEquals(InvertedIndexFile.VERSION, InvertedIndexFile.getVersion(indexFile));
+		assertFalse(offsetIndexFile.exists());
+
+		FileInputStream is = new FileInputStream(indexFile);
+		FileChannel channel = is.getChannel();
+		long[] offsets = InvertedIndexFile.readOffsets(channel, INDEX_SIZE);
+		LongBuffer[] entries = InvertedIndexFile.mapEntries(channel, INDEX_SIZE, offsets[INDEX_SIZE]);
+		is.close();
+
+		assertEquals(5, offsets[INDEX_SIZE]);
+		for (int i = 0; i < INDEX_SIZE; i++) {
+			int length = (int) (offsets[i + 1] - offsets[i]);
+			if (buckets[i] == null) {
+				assertEquals(0, length);
+			} else {
+				long[] bucket = new long[length];
+				InvertedIndexFile.getEntries(entries, offsets[i], bucket, 0, length);
+				assertEquals(buckets[i].length, length);
+				for (int j = 0; j < length; j++) {
+					assertEquals(buckets[i][j], bucket[j]);
+				}
+			}
+		}
+	}
+
+	public void testConvertFailure() throws IOException {
+		long[][] buckets = new long[INDEX_SIZE][];
+		buckets[3] = new long[] { SubSequenceIndexInfo.newIndexInfo(1, 8) };
+		writeVersion1(buckets);
+		long indexLength = indexFile.length();
+		// An offset after the end of the index file.
+		DataOutputStream offsetIndexStream = new DataOutputStream(new FileOutputStream(offsetIndexFile, true));
+		IndexFileOffset.writeTo(5, indexLength, 8, offsetIndexStream);
+		offsetIndexStream.close();
+
+		try {
+			InvertedIndexConverter.convert(indexFile, offsetIndexFile, INDEX_SIZE);
+			fail("The conversion should fail.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertEquals(1, InvertedIndexFile.getVersion(indexFile));
+		assertEquals(indexLength, indexFile.length());
+		assertTrue(offsetIndexFile.exists());
+		assertFalse(new File(indexFile.getPath() + ".tmp").exists());
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.index;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.encoder.SequenceEncoder;
+import bio.pih.genoogle.encoder.SequenceEncoderFactory;
+import bio.pih.genoogle.index.CompressedInvertedIndex;
+import bio.pih.genoogle.index.InvertedIndexType;
+import bio.pih.genoogle.index.MappedInvertedIndex;
+import bio.pih.genoogle.index.MemoryInvertedIndex;
+import bio.pih.genoogle.index.PostingsCursor;
+import bio.pih.genoogle.index.SubSequenceIndexInfo;
+import bio.pih.genoogle.index.builder.InvertedIndexBuilder;
+import bio.pih.genoogle.io.IndexedSequenceDataBank;
+import bio.pih.genoogle.seq.DNAAlphabet;
+import bio.pih.genoogle.seq.LightweightSymbolList;
+import bio.pih.genoogle.seq.Sequence;
+
+/**
+ * Tests for the {@link MappedInvertedIndex} and {@link CompressedInvertedIndex}
+ *
+ * @author albrecht
+ */
+public class InvertedIndexTypesTest extends TestCase {
+
+	private static final int SUB_SEQUENCE_LENGTH = 8;
+	private static final SequenceEncoder ENCODER = SequenceEncoderFactory.getEncoder(DNAAlphabet.SINGLETON, SUB_SEQUENCE_LENGTH);
+
+	private static final String[] SEQUENCES = {
+			"CATGACTGGCATCAGTGCATGCATGCAGTCAGTATATATGACGC",
+			"AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA",
+			"ACTGGTCAACTGGTCAACTGGTCAACTGGTCAACTGGTCAACTGGTCAACTGGTCAACTGGTCA",
+			"ATCTGAGTCATGCGATCAGTGTTGGTCATGTCAGGTCAGTACTACGTAGCATGCATGCATACGATCGACTATATTGCATGAC" };
+
+	private IndexedSequenceDataBank dataBank;
+
+	@Override
+	protected void setUp() throws Exception {
+		File file = File.createTempFile(this.getName(), ".tmp");
+		this.dataBank = new IndexedSequenceDataBank("TestDB", DNAAlphabet.SINGLETON, SUB_SEQUENCE_LENGTH, ENCODER, null,
+				file, null);
+
+		InvertedIndexBuilder indexBuilder = new InvertedIndexBuilder(dataBank);
+		indexBuilder.constructIndex();
+		for (int i = 0; i < SEQUENCES.length; i++) {
+			Sequence s = new Sequence(DNAAlphabet.SINGLETON, SEQUENCES[i], "Sequence " + i);
+			indexBuilder.addSequence(i, ENCODER.encodeSymbolListToIntegerArray(s));
+		}
+		// Long sequences to have buckets with many compressed blocks.
+		Random random = new Random(7);
+		for (int i = SEQUENCES.length; i < SEQUENCES.length + 20; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < 20000; j++) {
+				sb.append("ACGT".charAt(random.nextInt(i % 3 == 0 ? 1 : 4)));
+			}
+			Sequence s = new Sequence(DNAAlphabet.SINGLETON, sb.toString(), "Sequence " + i);
+			indexBuilder.addSequence(i * 1000, ENCODER.encodeSymbolListToIntegerArray(s));
+		}
+		indexBuilder.finishConstruction();
+	}
+
+	@Override
+	protected void tearDown() {
+		dataBank.delete();
+		this.dataBank = null;
+	}
+
+	private void checkSameBucketsOfMemoryIndex(InvertedIndexType type) throws Exception {
+		dataBank.setIndexType(type);
+		MemoryInvertedIndex index = dataBank.getIndex();
+		index.loadFromFile();
+		MemoryInvertedIndex memoryIndex = InvertedIndexType.MEMORY.newIndex(dataBank, ENCODER);
+		memoryIndex.loadFromFile();
+
+		PostingsCursor cursor = index.newCursor();
+		for (int i = 0; i < memoryIndex.getIndexSize(); i++) {
+			long[] expected = memoryIndex.getMatchingSubSequence(i);
+			assertTrue(Arrays.equals(expected, index.getMatchingSubSequence(i)));
+			assertEquals(expected.length, cursor.seek(i));
+			for (int j = 0; j < expected.length; j++) {
+				assertTrue(cursor.hasNext());
+				assertEquals(expected[j], cursor.next());
+			}
+			assertFalse(cursor.hasNext());
+		}
+
+		long[] matchingSubSequence = index.getMatchingSubSequence(LightweightSymbolList.createDNA("CATGACTG"));
+		assertEquals(SubSequenceIndexInfo.newIndexInfo(0, 0), matchingSubSequence[0]);
+	}
+
+	public void testMappedIndex() throws Exception {
+		checkSameBucketsOfMemoryIndex(InvertedIndexType.MAPPED);
+		assertTrue(dataBank.getIndex() instanceof MappedInvertedIndex);
+	}
+
+	public void testCompressedIndex() throws Exception {
+		checkSameBucketsOfMemoryIndex(InvertedIndexType.COMPRESSED);
+		assertTrue(dataBank.getIndex() instanceof CompressedInvertedIndex);
+	}
+}
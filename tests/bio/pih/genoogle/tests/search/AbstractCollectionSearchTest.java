@@ -0,0 +1,154 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.search;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.io.IndexedSequenceDataBank;
+import bio.pih.genoogle.io.SplittedDatabankCollection;
+import bio.pih.genoogle.search.AbstractSearcher;
+import bio.pih.genoogle.search.SearchParams;
+import bio.pih.genoogle.search.SearchParams.Parameter;
+import bio.pih.genoogle.search.SearchScheduler;
+import bio.pih.genoogle.search.SearcherFactory;
+import bio.pih.genoogle.search.results.HSP;
+import bio.pih.genoogle.search.results.Hit;
+import bio.pih.genoogle.search.results.SearchResults;
+import bio.pih.genoogle.seq.DNAAlphabet;
+import bio.pih.genoogle.seq.LightweightSymbolList;
+import bio.pih.genoogle.seq.SymbolList;
+import bio.pih.genoogle.tests.alignment.RandomSequences;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Base of the tests which search queries in a data bank collection split in sub-databanks.
+ * <p>
+ * Each query is a random segment and the collection has random sequences and some mutated
+ * copies of each query spread among the sub-databanks, so each query has many hits with close
+ * scores in different sub-databanks.
+ *
+ * @author albrecht
+ */
+public abstract class AbstractCollectionSearchTest extends TestCase {
+
+	private static final int SUB_SEQUENCE_LENGTH = 8;
+	private static final int SUB_DATABANKS = 2;
+	private static final int QUERIES = 12;
+	private static final int COPIES = 4;
+
+	private File directory;
+	private SplittedDatabankCollection collection;
+	private SearchScheduler scheduler;
+	private long nextId = 0;
+
+	/**
+	 * Queries searched by the tests.
+	 */
+	protected final List<SymbolList> queries = Lists.newArrayList();
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile(this.getName(), "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdir());
+
+		Random random = new Random(17);
+		List<String> sequences = Lists.newArrayList();
+		for (int i = 0; i < 90; i++) {
+			sequences.add(RandomSequences.randomSequence(random, 200 + random.nextInt(400)));
+		}
+		for (int q = 0; q < QUERIES; q++) {
+			String segment = RandomSequences.randomSequence(random, 150 + random.nextInt(250));
+			queries.add(LightweightSymbolList.createDNA(segment));
+			for (int c = 0; c < COPIES; c++) {
+				String copy = RandomSequences.mutate(random, segment);
+				sequences.add(random.nextInt(sequences.size() + 1), RandomSequences.randomSequence(random, random.nextInt(300))
+						+ copy + RandomSequences.randomSequence(random, random.nextInt(300)));
+			}
+		}
+
+		FileWriter writer = new FileWriter(new File(directory, "sequences.fna"));
+		for (int i = 0; i < sequences.size(); i++) {
+			writer.write(">gi|" + i + "|gb|AC" + i + "| Sequence " + i + "\n");
+			writer.write(sequences.get(i));
+			writer.write("\n");
+		}
+		writer.close();
+
+		collection = new SplittedDatabankCollection("Test", DNAAlphabet.SINGLETON, directory, SUB_SEQUENCE_LENGTH, SUB_DATABANKS, null);
+		collection.addDatabank(new IndexedSequenceDataBank("sequences", DNAAlphabet.SINGLETON, SUB_SEQUENCE_LENGTH, null,
+				new File("sequences.fna"), collection));
+		collection.encodeSequences(false);
+		assertTrue(collection.load());
+		assertEquals(SUB_DATABANKS, collection.size());
+
+		scheduler = new SearchScheduler(1, false, 2, 2);
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		scheduler.shutdown();
+		collection.close();
+		delete(directory);
+	}
+
+	private static void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * @return a new searcher of the query in the collection.
+	 */
+	protected AbstractSearcher newSearcher(SymbolList query, Map<Parameter, Object> parameters) {
+		SearchParams sp = new SearchParams(query, collection.getName(), parameters);
+		return SearcherFactory.getSearcher(nextId++, sp, collection, scheduler);
+	}
+
+	/**
+	 * @return the parameters of the tests searches, with the given maximum of hits.
+	 */
+	protected static Map<Parameter, Object> parameters(int maxHits, boolean pipelined) {
+		Map<Parameter, Object> parameters = Maps.newHashMap();
+		parameters.put(Parameter.MAX_HITS_RESULTS, maxHits);
+		parameters.put(Parameter.PIPELINED_ALIGNMENT, pipelined ? 1 : 0);
+		return parameters;
+	}
+
+	/**
+	 * @return a line for each HSP of the results, in their order, with the hit and the HSP
+	 *         coordinates and alignment.
+	 */
+	protected static List<String> describe(SearchResults results) {
+		if (results.hasFail()) {
+			throw new AssertionError(results.getFails().get(0));
+		}
+		List<String> lines = Lists.newArrayList();
+		for (Hit hit : results.getHits()) {
+			for (HSP hsp : hit.getHSPs()) {
+				lines.add(hit.getAccession() + " " + hsp.getScore() + " " + hsp.getQueryFrom() + "-" + hsp.getQueryTo() + " "
+						+ hsp.getHitFrom() + "-" + hsp.getHitTo() + " " + hsp.getEValue() + " " + hsp.getQuerySeq() + " "
+						+ hsp.getPathSeq() + " " + hsp.getTargetSeq());
+			}
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.search;
+
+import java.util.List;
+import java.util.Map;
+
+import bio.pih.genoogle.search.CollectionSearcher;
+import bio.pih.genoogle.search.SearchParams.Parameter;
+import bio.pih.genoogle.search.results.SearchResults;
+import bio.pih.genoogle.seq.SymbolList;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests that the queries searched together in a batch have the same hits than when each one is
+ * searched by itself.
+ *
+ * @author albrecht
+ */
+public class BatchSearchTest extends AbstractCollectionSearchTest {
+
+	public void testBatchEqualsSingleSearches() throws Exception {
+		Map<Parameter, Object> parameters = parameters(3, false);
+
+		List<List<String>> expected = Lists.newArrayList();
+		List<CollectionSearcher> searchers = Lists.newArrayList();
+		for (SymbolList query : queries) {
+			expected.add(describe(newSearcher(query, parameters).call()));
+			searchers.add((CollectionSearcher) newSearcher(query, parameters));
+		}
+
+		List<SearchResults> results = CollectionSearcher.callBatch(searchers);
+		assertEquals(queries.size(), results.size());
+		for (int i = 0; i < queries.size(); i++) {
+			assertFalse(expected.get(i).isEmpty());
+			assertEquals(expected.get(i), describe(results.get(i)));
+		}
+	}
+}
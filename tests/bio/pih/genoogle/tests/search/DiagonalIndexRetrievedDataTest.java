@@ -0,0 +1,95 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.search;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.index.SubSequenceIndexInfo;
+import bio.pih.genoogle.search.DiagonalIndexRetrievedData;
+import bio.pih.genoogle.search.IndexRetrievedData;
+import bio.pih.genoogle.search.RetrievedArea;
+import bio.pih.genoogle.search.SearchParams;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests that the diagonal sort seeding engine builds the same areas as the merge engine when the
+ * sub-sequences of each sequence are at diagonals far from each other.
+ *
+ * @author albrecht
+ */
+public class DiagonalIndexRetrievedDataTest extends TestCase {
+
+	private static final int SUB_SEQUENCE_LENGTH = 8;
+	private static final int SEQUENCES = 300;
+	private static final int QUERY_LENGTH = 600;
+	private static final int DIAGONALS_DISTANCE = 10000;
+
+	private final SearchParams sp = new SearchParams(null, "test", 1, -3, 8, 10, 16, 50, 1, 1, 100, 1);
+
+	public void testSameAreasAtDiagonals() {
+		Random random = new Random(7);
+		IndexRetrievedData mergeData = new IndexRetrievedData(SEQUENCES, sp, SUB_SEQUENCE_LENGTH, null);
+		IndexRetrievedData diagonalData = new DiagonalIndexRetrievedData(SEQUENCES, sp, SUB_SEQUENCE_LENGTH, null);
+
+		int[][] diagonals = new int[SEQUENCES][];
+		for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+			diagonals[sequence] = new int[1 + random.nextInt(3)];
+			for (int d = 0; d < diagonals[sequence].length; d++) {
+				diagonals[sequence][d] = d * DIAGONALS_DISTANCE + random.nextInt(100);
+			}
+		}
+
+		// The index entries are retrieved in the query order.
+		for (int queryPos = 0; queryPos < QUERY_LENGTH; queryPos++) {
+			for (int sequence = 0; sequence < SEQUENCES; sequence++) {
+				for (int diagonal : diagonals[sequence]) {
+					if (random.nextInt(4) == 0) {
+						long info = SubSequenceIndexInfo.newIndexInfo(sequence, queryPos + diagonal);
+						mergeData.addSubSequenceInfoIntRepresention(queryPos, info);
+						diagonalData.addSubSequenceInfoIntRepresention(queryPos, info);
+					}
+				}
+			}
+		}
+		mergeData.finish();
+		diagonalData.finish();
+
+		Map<Integer, List<String>> expected = getAreas(mergeData);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, getAreas(diagonalData));
+	}
+
+	public void testNoSubSequences() {
+		IndexRetrievedData diagonalData = new DiagonalIndexRetrievedData(SEQUENCES, sp, SUB_SEQUENCE_LENGTH, null);
+		diagonalData.finish();
+		assertTrue(getAreas(diagonalData).isEmpty());
+	}
+
+	private static Map<Integer, List<String>> getAreas(IndexRetrievedData data) {
+		Map<Integer, List<String>> areas = Maps.newHashMap();
+		List<RetrievedArea>[] slots = data.getRetrievedAreasArray();
+		for (int slot = 0; slot < slots.length; slot++) {
+			if (slots[slot] == null) {
+				continue;
+			}
+			List<String> sequenceAreas = Lists.newArrayList();
+			for (RetrievedArea area : slots[slot]) {
+				sequenceAreas.add(area.toString());
+			}
+			Collections.sort(sequenceAreas);
+			areas.put(data.getSequenceId(slot), sequenceAreas);
+		}
+		return areas;
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.search;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.search.IndexSearchResults;
+import bio.pih.genoogle.search.RetrievedArea;
+import bio.pih.genoogle.search.RetrievedSequenceAreas;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for the ranking of the index search results merged from many data banks.
+ *
+ * @author albrecht
+ */
+public class IndexSearchResultsTest extends TestCase {
+
+	private static final int MAX_RESULTS = 3;
+
+	/**
+	 * Results of a data bank, the sequence ids are <code>bank * 100 + i</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	private static IndexSearchResults bankResults(int bank, int... lengths) {
+		IndexSearchResults results = new IndexSearchResults(MAX_RESULTS);
+		for (int i = 0; i < lengths.length; i++) {
+			List<RetrievedArea> areas = Lists.newArrayList(new RetrievedArea(0, 0, lengths[i]));
+			results.add(new RetrievedSequenceAreas(bank * 100 + i, null, areas, null));
+		}
+		return results;
+	}
+
+	private static List<Integer> getSequenceIds(IndexSearchResults results) {
+		List<Integer> ids = Lists.newArrayList();
+		for (int i = 0; i < results.size(); i++) {
+			ids.add(results.get(i).getSequenceId());
+		}
+		return ids;
+	}
+
+	public void testMergeOrder() {
+		IndexSearchResults results = bankResults(0, 20, 30, 20);
+		results.merge(bankResults(1, 30, 20, 40));
+
+		assertEquals(Lists.newArrayList(102, 1, 100), getSequenceIds(results));
+	}
+
+	public void testMergeByPosition() {
+		IndexSearchResults inOrder = new IndexSearchResults(MAX_RESULTS);
+		inOrder.merge(bankResults(0, 20, 30, 20), 0);
+		inOrder.merge(bankResults(1, 30, 20, 40), 1);
+		inOrder.merge(bankResults(2, 30, 30), 2);
+
+		IndexSearchResults outOfOrder = new IndexSearchResults(MAX_RESULTS);
+		outOfOrder.merge(bankResults(2, 30, 30), 2);
+		outOfOrder.merge(bankResults(1, 30, 20, 40), 1);
+		// The results are read between the merges, as by the pipelined alignment.
+		assertEquals(Lists.newArrayList(102, 100, 200), getSequenceIds(outOfOrder));
+		outOfOrder.merge(bankResults(0, 20, 30, 20), 0);
+
+		assertEquals(Lists.newArrayList(102, 1, 100), getSequenceIds(inOrder));
+		assertEquals(getSequenceIds(inOrder), getSequenceIds(outOfOrder));
+	}
+}
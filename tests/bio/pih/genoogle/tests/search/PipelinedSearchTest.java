@@ -0,0 +1,32 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.search;
+
+import java.util.List;
+
+import bio.pih.genoogle.seq.SymbolList;
+
+/**
+ * Tests that the pipelined alignment, which aligns the best candidates of each sub-databank
+ * while the others are searched, has the same hits, in the same order, than the alignment
+ * after all sub-databanks are searched.
+ *
+ * @author albrecht
+ */
+public class PipelinedSearchTest extends AbstractCollectionSearchTest {
+
+	public void testPipelinedEqualsNotPipelined() throws Exception {
+		for (int maxHits : new int[] { 1, 3, 100 }) {
+			for (SymbolList query : queries) {
+				List<String> expected = describe(newSearcher(query, parameters(maxHits, false)).call());
+				assertFalse(expected.isEmpty());
+				assertEquals(expected, describe(newSearcher(query, parameters(maxHits, true)).call()));
+			}
+		}
+	}
+}
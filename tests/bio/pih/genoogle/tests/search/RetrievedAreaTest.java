@@ -0,0 +1,83 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.search;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.search.RetrievedArea;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests for the merge of the areas found by the query slices.
+ *
+ * @author albrecht
+ */
+public class RetrievedAreaTest extends TestCase {
+
+	private static final int SUB_SEQUENCE_LENGTH = 10;
+	private static final int MAX_DISTANCE = 5;
+
+	private static RetrievedArea area(int queryBegin, int sequenceBegin) {
+		return new RetrievedArea(queryBegin, sequenceBegin, SUB_SEQUENCE_LENGTH);
+	}
+
+	private static void assertArea(RetrievedArea area, int queryBegin, int queryEnd, int sequenceBegin, int sequenceEnd) {
+		assertEquals(queryBegin, area.getQueryAreaBegin());
+		assertEquals(queryEnd, area.getQueryAreaEnd());
+		assertEquals(sequenceBegin, area.getSequenceAreaBegin());
+		assertEquals(sequenceEnd, area.getSequenceAreaEnd());
+		assertEquals(Math.min(queryEnd - queryBegin, sequenceEnd - sequenceBegin), area.length());
+	}
+
+	public void testOverlappedAreas() {
+		List<RetrievedArea> sorted = Lists.newArrayList(area(0, 100));
+		List<RetrievedArea> others = Lists.newArrayList(area(5, 105));
+
+		List<RetrievedArea> merged = RetrievedArea.merge(sorted, others, MAX_DISTANCE);
+		assertEquals(1, merged.size());
+		assertArea(merged.get(0), 0, 15, 100, 115);
+	}
+
+	public void testDistance() {
+		List<RetrievedArea> sorted = Lists.newArrayList(area(0, 100));
+		// Begins at the maximum distance after the end of the first area.
+		List<RetrievedArea> others = Lists.newArrayList(area(15, 115), area(31, 131));
+
+		List<RetrievedArea> merged = RetrievedArea.merge(sorted, others, MAX_DISTANCE);
+		assertEquals(2, merged.size());
+		assertArea(merged.get(0), 0, 25, 100, 125);
+		assertArea(merged.get(1), 31, 41, 131, 141);
+	}
+
+	public void testDifferentSequencePositions() {
+		List<RetrievedArea> sorted = Lists.newArrayList(area(0, 100));
+		List<RetrievedArea> others = Lists.newArrayList(area(5, 300));
+
+		List<RetrievedArea> merged = RetrievedArea.merge(sorted, others, MAX_DISTANCE);
+		assertEquals(2, merged.size());
+		assertArea(merged.get(0), 0, 10, 100, 110);
+		assertArea(merged.get(1), 5, 15, 300, 310);
+	}
+
+	public void testNotSortedAreas() {
+		List<RetrievedArea> sorted = Lists.newArrayList(area(0, 100), area(50, 150));
+		List<RetrievedArea> others = Lists.newArrayList(area(80, 180), area(55, 155), area(20, 500), area(5, 105));
+
+		List<RetrievedArea> merged = RetrievedArea.merge(sorted, others, MAX_DISTANCE);
+		assertEquals(4, merged.size());
+		assertArea(merged.get(0), 0, 15, 100, 115);
+		assertArea(merged.get(1), 20, 30, 500, 510);
+		assertArea(merged.get(2), 50, 65, 150, 165);
+		assertArea(merged.get(3), 80, 90, 180, 190);
+		for (int i = 1; i < others.size(); i++) {
+			assertTrue(others.get(i - 1).getQueryAreaBegin() <= others.get(i).getQueryAreaBegin());
+		}
+	}
+}
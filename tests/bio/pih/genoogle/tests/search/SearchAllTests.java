@@ -0,0 +1,36 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.search;
+
+import junit.framework.TestSuite;
+
+import org.junit.Test;
+
+/**
+ * @author albrecht
+ */
+public class SearchAllTests extends TestSuite {
+
+	/**
+	 * @return all tests for search
+	 */
+	@Test
+	public static TestSuite suite() {
+		TestSuite suite = new TestSuite("SearchAllTests");
+
+		suite.addTestSuite(RetrievedAreaTest.class);
+		suite.addTestSuite(DiagonalIndexRetrievedDataTest.class);
+		suite.addTestSuite(TwoHitFilterTest.class);
+		suite.addTestSuite(IndexSearchResultsTest.class);
+		suite.addTestSuite(BatchSearchTest.class);
+		suite.addTestSuite(PipelinedSearchTest.class);
+
+		return suite;
+	}
+
+}
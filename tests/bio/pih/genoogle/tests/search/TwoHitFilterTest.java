@@ -0,0 +1,105 @@
+/*
+ * Genoogle: Similar DNA Sequences Searching Engine and Tools. (http://genoogle.pih.bio.br)
+ * Copyright (C) 2008,2009,2010,2011,2012  Felipe Fernandes Albrecht (felipe.albrecht@gmail.com)
+ *
+ * For further information check the LICENSE file.
+ */
+
+package bio.pih.genoogle.tests.search;
+
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import bio.pih.genoogle.index.SubSequenceIndexInfo;
+import bio.pih.genoogle.search.IndexRetrievedData;
+import bio.pih.genoogle.search.RetrievedArea;
+import bio.pih.genoogle.search.SearchParams;
+import bio.pih.genoogle.search.SearchParams.Parameter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Tests for the two hits filter of the index search.
+ *
+ * @author albrecht
+ */
+public class TwoHitFilterTest extends TestCase {
+
+	private static final int SUB_SEQUENCE_LENGTH = 8;
+	private static final int WINDOW = 40;
+	private static final int SEQUENCE_ID = 3;
+
+	private IndexRetrievedData retrievedData;
+
+	@Override
+	protected void setUp() {
+		Map<Parameter, Object> parameters = Maps.newHashMap();
+		parameters.put(Parameter.TWO_HIT_WINDOW, WINDOW);
+		parameters.put(Parameter.MAX_SUB_SEQUENCE_DISTANCE, WINDOW);
+		parameters.put(Parameter.MIN_HSP_LENGTH, SUB_SEQUENCE_LENGTH);
+		SearchParams sp = new SearchParams(null, "test", parameters);
+		retrievedData = new IndexRetrievedData(10, sp, SUB_SEQUENCE_LENGTH, null);
+	}
+
+	private void hit(int queryPos, int diagonal) {
+		retrievedData.addSubSequenceInfoIntRepresention(queryPos, SubSequenceIndexInfo.newIndexInfo(SEQUENCE_ID, queryPos + diagonal));
+	}
+
+	private List<RetrievedArea> finish() {
+		retrievedData.finish();
+		List<RetrievedArea> areas = Lists.newArrayList();
+		List<RetrievedArea>[] slots = retrievedData.getRetrievedAreasArray();
+		for (int slot = 0; slot < slots.length; slot++) {
+			if (slots[slot] != null) {
+				assertEquals(SEQUENCE_ID, retrievedData.getSequenceId(slot));
+				areas.addAll(slots[slot]);
+			}
+		}
+		return areas;
+	}
+
+	public void testSingleHit() {
+		hit(0, 100);
+		assertTrue(finish().isEmpty());
+	}
+
+	public void testBothHitsPromoted() {
+		hit(0, 100);
+		hit(20, 100);
+
+		List<RetrievedArea> areas = finish();
+		assertEquals(1, areas.size());
+		assertEquals(0, areas.get(0).getQueryAreaBegin());
+		assertEquals(28, areas.get(0).getQueryAreaEnd());
+		assertEquals(100, areas.get(0).getSequenceAreaBegin());
+		assertEquals(128, areas.get(0).getSequenceAreaEnd());
+	}
+
+	public void testOverlappedHits() {
+		hit(0, 100);
+		hit(SUB_SEQUENCE_LENGTH - 1, 100);
+		assertTrue(finish().isEmpty());
+	}
+
+	public void testOtherDiagonal() {
+		hit(0, 100);
+		hit(20, 101);
+		assertTrue(finish().isEmpty());
+	}
+
+	public void testWindow() {
+		hit(0, 100);
+		// Out of the window, but it is the last hit of the diagonal.
+		hit(WINDOW + 1, 100);
+		assertEquals(0, retrievedData.hits);
+		// At the window limit.
+		hit(2 * WINDOW + 1, 100);
+
+		List<RetrievedArea> areas = finish();
+		assertEquals(1, areas.size());
+		assertEquals(WINDOW + 1, areas.get(0).getQueryAreaBegin());
+		assertEquals(2 * WINDOW + 1 + SUB_SEQUENCE_LENGTH, areas.get(0).getQueryAreaEnd());
+	}
+}